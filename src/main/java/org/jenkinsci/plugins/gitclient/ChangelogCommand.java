@@ -108,6 +108,19 @@ public interface ChangelogCommand extends GitCommand {
      */
     ChangelogCommand max(int n);
 
+    /**
+     * Computes the changes of up to n commits in parallel. Entries are
+     * written in the same order as without parallelism. Command line
+     * git computes the changelog in a single process and ignores this,
+     * like the default implementation.
+     *
+     * @param n number of threads computing changes, 1 to compute them on the calling thread
+     * @return a {@link org.jenkinsci.plugins.gitclient.ChangelogCommand} object.
+     */
+    default ChangelogCommand parallelism(int n) {
+        return this;
+    }
+
     /**
      * Abort this ChangelogCommand without executing it, close any
      * open resources.  The JGit implementation of changelog
@@ -27,6 +27,9 @@ import hudson.Proc;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
@@ -36,7 +39,15 @@ import org.eclipse.jgit.lib.RepositoryBuilder;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.URIish;
+import org.jenkinsci.plugins.gitclient.cgit.CatFileBatch;
+import org.jenkinsci.plugins.gitclient.cgit.CredentialFileSession;
+import org.jenkinsci.plugins.gitclient.cgit.CredentialHelperServer;
 import org.jenkinsci.plugins.gitclient.cgit.GitCommandsExecutor;
+import org.jenkinsci.plugins.gitclient.cgit.GitProbeCache;
+import org.jenkinsci.plugins.gitclient.cgit.LineConsumingOutputStream;
+import org.jenkinsci.plugins.gitclient.cgit.RefSnapshot;
+import org.jenkinsci.plugins.gitclient.cgit.SpillingOutputStream;
+import org.jenkinsci.plugins.gitclient.jgit.ReachabilityIndex;
 import org.jenkinsci.plugins.scriptsecurity.sandbox.whitelists.Whitelisted;
 import org.kohsuke.stapler.framework.io.WriterOutputStream;
 
@@ -59,17 +70,21 @@ import java.nio.file.attribute.UserPrincipal;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
@@ -184,6 +199,101 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      */
     private static final boolean USE_FORCE_FETCH = Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".forceFetch", "true"));
 
+    /**
+     * Constant which allows object and revision lookups through one long
+     * running 'git cat-file --batch' process per client instead of a new git
+     * process for each lookup.
+     *
+     * <code>USE_CAT_FILE_BATCH=Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".useCatFileBatch", "true"))</code>.
+     *
+     * Use '-Dorg.jenkinsci.plugins.gitclient.CliGitAPIImpl.useCatFileBatch=false'
+     * to launch a separate git process for each lookup.
+     */
+    private static final boolean USE_CAT_FILE_BATCH = Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".useCatFileBatch", "true"));
+
+    /**
+     * Seconds after which an unused 'git cat-file --batch' process is stopped,
+     * 0 to keep it until its client is garbage collected. The process of a
+     * client is always stopped once the client is garbage collected. A
+     * process which takes that long to answer one lookup is stopped too.
+     *
+     * <code>CAT_FILE_BATCH_IDLE_SECONDS=Integer.getInteger(CliGitAPIImpl.class.getName() + ".catFileBatchIdleSeconds", 600)</code>.
+     */
+    private static final int CAT_FILE_BATCH_IDLE_SECONDS = Integer.getInteger(CliGitAPIImpl.class.getName() + ".catFileBatchIdleSeconds", 600);
+
+    /**
+     * Constant which allows branch, tag and ref queries to be answered from
+     * one 'git for-each-ref' snapshot, reused until the refs change.
+     *
+     * <code>USE_REF_SNAPSHOT=Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".useRefSnapshot", "true"))</code>.
+     *
+     * Use '-Dorg.jenkinsci.plugins.gitclient.CliGitAPIImpl.useRefSnapshot=false'
+     * to launch a separate git process for each query.
+     */
+    private static final boolean USE_REF_SNAPSHOT = Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".useRefSnapshot", "true"));
+
+    /**
+     * Constant which allows {@link #getBranchesContaining(String, boolean)}
+     * to be answered by a single JGit walk of the commit graph which is
+     * cached across calls, instead of 'git branch --contains'.
+     *
+     * <code>USE_REACHABILITY_INDEX=Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".useReachabilityIndex", "true"))</code>.
+     *
+     * Use '-Dorg.jenkinsci.plugins.gitclient.CliGitAPIImpl.useReachabilityIndex=false'
+     * to launch 'git branch --contains' for each query.
+     */
+    private static final boolean USE_REACHABILITY_INDEX = Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".useReachabilityIndex", "true"));
+
+    /**
+     * Seconds the temporary files passing credentials to command line git
+     * are kept for reuse by later commands of the same client.
+     *
+     * <code>CREDENTIAL_FILES_IDLE_SECONDS=Integer.getInteger(CliGitAPIImpl.class.getName() + ".credentialFilesIdleSeconds", 30)</code>.
+     *
+     * Use '-Dorg.jenkinsci.plugins.gitclient.CliGitAPIImpl.credentialFilesIdleSeconds=0'
+     * to write and delete the files for every command.
+     */
+    private static final int CREDENTIAL_FILES_IDLE_SECONDS = Integer.getInteger(CliGitAPIImpl.class.getName() + ".credentialFilesIdleSeconds", 30);
+
+    /**
+     * Answer the password and passphrase prompts of command line git
+     * from a listener on the loopback interface of this JVM instead of
+     * writing the secrets to temporary files. Requires /bin/bash, other
+     * machines keep using temporary files.
+     *
+     * <code>USE_CREDENTIAL_HELPER_SERVER=Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".useCredentialHelperServer", "false"))</code>.
+     *
+     * Use '-Dorg.jenkinsci.plugins.gitclient.CliGitAPIImpl.useCredentialHelperServer=true'
+     * to keep passwords and passphrases off the disk.
+     */
+    private static final boolean USE_CREDENTIAL_HELPER_SERVER = Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".useCredentialHelperServer", "false"));
+
+    /**
+     * Constant which makes 'git ls-remote' ask the server for git protocol
+     * version 2, where the server only lists the refs below the prefixes
+     * requested by '--heads' and '--tags' instead of all refs. Servers
+     * without version 2 answer with the full list as before.
+     *
+     * <code>USE_PROTOCOL_V2=Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".useProtocolV2", "true"))</code>.
+     *
+     * Use '-Dorg.jenkinsci.plugins.gitclient.CliGitAPIImpl.useProtocolV2=false'
+     * to use the protocol version configured for git.
+     */
+    private static final boolean USE_PROTOCOL_V2 = Boolean.valueOf(System.getProperty(CliGitAPIImpl.class.getName() + ".useProtocolV2", "true"));
+
+    /**
+     * Kilobytes of git output kept in memory before it is moved to a temporary file.
+     *
+     * <code>OUTPUT_MEMORY_LIMIT=Integer.getInteger(CliGitAPIImpl.class.getName() + ".outputMemoryLimitKB", 8192) * 1024</code>.
+     *
+     * Use '-Dorg.jenkinsci.plugins.gitclient.CliGitAPIImpl.outputMemoryLimitKB=1024'
+     * to move output larger than 1 MB to disk.
+     */
+    private static final int OUTPUT_MEMORY_LIMIT = Integer.getInteger(CliGitAPIImpl.class.getName() + ".outputMemoryLimitKB", 8192) * 1024;
+
+    /* Bytes of captured standard output included in the message of a failed command */
+    private static final int MAX_STDOUT_IN_MESSAGE = 64 * 1024;
+
     private static final long serialVersionUID = 1;
     static final String SPARSE_CHECKOUT_FILE_DIR = ".git/info";
     static final String SPARSE_CHECKOUT_FILE_PATH = ".git/info/sparse-checkout";
@@ -197,6 +307,10 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     private StandardCredentials defaultCredentials;
     private StandardCredentials lfsCredentials;
     private final String encoding;
+    private transient CatFileBatch catFileBatch;
+    private transient RefSnapshot refSnapshot;
+    private transient int refSnapshotGeneration;
+    private transient CredentialFileSession.Cache<CredentialFileKey> credentialFileSessions;
 
     /* git config --get-regex applies the regex to match keys, and returns all matches (including substring matches).
      * Thus, a config call:
@@ -246,13 +360,22 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             return;
         }
 
-        String version = "";
-        try {
-            version = launchCommand("--version").trim();
-        } catch (Throwable e) {
-        }
+        // Shared by all clients using the same git executable
+        String version = GitProbeCache.get(gitProbeKey(), "version", () -> {
+            try {
+                return StringUtils.trimToNull(launchCommand("--version"));
+            } catch (Throwable e) {
+                return null;
+            }
+        });
+
+        computeGitVersion(version == null ? "" : version);
+    }
 
-        computeGitVersion(version);
+    /* Identity of the git executable of this client in the JVM wide probe cache, null if not resolvable */
+    @CheckForNull
+    private GitProbeCache.Key gitProbeKey() {
+        return GitProbeCache.resolve(gitExe, environment == null ? null : environment.get("PATH"));
     }
 
     /* package */ void computeGitVersion(String version) {
@@ -509,6 +632,19 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public void execute() throws GitException, InterruptedException {
+                // identical fetches into the same repository which start after this call share one git process
+                List<Object> key = Arrays.asList("git fetch", String.valueOf(workspace), String.valueOf(url), String.valueOf(refspecs),
+                        tags, prune, shallow, depth, RemoteRefCache.identity(url == null ? null : credentialsFor(url.toPrivateString())));
+                SingleFlight.runLatest(key,
+                        () -> listener.getLogger().println("Waiting for the same fetch from " + url + " running for this repository"),
+                        () -> {
+                            GitFlightRecorder.time(workspace, "git", "fetch", this::doExecute);
+                            return null;
+                        });
+            }
+
+            private void doExecute() throws GitException, InterruptedException {
+                invalidateRefSnapshot();
                 listener.getLogger().println(
                         "Fetching upstream changes from " + url);
 
@@ -570,6 +706,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 }
 
                 launchCommandWithCredentials(args, workspace, cred, remoteUrl, timeout);
+                RemoteRefCache.invalidate(remoteUrl.toPrivateString());
             }
         };
     }
@@ -609,7 +746,9 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
         StandardCredentials cred = credentials.get(url);
         if (cred == null) cred = defaultCredentials;
+        invalidateRefSnapshot();
         launchCommandWithCredentials(args, workspace, cred, url);
+        RemoteRefCache.invalidate(url);
     }
 
     /** {@inheritDoc} */
@@ -635,6 +774,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             args.add("--hard");
         }
 
+        invalidateRefSnapshot();
         launchCommand(args);
     }
 
@@ -727,6 +867,11 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public void execute() throws GitException, InterruptedException {
+                GitFlightRecorder.time(workspace, "git", "clone", this::doExecute);
+            }
+
+            private void doExecute() throws GitException, InterruptedException {
+                invalidateRefSnapshot();
 
                 URIish urIish = null;
                 try {
@@ -861,6 +1006,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public void execute() throws GitException, InterruptedException {
+                invalidateRefSnapshot();
                 ArgumentListBuilder args = new ArgumentListBuilder();
                 args.add("merge");
                 if(squash) {
@@ -934,6 +1080,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public void execute() throws GitException, InterruptedException {
+                invalidateRefSnapshot();
                 try {
                     ArgumentListBuilder args = new ArgumentListBuilder();
                     args.add("rebase");
@@ -1031,6 +1178,15 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public ObjectId revParse(String revName) throws GitException, InterruptedException {
+        try {
+            CatFileBatch.GitObjectData commit = queryObject(revName + "^{commit}", false);
+            if (commit != null) {
+                return commit.getId();
+            }
+            // not found, let rev-parse report the reason
+        } catch (IOException e) {
+            // cat-file session not available, launch rev-parse instead
+        }
 
         String arg = sanitize(revName + "^{commit}");
         String result = launchCommand("rev-parse", arg);
@@ -1086,6 +1242,15 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      * @throws java.lang.InterruptedException if interrupted.
      */
     public ObjectId validateRevision(String revName) throws GitException, InterruptedException {
+        try {
+            CatFileBatch.GitObjectData object = queryObject(revName, false);
+            if (object != null) {
+                return object.getId();
+            }
+            // not found, let rev-parse report the reason
+        } catch (IOException e) {
+            // cat-file session not available, launch rev-parse instead
+        }
         String result = launchCommand("rev-parse", "--verify", revName);
         String line = StringUtils.trimToNull(result);
         if (line == null)
@@ -1103,6 +1268,35 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         return line.trim();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * All commits are described by a single <code>git describe</code> call,
+     * which prints one line per commit.
+     */
+    @Override
+    public Map<String, String> describe(Collection<String> commitIshes) throws GitException, InterruptedException {
+        Map<String, String> descriptions = new LinkedHashMap<>();
+        if (commitIshes.isEmpty()) {
+            return descriptions;
+        }
+        List<String> unique = new ArrayList<>(new LinkedHashSet<>(commitIshes));
+        ArgumentListBuilder args = new ArgumentListBuilder("describe", "--tags");
+        args.add(unique.toArray(new String[0]));
+        String[] lines = launchCommand(args).split("\\r?\\n");
+        if (lines.length != unique.size()) {
+            // unexpected output, describe the commits one by one
+            for (String commitIsh : unique) {
+                descriptions.put(commitIsh, describe(commitIsh));
+            }
+            return descriptions;
+        }
+        for (int i = 0; i < lines.length; i++) {
+            descriptions.put(unique.get(i), lines[i].trim());
+        }
+        return descriptions;
+    }
+
     /** {@inheritDoc} */
     @Override
     public void prune(RemoteConfig repository) throws GitException, InterruptedException {
@@ -1111,6 +1305,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         if (repoUrl != null && !repoUrl.isEmpty()) {
             ArgumentListBuilder args = new ArgumentListBuilder();
             args.add("remote", "prune", repoName);
+            invalidateRefSnapshot();
 
             StandardCredentials cred = credentials.get(repoUrl);
             if (cred == null) cred = defaultCredentials;
@@ -1191,6 +1386,12 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 return this;
             }
 
+            @Override
+            public ChangelogCommand parallelism(int n) {
+                // whatchanged is a single git process
+                return this;
+            }
+
             @Override
             public void abort() {
                 /* No cleanup needed to abort the CliGitAPIImpl ChangelogCommand */
@@ -1245,9 +1446,20 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             args.add("-1", to.name());
     	}
 
-        StringWriter writer = new StringWriter();
-        writer.write(launchCommand(args));
-        return new ArrayList<>(Arrays.asList(writer.toString().split("\\n")));
+        List<String> lines = new ArrayList<>();
+        launchCommandIn(args, workspace, environment, TIMEOUT, lines::add);
+        if (lines.isEmpty()) {
+            /* Empty output used to be split into one empty line */
+            lines.add("");
+        } else {
+            /* Trailing empty lines used to be dropped by the split */
+            int end = lines.size();
+            while (end > 0 && lines.get(end - 1).isEmpty()) {
+                end--;
+            }
+            lines.subList(end, lines.size()).clear();
+        }
+        return lines;
     }
 
     /**
@@ -1640,6 +1852,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      * Shallow clone requires command line git 1.9 or later.
      * @return true if this repository is configured as a shallow clone
      */
+    @Override
     public boolean isShallowRepository() {
         return new File(workspace, pathJoin(".git", "shallow")).exists();
     }
@@ -1798,6 +2011,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     public void tag(String tagName, String comment) throws GitException, InterruptedException {
         tagName = tagName.replace(' ', '_');
         try {
+            invalidateRefSnapshot();
             launchCommand("tag", "-a", "-f", "-m", comment, tagName);
         } catch (GitException e) {
             throw new GitException("Could not apply tag " + tagName, e);
@@ -1934,6 +2148,148 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         return launchCommand(new ArgumentListBuilder(args));
     }
 
+    /**
+     * Looks up an object with the 'git cat-file --batch' session of this
+     * client, starting the session if needed.
+     *
+     * @param objectName any object name git understands
+     * @param withContent true if the object content is needed
+     * @return the object, or null if objectName does not name an object
+     * @throws IOException if the session is not available, the caller should launch a git command instead
+     */
+    private CatFileBatch.GitObjectData queryObject(String objectName, boolean withContent) throws IOException, InterruptedException {
+        if (objectName.indexOf('\n') >= 0 || objectName.indexOf('\r') >= 0) {
+            throw new IOException("Object name not supported by cat-file session: " + objectName);
+        }
+        return catFileBatch().query(objectName, withContent);
+    }
+
+    private synchronized CatFileBatch catFileBatch() throws IOException, InterruptedException {
+        /* z/OS needs the transcoding of launchCommandIn, no cat-file session there */
+        if (!USE_CAT_FILE_BATCH || workspace == null || isZos()) {
+            throw new IOException("cat-file session disabled");
+        }
+        if (catFileBatch == null || catFileBatch.isClosed()) {
+            ArgumentListBuilder args = new ArgumentListBuilder(gitExe, "cat-file", "--batch");
+            listener.getLogger().println(" > " + StringUtils.join(args.toCommandArray(), " ") + " # persistent");
+            Proc process = launcher.launch().cmds(args.toCommandArray()).envs(environment).pwd(workspace)
+                    .writeStdin().readStdout().stderr(NullOutputStream.NULL_OUTPUT_STREAM).start();
+            catFileBatch = new CatFileBatch(process.getStdin(), process.getStdout(), () -> {
+                try {
+                    process.kill();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, TimeUnit.SECONDS.toMillis(CAT_FILE_BATCH_IDLE_SECONDS)).closeWhenUnreachable(this);
+        }
+        return catFileBatch;
+    }
+
+    /* Message of an annotated tag or commit, as shown by "git tag -n" */
+    private String objectMessage(CatFileBatch.GitObjectData object) throws UnsupportedEncodingException {
+        String raw = new String(object.getContent(), encoding);
+        int bodyStart = raw.indexOf("\n\n");
+        String message = bodyStart < 0 ? "" : raw.substring(bodyStart + 2);
+        if (Constants.TYPE_TAG.equals(object.getType())) {
+            int signature = message.indexOf("-----BEGIN ");
+            if (signature >= 0 && (signature == 0 || message.charAt(signature - 1) == '\n')) {
+                message = message.substring(0, signature);
+            }
+        }
+        return message.trim();
+    }
+
+    /**
+     * Returns the refs of the repository, from the cached snapshot if the
+     * refs did not change since it was taken, otherwise from a new
+     * 'git for-each-ref' call.
+     *
+     * @return snapshot of all refs, or null if no snapshot is available and
+     * the caller should launch its own git command
+     */
+    @CheckForNull
+    private RefSnapshot refSnapshot() throws InterruptedException {
+        if (!USE_REF_SNAPSHOT) {
+            return null;
+        }
+        RefSnapshot snapshot;
+        int generation;
+        synchronized (this) {
+            snapshot = refSnapshot;
+            generation = refSnapshotGeneration;
+        }
+        // refs changed by this client invalidate the snapshot, the stamp notices changes by others
+        if (snapshot != null && snapshot.isCurrent()) {
+            return snapshot;
+        }
+        File refStorage = refStorageDir();
+        if (refStorage == null) {
+            return null;
+        }
+        try {
+            RefSnapshot.Stamp stamp = RefSnapshot.Stamp.of(refStorage.toPath());
+            RefSnapshot.Builder builder = new RefSnapshot.Builder();
+            ArgumentListBuilder args = new ArgumentListBuilder("for-each-ref", "--format=" + RefSnapshot.FOR_EACH_REF_FORMAT);
+            launchCommandIn(args, workspace, environment, TIMEOUT, builder::addLine);
+            snapshot = builder.build(stamp);
+        } catch (IOException | GitException e) {
+            return null;
+        }
+        synchronized (this) {
+            // a snapshot taken while this client changed refs is not kept
+            if (generation == refSnapshotGeneration) {
+                refSnapshot = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    private synchronized void invalidateRefSnapshot() {
+        refSnapshot = null;
+        refSnapshotGeneration++;
+    }
+
+    /* Directory holding packed-refs and refs/ of the workspace repository, null if unknown */
+    @CheckForNull
+    private File refStorageDir() {
+        if (workspace == null || environment.containsKey("GIT_DIR") || environment.containsKey("GIT_COMMON_DIR")) {
+            return null;
+        }
+        try {
+            File gitDir = new File(workspace, Constants.DOT_GIT);
+            if (gitDir.isFile()) {
+                // "gitdir: <path>" file of a submodule or linked work tree
+                String gitDirLine = firstLine(FileUtils.readFileToString(gitDir, StandardCharsets.UTF_8));
+                if (gitDirLine == null || !gitDirLine.startsWith("gitdir: ")) {
+                    return null;
+                }
+                gitDir = resolveGitPath(workspace, gitDirLine.substring("gitdir: ".length()).trim());
+            } else if (!gitDir.isDirectory()) {
+                if (!new File(workspace, Constants.HEAD).isFile() || !new File(workspace, Constants.R_REFS).isDirectory()) {
+                    return null;
+                }
+                gitDir = workspace; // bare repository
+            }
+            File commonDir = new File(gitDir, "commondir");
+            if (commonDir.isFile()) {
+                // refs of a linked work tree are stored in the main repository
+                String commonDirLine = firstLine(FileUtils.readFileToString(commonDir, StandardCharsets.UTF_8));
+                if (commonDirLine == null) {
+                    return null;
+                }
+                gitDir = resolveGitPath(gitDir, commonDirLine.trim());
+            }
+            return gitDir.isDirectory() ? gitDir : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private File resolveGitPath(File base, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(base, path);
+    }
+
     private String launchCommandWithCredentials(ArgumentListBuilder args, File workDir,
                                                 StandardCredentials credentials,
                                                 @NonNull String url) throws GitException, InterruptedException {
@@ -1953,13 +2309,34 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                                                 StandardCredentials credentials,
                                                 @NonNull URIish url,
                                                 Integer timeout) throws GitException, InterruptedException {
+        ByteArrayOutputStream stdoutStream = new ByteArrayOutputStream();
+        launchCommandWithCredentials(args, workDir, credentials, url, timeout, stdoutStream);
+        try {
+            return stdoutStream.toString(encoding);
+        } catch (UnsupportedEncodingException e) {
+            throw new GitException("Error performing git command: " + StringUtils.join(args.toCommandArray(), " "), e);
+        }
+    }
 
-        File key = null;
-        File ssh = null;
-        File askpass = null;
-        File usernameFile = null;
-        File passwordFile = null;
-        File passphrase = null;
+    private void launchCommandWithCredentials(ArgumentListBuilder args, File workDir,
+                                              StandardCredentials credentials,
+                                              @NonNull String url,
+                                              Consumer<String> stdoutLineConsumer) throws GitException, InterruptedException {
+        try {
+            launchCommandWithCredentials(args, workDir, credentials, new URIish(url), TIMEOUT,
+                    new LineConsumingOutputStream(Charset.forName(encoding), stdoutLineConsumer));
+        } catch (URISyntaxException e) {
+            throw new GitException("Invalid URL " + url, e);
+        }
+    }
+
+    private void launchCommandWithCredentials(ArgumentListBuilder args, File workDir,
+                                              StandardCredentials credentials,
+                                              @NonNull URIish url,
+                                              Integer timeout,
+                                              OutputStream stdoutStream) throws GitException, InterruptedException {
+
+        CredentialFileSession credentialFiles = null;
         EnvVars env = environment;
         if (!PROMPT_FOR_AUTHENTICATION && isAtLeastVersion(2, 3, 0, 0)) {
             env = new EnvVars(env);
@@ -1973,26 +2350,10 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 SSHUserPrivateKey sshUser = (SSHUserPrivateKey) credentials;
                 listener.getLogger().println("using GIT_SSH to set credentials " + sshUser.getDescription());
 
-                key = createSshKeyFile(sshUser);
-                // Prefer url username if set, OpenSSH 7.7 argument precedence change
-                // See JENKINS-50573 for details
-                String userName = url.getUser();
-                if (userName == null) {
-                    userName = sshUser.getUsername();
-                }
-                passphrase = createPassphraseFile(sshUser);
-                if (launcher.isUnix()) {
-                    ssh =  createUnixGitSSH(key, userName);
-                    askpass =  createUnixSshAskpass(sshUser, passphrase);
-                } else {
-                    ssh = createWindowsGitSSH(key, userName);
-                    askpass =  createWindowsSshAskpass(sshUser, passphrase);
-                }
-
+                credentialFiles = credentialFileSessions().acquire(new CredentialFileKey(sshUser, url),
+                        session -> createSshCredentialFiles(session, sshUser, url));
                 env = new EnvVars(env);
-                env.put("GIT_SSH", ssh.getAbsolutePath());
-                env.put("GIT_SSH_VARIANT", "ssh");
-                env.put("SSH_ASKPASS", askpass.getAbsolutePath());
+                env.putAll(credentialFiles.getEnvironment());
 
                 // supply a dummy value for DISPLAY if not already present
                 // or else ssh will not invoke SSH_ASKPASS
@@ -2004,17 +2365,10 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 StandardUsernamePasswordCredentials userPass = (StandardUsernamePasswordCredentials) credentials;
                 listener.getLogger().println("using GIT_ASKPASS to set credentials " + userPass.getDescription());
 
-                usernameFile = createUsernameFile(userPass);
-                passwordFile = createPasswordFile(userPass);
-                if (launcher.isUnix()) {
-                    askpass = createUnixStandardAskpass(userPass, usernameFile, passwordFile);
-                } else {
-                    askpass = createWindowsStandardAskpass(userPass, usernameFile, passwordFile);
-                }
-
+                credentialFiles = credentialFileSessions().acquire(new CredentialFileKey(userPass, url),
+                        session -> createUsernamePasswordCredentialFiles(session, userPass));
                 env = new EnvVars(env);
-                env.put("GIT_ASKPASS", askpass.getAbsolutePath());
-                env.put("SSH_ASKPASS", askpass.getAbsolutePath());
+                env.putAll(credentialFiles.getEnvironment());
             }
 
             if ("http".equalsIgnoreCase(url.getScheme()) || "https".equalsIgnoreCase(url.getScheme())) {
@@ -2047,16 +2401,114 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 }
             }
 
-            return launchCommandIn(args, workDir, env, timeout);
+            launchCommandIn(args, workDir, env, timeout, stdoutStream);
         } catch (IOException e) {
             throw new GitException("Failed to setup credentials", e);
         } finally {
-            deleteTempFile(key);
-            deleteTempFile(ssh);
-            deleteTempFile(askpass);
-            deleteTempFile(passphrase);
-            deleteTempFile(usernameFile);
-            deleteTempFile(passwordFile);
+            if (credentialFiles != null) {
+                credentialFileSessions().release(credentialFiles);
+            }
+        }
+    }
+
+    private void createSshCredentialFiles(CredentialFileSession session, SSHUserPrivateKey sshUser, URIish url)
+            throws IOException, InterruptedException {
+        File key = session.addFile(createSshKeyFile(sshUser));
+        // Prefer url username if set, OpenSSH 7.7 argument precedence change
+        // See JENKINS-50573 for details
+        String userName = url.getUser();
+        if (userName == null) {
+            userName = sshUser.getUsername();
+        }
+        File ssh;
+        if (launcher.isUnix()) {
+            ssh = session.addFile(createUnixGitSSH(key, userName));
+        } else {
+            ssh = session.addFile(createWindowsGitSSH(key, userName));
+        }
+        session.putEnvironment("GIT_SSH", ssh.getAbsolutePath());
+        session.putEnvironment("GIT_SSH_VARIANT", "ssh");
+
+        if (useCredentialHelperServer(session, null, Secret.toString(sshUser.getPassphrase()))) {
+            return;
+        }
+        File passphrase = session.addFile(createPassphraseFile(sshUser));
+        File askpass;
+        if (launcher.isUnix()) {
+            askpass = session.addFile(createUnixSshAskpass(sshUser, passphrase));
+        } else {
+            askpass = session.addFile(createWindowsSshAskpass(sshUser, passphrase));
+        }
+        session.putEnvironment("SSH_ASKPASS", askpass.getAbsolutePath());
+    }
+
+    private void createUsernamePasswordCredentialFiles(CredentialFileSession session, StandardUsernamePasswordCredentials userPass)
+            throws IOException {
+        if (useCredentialHelperServer(session, userPass.getUsername(), Secret.toString(userPass.getPassword()))) {
+            return;
+        }
+        File usernameFile = session.addFile(createUsernameFile(userPass));
+        File passwordFile = session.addFile(createPasswordFile(userPass));
+        File askpass;
+        if (launcher.isUnix()) {
+            askpass = session.addFile(createUnixStandardAskpass(userPass, usernameFile, passwordFile));
+        } else {
+            askpass = session.addFile(createWindowsStandardAskpass(userPass, usernameFile, passwordFile));
+        }
+
+        session.putEnvironment("GIT_ASKPASS", askpass.getAbsolutePath());
+        session.putEnvironment("SSH_ASKPASS", askpass.getAbsolutePath());
+    }
+
+    /* Points the askpass variables of the session at the credential helper server, false if it is not used */
+    private boolean useCredentialHelperServer(CredentialFileSession session, String username, String secret) {
+        if (!USE_CREDENTIAL_HELPER_SERVER || !launcher.isUnix()) {
+            return false;
+        }
+        CredentialHelperServer server = CredentialHelperServer.getInstance();
+        if (server == null) {
+            return false;
+        }
+        String token = server.register(username, secret);
+        session.addCleanup(() -> server.unregister(token));
+        String askpass = server.getScript().getAbsolutePath();
+        session.putEnvironment(CredentialHelperServer.TOKEN_VARIABLE, token);
+        session.putEnvironment("GIT_ASKPASS", askpass);
+        session.putEnvironment("SSH_ASKPASS", askpass);
+        return true;
+    }
+
+    private synchronized CredentialFileSession.Cache<CredentialFileKey> credentialFileSessions() {
+        if (credentialFileSessions == null) {
+            credentialFileSessions = new CredentialFileSession.Cache<>(
+                    TimeUnit.SECONDS.toMillis(CREDENTIAL_FILES_IDLE_SECONDS), this::deleteTempFile);
+        }
+        return credentialFileSessions;
+    }
+
+    /* Credential files are shared by commands using the same credentials instance and URL */
+    private static final class CredentialFileKey {
+        private final StandardCredentials credentials;
+        private final String url;
+
+        CredentialFileKey(StandardCredentials credentials, URIish url) {
+            this.credentials = credentials;
+            this.url = url.toPrivateString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CredentialFileKey)) {
+                return false;
+            }
+            CredentialFileKey other = (CredentialFileKey) o;
+            // identity, credentials replaced with addCredentials get their own files
+            return credentials == other.credentials && url.equals(other.url);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(credentials) * 31 + url.hashCode();
         }
     }
 
@@ -2268,8 +2720,29 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             return sshexe;
         }
 
+        // Search near the git executable, the result only depends on that executable
+        String cachedSshExe = GitProbeCache.get(gitProbeKey(), "sshexe", () -> {
+            File found = findSSHExeNearGitExe();
+            return found == null ? null : found.getPath();
+        });
+        if (cachedSshExe != null && new File(cachedSshExe).exists()) {
+            return new File(cachedSshExe);
+        }
+        if (cachedSshExe != null) {
+            // cached location removed, search again
+            sshexe = findSSHExeNearGitExe();
+            if (sshexe != null) {
+                return sshexe;
+            }
+        }
+
+        throw new RuntimeException("ssh executable not found. The git plugin only supports official git client http://git-scm.com/download/win");
+    }
+
+    @CheckForNull
+    private File findSSHExeNearGitExe() {
         // Search for an ssh.exe near the git executable.
-        sshexe = getSSHExeFromGitExeParentDir(gitExe);
+        File sshexe = getSSHExeFromGitExeParentDir(gitExe);
         if (sshexe != null && sshexe.exists()) {
             return sshexe;
         }
@@ -2301,8 +2774,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 return sshexe;
             }
         }
-
-        throw new RuntimeException("ssh executable not found. The git plugin only supports official git client http://git-scm.com/download/win");
+        return null;
     }
 
     private File createWindowsGitSSH(File key, String user) throws IOException {
@@ -2377,7 +2849,52 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         return IOUtils.toString(process.getStdout(), encoding);
     }
 
+    @SuppressFBWarnings(value = "NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE", justification = "earlier readStdout() call prevents null return")
+    private void copyProcessStdout(Proc process, OutputStream stdoutStream) throws IOException {
+        /* process.getStdout reference is the findbugs warning to be suppressed */
+        IOUtils.copy(process.getStdout(), stdoutStream);
+    }
+
+    /* Streamed output has already been handed to its consumer and is not available for the error message */
+    private String describeStdout(OutputStream stdoutStream) throws IOException {
+        if (stdoutStream instanceof ByteArrayOutputStream) {
+            return ((ByteArrayOutputStream) stdoutStream).toString(encoding);
+        }
+        if (stdoutStream instanceof SpillingOutputStream) {
+            return ((SpillingOutputStream) stdoutStream).head(MAX_STDOUT_IN_MESSAGE, Charset.forName(encoding));
+        }
+        return "(streamed)";
+    }
+
     private String launchCommandIn(ArgumentListBuilder args, File workDir, EnvVars env, Integer timeout) throws GitException, InterruptedException {
+        SpillingOutputStream stdoutStream = new SpillingOutputStream(OUTPUT_MEMORY_LIMIT, null);
+        try {
+            launchCommandIn(args, workDir, env, timeout, stdoutStream);
+            return stdoutStream.toString(Charset.forName(encoding));
+        } catch (IOException e) {
+            throw new GitException("Error performing git command: " + StringUtils.join(args.toCommandArray(), " "), e);
+        } finally {
+            stdoutStream.delete();
+        }
+    }
+
+    /**
+     * Launch command in workDir and hand each line of its standard output
+     * to the consumer while the process runs. The output is not retained,
+     * so memory use does not depend on the size of the output.
+     */
+    private void launchCommandIn(ArgumentListBuilder args, File workDir, EnvVars env, Integer timeout,
+                                 Consumer<String> stdoutLineConsumer) throws GitException, InterruptedException {
+        LineConsumingOutputStream stdoutStream = new LineConsumingOutputStream(Charset.forName(encoding), stdoutLineConsumer);
+        launchCommandIn(args, workDir, env, timeout, stdoutStream);
+    }
+
+    /**
+     * Launch command in workDir, copying its standard output to stdoutStream.
+     * The stream is closed once the process completed successfully.
+     */
+    private void launchCommandIn(ArgumentListBuilder args, File workDir, EnvVars env, Integer timeout,
+                                 OutputStream stdoutStream) throws GitException, InterruptedException {
 
         EnvVars freshEnv = new EnvVars(env);
         // If we don't have credentials, but the requested URL requires them,
@@ -2388,6 +2905,14 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             freshEnv.put("GIT_ASKPASS", "echo");
         }
         String command = gitExe + " " + StringUtils.join(args.toCommandArray(), " ");
+        String operation = gitSubcommand(args.toCommandArray());
+        boolean reportsProgress = args.toList().contains("--progress");
+        GitFlightRecorder.Event event = GitFlightRecorder.beginProcess();
+        long start = System.nanoTime();
+        int status = -1;
+        long stderrBytes = -1;
+        String stderr = null;
+        CountingOutputStream countingStdout = new CountingOutputStream(stdoutStream);
         try {
             args.prepend(gitExe);
             if (CALL_SETSID && launcher.isUnix() && env.containsKey("GIT_SSH") && env.containsKey("DISPLAY")) {
@@ -2404,10 +2929,6 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 p.pwd(workDir);
             }
 
-            int status;
-            String stdout;
-            String stderr;
-
             if (isZos()) {
                 // Another behavior on z/OS required due to the race condition happening during transcoding of charset in
                 // EBCDIC code page if CopyThread is used on IBM z/OS Java. For unclear reason, if we rely on Proc class consumption
@@ -2418,30 +2939,58 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
                 status = process.joinWithTimeout(usedTimeout, TimeUnit.MINUTES, listener);
 
-                stdout = readProcessIntoString(process, encoding, false);
+                copyProcessStdout(process, countingStdout);
                 stderr = readProcessIntoString(process, encoding, true);
+                stderrBytes = stderr.getBytes(encoding).length;
             } else {
                 // JENKINS-13356: capture stdout and stderr separately
-                ByteArrayOutputStream stdoutStream = new ByteArrayOutputStream();
                 ByteArrayOutputStream stderrStream = new ByteArrayOutputStream();
+                OutputStream stderrSink = stderrStream;
+                if (reportsProgress) {
+                    // parse progress while it streams in, the captured stderr is still used for errors
+                    GitProgressReporter progress = new GitProgressReporter(listener);
+                    stderrSink = new TeeOutputStream(stderrStream, new LineConsumingOutputStream(Charset.forName(encoding), true, line -> {
+                        GitProgress parsed = GitProgress.parse(operation, line);
+                        if (parsed != null) {
+                            progress.update(parsed);
+                        }
+                    }));
+                }
 
-                p.stdout(stdoutStream).stderr(stderrStream);
+                p.stdout(countingStdout).stderr(stderrSink);
                 status = p.start().joinWithTimeout(usedTimeout, TimeUnit.MINUTES, listener);
 
-                stdout = stdoutStream.toString(encoding);
                 stderr = stderrStream.toString(encoding);
+                stderrBytes = stderrStream.size();
             }
 
             if (status != 0) {
-                throw new GitException("Command \"" + command + "\" returned status code " + status + ":\nstdout: " + stdout + "\nstderr: "+ stderr);
+                throw new GitException("Command \"" + command + "\" returned status code " + status + ":\nstdout: " + describeStdout(stdoutStream) + "\nstderr: "+ stderr);
             }
 
-            return stdout;
+            stdoutStream.close();
         } catch (GitException | InterruptedException e) {
             throw e;
         } catch (Throwable e) {
             throw new GitException("Error performing git command: " + command, e);
+        } finally {
+            GitCommandMetrics.record(new GitCommandMetrics.Event("git", operation, System.nanoTime() - start, status,
+                    countingStdout.getByteCount(), stderrBytes, GitCommandMetrics.parseReceivedBytes(stderr)));
+            event.commit(workDir, "git", operation, status);
+        }
+    }
+
+    /* First argument naming a git subcommand, skipping global options like -c name=value */
+    private static String gitSubcommand(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-c") || arg.equals("-C")) {
+                i++;
+            } else if (!arg.startsWith("-")) {
+                return arg;
+            }
         }
+        return "git";
     }
 
     /**
@@ -2499,6 +3048,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 if (remote == null) {
                     throw new GitException("PushCommand requires a 'remote'");
                 }
+                invalidateRefSnapshot();
                 args.add("push", remote.toPrivateASCIIString());
 
                 if (refspec != null) {
@@ -2520,6 +3070,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 StandardCredentials cred = credentials.get(remote.toPrivateString());
                 if (cred == null) cred = defaultCredentials;
                 launchCommandWithCredentials(args, workspace, cred, remote, timeout);
+                RemoteRefCache.invalidate(remote.toPrivateString());
                 // Ignore output for now as there's many different formats
                 // That are possible.
             }
@@ -2550,20 +3101,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         String line;
         try {
             while ((line = rdr.readLine()) != null) {
-                if (line.length() < 44 || !line.contains(" ")) {
-                    // Line must contain 2 leading characters, branch
-                    // name (at least 1 character), a space, and 40
-                    // character SHA1.
-                    continue;
-                }
-                // Ignore leading 2 characters (marker for current branch)
-                // Ignore line if second field is not SHA1 length (40 characters)
-                // Split fields into branch name, SHA1, and rest of line
-                // Fields are separated by one or more spaces
-                String[] branchVerboseOutput = line.substring(2).split(" +", 3);
-                if (branchVerboseOutput.length > 1 && branchVerboseOutput[1].length() == 40) {
-                    branches.add(new Branch(branchVerboseOutput[0], ObjectId.fromString(branchVerboseOutput[1])));
-                }
+                parseBranchLine(line, branches);
             }
         } catch (IOException e) {
             throw new GitException("Error parsing branches", e);
@@ -2572,6 +3110,37 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         return branches;
     }
 
+    /**
+     * Parses a single line of "git branch -v --no-abbrev" output and adds
+     * the branch it describes to branches. Lines which do not describe a
+     * branch are ignored.
+     */
+    private void parseBranchLine(String line, Set<Branch> branches) {
+        // JENKINS-34309 drop CR characters from commit messages containing line breaks
+        line = line.replace("\r", "");
+        if (line.length() < 44 || !line.contains(" ")) {
+            // Line must contain 2 leading characters, branch
+            // name (at least 1 character), a space, and 40
+            // character SHA1.
+            return;
+        }
+        // Ignore leading 2 characters (marker for current branch)
+        // Ignore line if second field is not SHA1 length (40 characters)
+        // Split fields into branch name, SHA1, and rest of line
+        // Fields are separated by one or more spaces
+        String[] branchVerboseOutput = line.substring(2).split(" +", 3);
+        if (branchVerboseOutput.length > 1 && branchVerboseOutput[1].length() == 40) {
+            branches.add(new Branch(branchVerboseOutput[0], ObjectId.fromString(branchVerboseOutput[1])));
+        }
+    }
+
+    /* Run "git branch" with the given arguments, parsing its output while it is produced */
+    private Set<Branch> launchBranchCommand(String... args) throws GitException, InterruptedException {
+        Set<Branch> branches = new HashSet<>();
+        launchCommandIn(new ArgumentListBuilder(args), workspace, environment, TIMEOUT, line -> parseBranchLine(line, branches));
+        return branches;
+    }
+
     /**
      * Returns the set of branches defined in this repository,
      * including local branches and remote branches. Remote branches
@@ -2583,7 +3152,23 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      */
     @Override
     public Set<Branch> getBranches() throws GitException, InterruptedException {
-        return parseBranches(launchCommand("branch", "-a", "-v", "--no-abbrev"));
+        RefSnapshot snapshot = refSnapshot();
+        if (snapshot != null) {
+            Set<Branch> branches = new HashSet<>();
+            for (RefSnapshot.Ref ref : snapshot.getRefs()) {
+                if (ref.isSymbolic()) {
+                    continue; // "git branch -a -v" reports them as "name -> target", not as branch
+                }
+                String name = ref.getName();
+                if (name.startsWith(Constants.R_HEADS)) {
+                    branches.add(new Branch(name.substring(Constants.R_HEADS.length()), ref.getObjectId()));
+                } else if (name.startsWith(Constants.R_REMOTES)) {
+                    branches.add(new Branch("remotes/" + name.substring(Constants.R_REMOTES.length()), ref.getObjectId()));
+                }
+            }
+            return branches;
+        }
+        return launchBranchCommand("branch", "-a", "-v", "--no-abbrev");
     }
 
     /**
@@ -2703,12 +3288,17 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public void execute() throws GitException, InterruptedException {
+                GitFlightRecorder.time(workspace, "git", "checkout", this::doExecute);
+            }
+
+            private void doExecute() throws GitException, InterruptedException {
                 /* File.lastModified() limited by file system time, several
                  * popular Linux file systems only have 1 second granularity.
                  * None of the common file systems (Windows or Linux) have
                  * millisecond granularity.
                  */
                 final long startTimeSeconds = (System.currentTimeMillis() / 1000) * 1000 ;
+                invalidateRefSnapshot();
                 try {
 
                     /* Testing only - simulate command line git leaving a lock file */
@@ -2883,6 +3473,15 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public boolean tagExists(String tagName) throws GitException, InterruptedException {
+        RefSnapshot snapshot = refSnapshot();
+        if (snapshot != null) {
+            return snapshot.get(Constants.R_TAGS + tagName) != null;
+        }
+        try {
+            return queryObject(Constants.R_TAGS + tagName, false) != null;
+        } catch (IOException e) {
+            // cat-file session not available, list tags instead
+        }
         return launchCommand("tag", "-l", tagName).trim().equals(tagName);
     }
 
@@ -2890,6 +3489,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public void deleteBranch(String name) throws GitException, InterruptedException {
         try {
+            invalidateRefSnapshot();
             launchCommand("branch", "-D", name);
         } catch (GitException e) {
             throw new GitException("Could not delete branch " + name, e);
@@ -2903,6 +3503,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     public void deleteTag(String tagName) throws GitException, InterruptedException {
         tagName = tagName.replace(' ', '_');
         try {
+            invalidateRefSnapshot();
             launchCommand("tag", "-d", tagName);
         } catch (GitException e) {
             throw new GitException("Could not delete tag " + tagName, e);
@@ -2913,19 +3514,16 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public List<IndexEntry> lsTree(String treeIsh, boolean recursive) throws GitException, InterruptedException {
         List<IndexEntry> entries = new ArrayList<>();
-        String result = launchCommand("ls-tree", recursive?"-r":null, treeIsh);
-
-        BufferedReader rdr = new BufferedReader(new StringReader(result));
-        String line;
-        try {
-            while ((line = rdr.readLine()) != null) {
-                String[] entry = line.split("\\s+");
-                entries.add(new IndexEntry(entry[0], entry[1], entry[2],
-                                           entry[3]));
-            }
-        } catch (IOException e) {
-            throw new GitException("Error parsing ls tree", e);
+        ArgumentListBuilder args = new ArgumentListBuilder("ls-tree");
+        if (recursive) {
+            args.add("-r");
         }
+        args.add(treeIsh);
+        launchCommandIn(args, workspace, environment, TIMEOUT, line -> {
+            String[] entry = line.split("\\s+");
+            entries.add(new IndexEntry(entry[0], entry[1], entry[2],
+                                       entry[3]));
+        });
 
         return entries;
     }
@@ -3007,21 +3605,18 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                    args.add(refspec);
                 }
 
-                String result = launchCommand(args);
-                BufferedReader rdr = new BufferedReader(new StringReader(result));
-                String line;
-
                 if (out == null) {
                     throw new GitException("RevListCommand requires a value for 'to'");
                 }
-                try {
-                    while ((line = rdr.readLine()) != null) {
-                        // Add the SHA1
-                        out.add(ObjectId.fromString(line));
+                final List<ObjectId> revs = out;
+                // Add each SHA1 as it is listed instead of buffering the whole output
+                launchCommandIn(args, workspace, environment, TIMEOUT, line -> {
+                    try {
+                        revs.add(ObjectId.fromString(line));
+                    } catch (IllegalArgumentException e) {
+                        throw new GitException("Error parsing rev list", e);
                     }
-                } catch (IOException e) {
-                    throw new GitException("Error parsing rev list", e);
-                }
+                });
             }
         };
     }
@@ -3062,6 +3657,13 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         if (commit == null) {
             return false;
         }
+        try {
+            // peel like "rev-list --no-walk", so that an annotated tag of an existing commit is found
+            CatFileBatch.GitObjectData object = queryObject(commit.name() + "^{commit}", false);
+            return object != null && Constants.TYPE_COMMIT.equals(object.getType());
+        } catch (IOException e) {
+            // cat-file session not available, use rev-list instead
+        }
         try {
             // Use revList_() directly in order to pass .nowalk(true) which
             // allows us to bypass the unnecessary revision walk when we
@@ -3093,6 +3695,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public void branch(String name) throws GitException, InterruptedException {
         try {
+            invalidateRefSnapshot();
             launchCommand("branch", name);
         } catch (GitException e) {
             throw new GitException("Cannot create branch " + name, e);
@@ -3108,6 +3711,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             try (OutputStream out = Files.newOutputStream(f.toPath())) {
                 out.write(message.getBytes(Charset.defaultCharset().toString()));
             }
+            invalidateRefSnapshot();
             launchCommand("commit", "-F", f.getAbsolutePath());
 
         } catch (GitException | IOException e) {
@@ -3189,24 +3793,19 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public Set<String> getRemoteTagNames(String tagPattern) throws GitException {
         try {
-            ArgumentListBuilder args = new ArgumentListBuilder();
-            args.add("ls-remote", "--tags");
+            ArgumentListBuilder args = lsRemote();
+            args.add("--tags");
             String remoteUrl = getRemoteUrl("origin");
             if (remoteUrl != null) {
                 addCheckedRemoteUrl(args, remoteUrl);
             }
             if (tagPattern != null)
                 args.add(tagPattern);
-            String result = launchCommandIn(args, workspace);
             Set<String> tags = new HashSet<>();
-            BufferedReader rdr = new BufferedReader(new StringReader(result));
-            String tag;
-            while ((tag = rdr.readLine()) != null) {
-                // Add the tag name without the SHA1
-                tags.add(tag.replaceFirst(".*refs/tags/", ""));
-            }
+            // Add the tag name without the SHA1
+            launchCommandIn(args, workspace, environment, TIMEOUT, tag -> tags.add(tag.replaceFirst(".*refs/tags/", "")));
             return tags;
-        } catch (GitException | IOException | InterruptedException e) {
+        } catch (GitException | InterruptedException e) {
             throw new GitException("Error retrieving remote tag names", e);
         }
     }
@@ -3215,20 +3814,28 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public Set<String> getTagNames(String tagPattern) throws GitException {
         try {
+            RefSnapshot snapshot = refSnapshot();
+            if (snapshot != null) {
+                Set<String> tags = new HashSet<>();
+                for (RefSnapshot.Ref ref : snapshot.getRefs()) {
+                    String name = ref.getName();
+                    if (name.startsWith(Constants.R_TAGS)) {
+                        String tag = name.substring(Constants.R_TAGS.length());
+                        if (tagPattern == null || RefSnapshot.tagMatches(tagPattern, tag)) {
+                            tags.add(tag);
+                        }
+                    }
+                }
+                return tags;
+            }
+
             ArgumentListBuilder args = new ArgumentListBuilder();
             args.add("tag", "-l", tagPattern);
 
-            String result = launchCommandIn(args, workspace);
-
             Set<String> tags = new HashSet<>();
-            BufferedReader rdr = new BufferedReader(new StringReader(result));
-            String tag;
-            while ((tag = rdr.readLine()) != null) {
-                // Add the SHA1
-                tags.add(tag);
-            }
+            launchCommandIn(args, workspace, environment, TIMEOUT, tags::add);
             return tags;
-        } catch (GitException | IOException | InterruptedException e) {
+        } catch (GitException | InterruptedException e) {
             throw new GitException("Error retrieving tag names", e);
         }
     }
@@ -3236,6 +3843,14 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public String getTagMessage(String tagName) throws GitException, InterruptedException {
+        try {
+            CatFileBatch.GitObjectData object = queryObject(Constants.R_TAGS + tagName, true);
+            if (object != null) {
+                return objectMessage(object);
+            }
+        } catch (IOException e) {
+            // cat-file session not available, list tag instead
+        }
         // 10000 lines of tag message "ought to be enough for anybody"
         String out = launchCommand("tag", "-l", tagName, "-n10000");
         // Strip the leading four spaces which git prefixes multi-line messages with
@@ -3247,6 +3862,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     public void ref(String refName) throws GitException, InterruptedException {
 	refName = refName.replace(' ', '_');
 	try {
+	    invalidateRefSnapshot();
 	    launchCommand("update-ref", refName, "HEAD");
 	} catch (GitException e) {
 	    throw new GitException("Could not apply ref " + refName, e);
@@ -3257,6 +3873,15 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public boolean refExists(String refName) throws GitException, InterruptedException {
 	refName = refName.replace(' ', '_');
+	RefSnapshot snapshot = refSnapshot();
+	if (snapshot != null) {
+	    for (RefSnapshot.Ref ref : snapshot.getRefs()) {
+		if (RefSnapshot.showRefMatches(refName, ref.getName())) {
+		    return true;
+		}
+	    }
+	    return false;
+	}
 	try {
 	    launchCommand("show-ref", refName);
 	    return true; // If show-ref returned zero, ref exists.
@@ -3270,6 +3895,7 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     public void deleteRef(String refName) throws GitException, InterruptedException {
 	refName = refName.replace(' ', '_');
 	try {
+	    invalidateRefSnapshot();
 	    launchCommand("update-ref", "-d", refName);
 	} catch (GitException e) {
 	    throw new GitException("Could not delete ref " + refName, e);
@@ -3284,16 +3910,21 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 	} else {
 	    refPrefix = refPrefix.replace(' ', '_');
 	}
-	try {
-	    String result = launchCommand("for-each-ref", "--format=%(refname)", refPrefix);
+	RefSnapshot snapshot = refSnapshot();
+	if (snapshot != null) {
 	    Set<String> refs = new HashSet<>();
-	    BufferedReader rdr = new BufferedReader(new StringReader(result));
-	    String ref;
-	    while ((ref = rdr.readLine()) != null) {
-		refs.add(ref);
+	    for (RefSnapshot.Ref ref : snapshot.getRefs()) {
+		if (RefSnapshot.forEachRefMatches(refPrefix, ref.getName())) {
+		    refs.add(ref.getName());
+		}
 	    }
 	    return refs;
-	} catch (GitException | IOException e) {
+	}
+	try {
+	    Set<String> refs = new HashSet<>();
+	    launchCommandIn(new ArgumentListBuilder("for-each-ref", "--format=%(refname)", refPrefix), workspace, environment, TIMEOUT, refs::add);
+	    return refs;
+	} catch (GitException e) {
 	    throw new GitException("Error retrieving refs with prefix " + refPrefix, e);
 	}
     }
@@ -3301,34 +3932,41 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public Map<String, ObjectId> getHeadRev(String url) throws GitException, InterruptedException {
-        ArgumentListBuilder args = new ArgumentListBuilder("ls-remote");
+        return new HashMap<>(RemoteRefCache.get(url, credentialsFor(url), "git heads", () -> listHeadRevs(url)));
+    }
+
+    private Map<String, ObjectId> listHeadRevs(String url) throws GitException, InterruptedException {
+        ArgumentListBuilder args = lsRemote();
         args.add("-h");
         addCheckedRemoteUrl(args, url);
 
         StandardCredentials cred = credentials.get(url);
         if (cred == null) cred = defaultCredentials;
 
-        String result = launchCommandWithCredentials(args, null, cred, url);
-
         Map<String, ObjectId> heads = new HashMap<>();
-        String[] lines = result.split("\n");
-        for (String line : lines) {
+        launchCommandWithCredentials(args, null, cred, url, line -> {
             if (line.length() >= 41) {
                 heads.put(line.substring(41), ObjectId.fromString(line.substring(0, 40)));
             } else {
                 listener.getLogger().println("Unexpected ls-remote output line '" + line + "'");
             }
-        }
+        });
         return heads;
     }
 
     /** {@inheritDoc} */
     @Override
     public ObjectId getHeadRev(String url, String branchSpec) throws GitException, InterruptedException {
+        return RemoteRefCache.get(url, credentialsFor(url), "git head " + branchSpec, () -> listHeadRev(url, branchSpec));
+    }
+
+    private ObjectId listHeadRev(String url, String branchSpec) throws GitException, InterruptedException {
         final String branchName = extractBranchNameFromBranchSpec(branchSpec);
-        ArgumentListBuilder args = new ArgumentListBuilder("ls-remote");
+        ArgumentListBuilder args = lsRemote();
         if(!branchName.startsWith("refs/tags/")) {
             args.add("-h");
+        } else {
+            args.add("-t");
         }
 
         StandardCredentials cred = credentials.get(url);
@@ -3349,11 +3987,19 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public Map<String, ObjectId> getRemoteReferences(String url, String pattern, boolean headsOnly, boolean tagsOnly)
             throws GitException, InterruptedException {
-        ArgumentListBuilder args = new ArgumentListBuilder("ls-remote");
-        if (headsOnly) {
+        String query = "git refs " + pattern + " " + headsOnly + " " + tagsOnly;
+        return new HashMap<>(RemoteRefCache.get(url, credentialsFor(url), query,
+                () -> listRemoteReferences(url, pattern, headsOnly, tagsOnly)));
+    }
+
+    private Map<String, ObjectId> listRemoteReferences(String url, String pattern, boolean headsOnly, boolean tagsOnly)
+            throws GitException, InterruptedException {
+        ArgumentListBuilder args = lsRemote();
+        if (headsOnly || (!tagsOnly && pattern != null && pattern.startsWith(Constants.R_HEADS))) {
+            // a pattern below refs/heads/ cannot match other refs, the server only needs to list the heads
             args.add("-h");
         }
-        if (tagsOnly) {
+        if (tagsOnly || (!headsOnly && pattern != null && pattern.startsWith(Constants.R_TAGS))) {
             args.add("-t");
         }
         addCheckedRemoteUrl(args, url);
@@ -3364,13 +4010,10 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         StandardCredentials cred = credentials.get(url);
         if (cred == null) cred = defaultCredentials;
 
-        String result = launchCommandWithCredentials(args, null, cred, url);
-
         Map<String, ObjectId> references = new HashMap<>();
-        String[] lines = result.split("\n");
-        for (String line : lines) {
+        launchCommandWithCredentials(args, null, cred, url, line -> {
             if (line.length() < 41) {
-                continue; // throw new GitException("unexpected ls-remote output " + line);
+                return; // throw new GitException("unexpected ls-remote output " + line);
             }
             String refName = line.substring(41);
             ObjectId refObjectId = ObjectId.fromString(line.substring(0, 40));
@@ -3384,19 +4027,71 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     references.put(refName, refObjectId);
                 }
             }
+        });
+        return references;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public RemoteSnapshot getRemoteSnapshot(String url) throws GitException, InterruptedException {
+        return RemoteRefCache.get(url, credentialsFor(url), "git snapshot", () -> listRemoteSnapshot(url));
+    }
 
+    private RemoteSnapshot listRemoteSnapshot(String url) throws GitException, InterruptedException {
+        ArgumentListBuilder args = lsRemote();
+        if (isAtLeastVersion(2, 8, 0, 0)) {
+            // --symref is only understood by ls-remote starting from git 2.8.0
+            args.add("--symref");
         }
-        return references;
+        addCheckedRemoteUrl(args, url);
+        args.add(Constants.HEAD, Constants.R_HEADS + "*", Constants.R_TAGS + "*");
+
+        RemoteSnapshot.Builder snapshot = new RemoteSnapshot.Builder();
+        launchCommandWithCredentials(args, null, credentialsFor(url), url, line -> {
+            int tab = line.indexOf('\t');
+            if (tab < 0) {
+                listener.getLogger().println("Unexpected ls-remote output line '" + line + "'");
+            } else if (line.startsWith("ref: ")) {
+                snapshot.addSymbolicReference(line.substring(tab + 1), line.substring(5, tab).trim());
+            } else if (tab == 40) {
+                snapshot.add(line.substring(tab + 1), ObjectId.fromString(line.substring(0, 40)));
+            }
+        });
+        return snapshot.build();
+    }
+
+    /* Credentials used for a URL */
+    private StandardCredentials credentialsFor(String url) {
+        StandardCredentials cred = credentials.get(url);
+        return cred != null ? cred : defaultCredentials;
+    }
+
+    /*
+     * Arguments of 'git ls-remote'. Protocol version 2 requires git 2.18,
+     * which sends the prefixes of --heads and --tags to the server.
+     */
+    private ArgumentListBuilder lsRemote() {
+        ArgumentListBuilder args = new ArgumentListBuilder();
+        if (USE_PROTOCOL_V2 && isAtLeastVersion(2, 18, 0, 0)) {
+            args.add("-c", "protocol.version=2");
+        }
+        return args.add("ls-remote");
     }
 
     @Override
     public Map<String, String> getRemoteSymbolicReferences(String url, String pattern)
             throws GitException, InterruptedException {
+        return new HashMap<>(RemoteRefCache.get(url, credentialsFor(url), "git symrefs " + pattern,
+                () -> listRemoteSymbolicReferences(url, pattern)));
+    }
+
+    private Map<String, String> listRemoteSymbolicReferences(String url, String pattern)
+            throws GitException, InterruptedException {
         Map<String, String> references = new HashMap<>();
         if (isAtLeastVersion(2, 8, 0, 0)) {
             // --symref is only understood by ls-remote starting from git 2.8.0
             // https://github.com/git/git/blob/afd6726309/Documentation/RelNotes/2.8.0.txt#L72-L73
-            ArgumentListBuilder args = new ArgumentListBuilder("ls-remote");
+            ArgumentListBuilder args = lsRemote();
             args.add("--symref");
             addCheckedRemoteUrl(args, url);
             if (pattern != null) {
@@ -3406,16 +4101,13 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             StandardCredentials cred = credentials.get(url);
             if (cred == null) cred = defaultCredentials;
 
-            String result = launchCommandWithCredentials(args, null, cred, url);
-
-            String[] lines = result.split("\n");
             Pattern symRefPattern = Pattern.compile("^ref:\\s+([^ ]+)\\s+([^ ]+)$");
-            for (String line : lines) {
+            launchCommandWithCredentials(args, null, cred, url, line -> {
                 Matcher matcher = symRefPattern.matcher(line);
                 if (matcher.matches()) {
                     references.put(matcher.group(2), matcher.group(1));
                 }
-            }
+            });
         }
         return references;
     }
@@ -3474,13 +4166,62 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public List<Branch> getBranchesContaining(String revspec, boolean allBranches)
             throws GitException, InterruptedException {
-        final String commandOutput;
+        List<Branch> indexed = branchesContaining(revspec, allBranches);
+        if (indexed != null) {
+            return indexed;
+        }
+        final Set<Branch> branches;
         if (allBranches) {
-            commandOutput = launchCommand("branch", "-a", "-v", "--no-abbrev", "--contains", revspec);
+            branches = launchBranchCommand("branch", "-a", "-v", "--no-abbrev", "--contains", revspec);
         } else {
-            commandOutput = launchCommand("branch", "-v", "--no-abbrev", "--contains", revspec);
+            branches = launchBranchCommand("branch", "-v", "--no-abbrev", "--contains", revspec);
+        }
+        return new ArrayList<>(branches);
+    }
+
+    /**
+     * Answers {@link #getBranchesContaining(String, boolean)} from the
+     * ref snapshot and the {@link ReachabilityIndex}, with the branch names
+     * of 'git branch -a'.
+     *
+     * @return branches containing revspec, null if git has to be asked,
+     * like for an invalid revspec or a repository JGit cannot read
+     */
+    @CheckForNull
+    private List<Branch> branchesContaining(String revspec, boolean allBranches) throws InterruptedException {
+        if (!USE_REACHABILITY_INDEX) {
+            return null;
+        }
+        RefSnapshot snapshot = refSnapshot();
+        if (snapshot == null) {
+            return null;
+        }
+        Map<String, Branch> branches = new HashMap<>();
+        Map<String, ObjectId> tips = new HashMap<>();
+        for (RefSnapshot.Ref ref : snapshot.getRefs()) {
+            if (ref.isSymbolic()) {
+                continue; // "git branch -a -v" reports them as "name -> target", not as branch
+            }
+            String name = ref.getName();
+            if (name.startsWith(Constants.R_HEADS)) {
+                branches.put(name, new Branch(name.substring(Constants.R_HEADS.length()), ref.getObjectId()));
+            } else if (allBranches && name.startsWith(Constants.R_REMOTES)) {
+                branches.put(name, new Branch("remotes/" + name.substring(Constants.R_REMOTES.length()), ref.getObjectId()));
+            } else {
+                continue;
+            }
+            tips.put(name, ref.getObjectId());
+        }
+        try (Repository repo = getRepository()) {
+            ObjectId target = revParse(revspec);
+            List<Branch> result = new ArrayList<>();
+            for (String name : ReachabilityIndex.getRefsContaining(repo, target, tips)) {
+                result.add(branches.get(name));
+            }
+            return result;
+        } catch (IOException | GitException e) {
+            return null;
         }
-        return new ArrayList<>(parseBranches(commandOutput));
     }
 
     /** {@inheritDoc} */
@@ -3554,47 +4295,43 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public Set<GitObject> getTags() throws GitException, InterruptedException {
-        ArgumentListBuilder args = new ArgumentListBuilder("show-ref", "--tags", "-d");
-        String result;
-        try {
-            result = launchCommandIn(args, workspace);
-        } catch (GitException ge) {
-            /* If no tags, then git show-ref --tags -d returns non-zero */
-            result = "";
+        RefSnapshot snapshot = refSnapshot();
+        if (snapshot != null) {
+            Set<GitObject> tags = new HashSet<>();
+            for (RefSnapshot.Ref ref : snapshot.getRefs()) {
+                String name = ref.getName();
+                if (!name.startsWith(Constants.R_TAGS)) {
+                    continue;
+                }
+                if (!ref.isFullyPeeled()) {
+                    // tag of a tag, let show-ref peel it completely
+                    tags = null;
+                    break;
+                }
+                ObjectId peeled = ref.getPeeledObjectId();
+                tags.add(new GitObject(name.substring(Constants.R_TAGS.length()), peeled != null ? peeled : ref.getObjectId()));
+            }
+            if (tags != null) {
+                return tags;
+            }
         }
+        ArgumentListBuilder args = new ArgumentListBuilder("show-ref", "--tags", "-d");
 
         /*
         Output shows SHA1 and tag with (optional) marker for annotated tags
         7ac27f7a051e1017da9f7c45ade8f091dbe6f99d refs/tags/git-3.6.4
         7b5856ef2b4d35530a06d6482d0f4e972769d89b refs/tags/git-3.6.4^{}
          */
-        String[] output = result.split("[\\n\\r]+");
-        if (output.length == 0 || (output.length == 1 && output[0].isEmpty())) {
-            return Collections.EMPTY_SET;
-        }
         Pattern pattern = Pattern.compile("(\\p{XDigit}{40})\\s+refs/tags/([^^]+)(\\^\\{\\})?");
         Map<String, ObjectId> tagMap = new HashMap<>();
-        for (String line : output) {
-            Matcher matcher = pattern.matcher(line);
-            if (!matcher.find()) {
-                // Log the surprise and skip the line
-                String message = MessageFormat.format(
-                        "git show-ref --tags -d output not matched in line: {0}",
-                        line);
-                listener.getLogger().println(message);
-                continue;
-            }
-            String sha1String = matcher.group(1);
-            String tagName = matcher.group(2);
-            String trailingText = matcher.group(3);
-            boolean isPeeledRef = false;
-            if (trailingText != null && trailingText.equals("^{}")) { // Line ends with '^{}'
-                isPeeledRef = true;
-            }
-            /* Prefer peeled ref if available (for tag commit), otherwise take first tag reference seen */
-            if (isPeeledRef || !tagMap.containsKey(tagName)) {
-                tagMap.put(tagName, ObjectId.fromString(sha1String));
-            }
+        try {
+            launchCommandIn(args, workspace, environment, TIMEOUT, line -> parseTagLine(line, pattern, tagMap));
+        } catch (GitException ge) {
+            /* If no tags, then git show-ref --tags -d returns non-zero */
+            return Collections.EMPTY_SET;
+        }
+        if (tagMap.isEmpty()) {
+            return Collections.EMPTY_SET;
         }
         Set<GitObject> tags = new HashSet<>(tagMap.size());
         for (Map.Entry<String, ObjectId> entry : tagMap.entrySet()) {
@@ -3602,4 +4339,30 @@ public class CliGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         }
         return tags;
     }
+
+    private void parseTagLine(String line, Pattern pattern, Map<String, ObjectId> tagMap) {
+        if (line.isEmpty()) {
+            return;
+        }
+        Matcher matcher = pattern.matcher(line);
+        if (!matcher.find()) {
+            // Log the surprise and skip the line
+            String message = MessageFormat.format(
+                    "git show-ref --tags -d output not matched in line: {0}",
+                    line);
+            listener.getLogger().println(message);
+            return;
+        }
+        String sha1String = matcher.group(1);
+        String tagName = matcher.group(2);
+        String trailingText = matcher.group(3);
+        boolean isPeeledRef = false;
+        if (trailingText != null && trailingText.equals("^{}")) { // Line ends with '^{}'
+            isPeeledRef = true;
+        }
+        /* Prefer peeled ref if available (for tag commit), otherwise take first tag reference seen */
+        if (isPeeledRef || !tagMap.containsKey(tagName)) {
+            tagMap.put(tagName, ObjectId.fromString(sha1String));
+        }
+    }
 }
@@ -8,6 +8,7 @@ import hudson.plugins.git.GitAPI;
 import hudson.remoting.VirtualChannel;
 import jenkins.model.Jenkins;
 import org.jenkinsci.plugins.gitclient.jgit.PreemptiveAuthHttpClientConnectionFactory;
+import org.jenkinsci.plugins.gitclient.jgit.WindowCacheTuning;
 
 import java.io.File;
 import java.io.IOException;
@@ -36,6 +37,7 @@ public class Git implements Serializable {
     private TaskListener listener;
     private EnvVars env;
     private String exe;
+    private WindowCacheTuning windowCache;
 
     /**
      * Constructor for a Git object. Either <code>Git.with(listener, env)</code>
@@ -108,6 +110,20 @@ public class Git implements Serializable {
         return this;
     }
 
+    /**
+     * Set the JGit window cache settings of the JVM which runs the JGit
+     * implementation. The settings apply to all repositories of that JVM and
+     * replace the settings of system properties. They are ignored by command
+     * line git.
+     *
+     * @param windowCache window cache settings, null to keep the installed settings
+     * @return {@link org.jenkinsci.plugins.gitclient.Git} object for repository access
+     */
+    public Git withWindowCache(WindowCacheTuning windowCache) {
+        this.windowCache = windowCache;
+        return this;
+    }
+
     /**
      * {@link org.jenkinsci.plugins.gitclient.GitClient} implementation. The {@link org.jenkinsci.plugins.gitclient.GitClient} interface
      * provides the key operations which can be performed on a git repository.
@@ -156,6 +172,15 @@ public class Git implements Serializable {
                         exe, env, f, listener);
             }
 
+            boolean jgit = exe == null || JGitTool.MAGIC_EXENAME.equalsIgnoreCase(exe) || JGitApacheTool.MAGIC_EXENAME.equalsIgnoreCase(exe);
+            if (jgit && windowCache != null) {
+                try {
+                    windowCache.install();
+                } catch (IllegalArgumentException e) {
+                    listener.getLogger().println("[WARNING] JGit window cache settings ignored: " + e.getMessage());
+                }
+            }
+
             if (exe == null || JGitTool.MAGIC_EXENAME.equalsIgnoreCase(exe)) {
                 return new JGitAPIImpl(f, listener);
             }
@@ -10,6 +10,7 @@ import hudson.FilePath;
 import hudson.ProxyConfiguration;
 import hudson.model.TaskListener;
 import hudson.plugins.git.*;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.Repository;
@@ -18,9 +19,13 @@ import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.URIish;
 
 import edu.umd.cs.findbugs.annotations.CheckForNull;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -189,6 +194,23 @@ public interface GitClient {
      */
     boolean hasGitRepo() throws GitException, InterruptedException;
 
+    /**
+     * Returns true if this repository is a shallow clone, that is if the
+     * history of some of its commits was not fetched.
+     *
+     * The default implementation looks for the <code>shallow</code> file
+     * in the directory of {@link #getRepository()}.
+     *
+     * @return true if this repository is a shallow clone
+     * @throws hudson.plugins.git.GitException if underlying git operation fails.
+     * @throws java.lang.InterruptedException if interrupted.
+     */
+    default boolean isShallowRepository() throws GitException, InterruptedException {
+        try (Repository repo = getRepository()) {
+            return new File(repo.getDirectory(), Constants.SHALLOW).exists();
+        }
+    }
+
     /**
      * isCommitInRepo.
      *
@@ -644,6 +666,54 @@ public interface GitClient {
      */
     Map<String, String> getRemoteSymbolicReferences(String remoteRepoUrl, String pattern) throws GitException, InterruptedException;
 
+    /**
+     * List the branches, tags and symbolic references of a remote repository from one ref advertisement, instead of
+     * one connection each for {@link #getRemoteReferences(String, String, boolean, boolean)} and
+     * {@link #getRemoteSymbolicReferences(String, String)}. Equivalent to
+     * <code>git ls-remote --symref &lt;repository&gt; HEAD refs/heads/* refs/tags/*</code>.
+     *
+     * The default implementation calls both methods.
+     *
+     * @param remoteRepoUrl Remote repository URL.
+     * @return branches, tags with the commits of annotated tags, symbolic references and HEAD of the repository.
+     * @throws hudson.plugins.git.GitException if underlying git operation fails.
+     * @throws java.lang.InterruptedException  if interrupted.
+     */
+    default RemoteSnapshot getRemoteSnapshot(String remoteRepoUrl) throws GitException, InterruptedException {
+        RemoteSnapshot.Builder snapshot = new RemoteSnapshot.Builder();
+        for (Map.Entry<String, ObjectId> ref : getRemoteReferences(remoteRepoUrl, null, false, false).entrySet()) {
+            snapshot.add(ref.getKey(), ref.getValue());
+        }
+        for (Map.Entry<String, String> ref : getRemoteSymbolicReferences(remoteRepoUrl, null).entrySet()) {
+            snapshot.addSymbolicReference(ref.getKey(), ref.getValue());
+        }
+        return snapshot.build();
+    }
+
+    /**
+     * List the branches, and optionally the tags, of a remote repository which were added, updated or removed since
+     * a previous poll. Pass the state returned by one call to the next call. If nothing changed, the refs are not
+     * compared one by one and the previous state is returned again.
+     *
+     * @param remoteRepoUrl Remote repository URL.
+     * @param previous      state returned by the previous call, or restored from its token, null if there was none.
+     * @param includeTags   true to compare tags too, with the commits of annotated tags.
+     * @param keepRefs      true if the returned state keeps the refs, so that the next call can list the changed refs.
+     *                      If false, the state keeps only a digest of the refs and the next call can only tell whether
+     *                      they changed.
+     * @return changed refs and the state of the refs now.
+     * @throws hudson.plugins.git.GitException if underlying git operation fails.
+     * @throws java.lang.InterruptedException  if interrupted.
+     */
+    default RemoteRefChanges getRemoteRefChanges(String remoteRepoUrl, RemoteRefState previous, boolean includeTags, boolean keepRefs) throws GitException, InterruptedException {
+        RemoteSnapshot snapshot = getRemoteSnapshot(remoteRepoUrl);
+        Map<String, ObjectId> refs = new HashMap<>(snapshot.getHeads());
+        if (includeTags) {
+            refs.putAll(snapshot.getTags());
+        }
+        return RemoteRefChanges.between(previous, refs, keepRefs);
+    }
+
     /**
      * Retrieve commit object that is direct child for <code>revName</code> revision reference.
      *
@@ -942,6 +1012,25 @@ public interface GitClient {
      */
     String describe(String commitIsh) throws GitException, InterruptedException;
 
+    /**
+     * Equivalent of "git-describe --tags" for several commits at once.
+     *
+     * The tags of the repository are read once for all commits. The default
+     * implementation describes one commit after the other.
+     *
+     * @param commitIshes commits to describe
+     * @return descriptions of the commits in the order of the commits, by commit
+     * @throws hudson.plugins.git.GitException if underlying git operation fails, or a commit cannot be described.
+     * @throws java.lang.InterruptedException if interrupted.
+     */
+    default Map<String, String> describe(Collection<String> commitIshes) throws GitException, InterruptedException {
+        Map<String, String> descriptions = new LinkedHashMap<>();
+        for (String commitIsh : commitIshes) {
+            descriptions.put(commitIsh, describe(commitIsh));
+        }
+        return descriptions;
+    }
+
     /**
      * setCredentials.
      *
@@ -0,0 +1,366 @@
+package org.jenkinsci.plugins.gitclient;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.plugins.git.GitException;
+
+/**
+ * Timing and throughput of the git operations run by the git clients of
+ * this JVM.
+ * <p>
+ * Command line git reports every git process it launches, named by its
+ * subcommand like <code>fetch</code> or <code>ls-remote</code>. JGit reports
+ * its network and working tree operations under the same names. Every
+ * operation is recorded in a latency {@link Histogram} per operation name
+ * and handed to the registered {@link Listener}s, which can forward it to a
+ * metrics system.
+ * <p>
+ * Git clients run on the machine holding the workspace, so the data is
+ * collected in the JVM of the agent running the operation.
+ */
+public final class GitCommandMetrics {
+
+    private static final Logger LOGGER = Logger.getLogger(GitCommandMetrics.class.getName());
+
+    private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+    private static final Map<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+
+    /* "Receiving objects: 100% (1234/1234), 5.67 MiB | 1.23 MiB/s, done." */
+    private static final Pattern RECEIVED = Pattern.compile("Receiving objects:\\s+100% \\(\\d+/\\d+\\), ([0-9]+(?:\\.[0-9]+)?) (bytes|KiB|MiB|GiB)");
+
+    private GitCommandMetrics() {
+    }
+
+    /**
+     * Receives every recorded operation. Called on the thread which ran the
+     * operation, implementations must be fast and thread safe.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onOperation(@NonNull Event event);
+    }
+
+    /**
+     * Registers a listener.
+     *
+     * @param listener listener to call for every operation
+     */
+    public static void addListener(@NonNull Listener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener listener registered with {@link #addListener(Listener)}
+     */
+    public static void removeListener(@NonNull Listener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * Returns the latency histogram of an operation.
+     *
+     * @param operation operation name, like <code>fetch</code>
+     * @return histogram, null if the operation was not recorded yet
+     */
+    @CheckForNull
+    public static Histogram getHistogram(@NonNull String operation) {
+        return HISTOGRAMS.get(operation);
+    }
+
+    /**
+     * @return latency histograms of all recorded operations, sorted by operation name
+     */
+    @NonNull
+    public static SortedMap<String, Histogram> getHistograms() {
+        return Collections.unmodifiableSortedMap(new TreeMap<>(HISTOGRAMS));
+    }
+
+    /**
+     * Forgets all recorded latencies.
+     */
+    public static void reset() {
+        HISTOGRAMS.clear();
+    }
+
+    /**
+     * Parses the amount of data received from the progress output command
+     * line git writes to standard error during a fetch or clone.
+     *
+     * @param stderr standard error of the git process, may be null
+     * @return received bytes, -1 if the output contains no progress
+     */
+    static long parseReceivedBytes(@CheckForNull String stderr) {
+        if (stderr == null) {
+            return -1;
+        }
+        Matcher matcher = RECEIVED.matcher(stderr);
+        long received = -1;
+        while (matcher.find()) {
+            double amount = Double.parseDouble(matcher.group(1));
+            switch (matcher.group(2)) {
+                case "GiB":
+                    amount *= 1024;
+                    // fall through
+                case "MiB":
+                    amount *= 1024;
+                    // fall through
+                case "KiB":
+                    amount *= 1024;
+                    break;
+                default:
+                    break;
+            }
+            // a fetch with submodules or several remotes reports once per transfer
+            received = Math.max(received, 0) + (long) amount;
+        }
+        return received;
+    }
+
+    /**
+     * Body of a git operation.
+     */
+    @FunctionalInterface
+    interface Operation {
+        void run() throws GitException, InterruptedException;
+    }
+
+    /**
+     * Runs a JGit operation and records it.
+     *
+     * @param operation operation name
+     * @param body the operation
+     */
+    static void timeJGit(@NonNull String operation, @NonNull Operation body) throws GitException, InterruptedException {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            body.run();
+            success = true;
+        } finally {
+            recordJGit(operation, start, success);
+        }
+    }
+
+    /**
+     * Records a JGit operation.
+     *
+     * @param operation operation name
+     * @param startNanos {@link System#nanoTime()} when the operation started
+     * @param success true if the operation completed without exception
+     */
+    static void recordJGit(@NonNull String operation, long startNanos, boolean success) {
+        record(new Event("jgit", operation, System.nanoTime() - startNanos, success ? 0 : -1, -1, -1, -1));
+    }
+
+    static void record(@NonNull Event event) {
+        HISTOGRAMS.computeIfAbsent(event.getOperation(), k -> new Histogram()).record(event.getDurationNanos());
+        for (Listener listener : LISTENERS) {
+            try {
+                listener.onOperation(event);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Git command metrics listener " + listener + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * One completed git operation.
+     */
+    public static final class Event {
+        private final String implementation;
+        private final String operation;
+        private final long durationNanos;
+        private final int exitStatus;
+        private final long stdoutBytes;
+        private final long stderrBytes;
+        private final long transferredBytes;
+
+        Event(String implementation, String operation, long durationNanos, int exitStatus,
+              long stdoutBytes, long stderrBytes, long transferredBytes) {
+            this.implementation = implementation;
+            this.operation = operation;
+            this.durationNanos = durationNanos;
+            this.exitStatus = exitStatus;
+            this.stdoutBytes = stdoutBytes;
+            this.stderrBytes = stderrBytes;
+            this.transferredBytes = transferredBytes;
+        }
+
+        /**
+         * @return <code>git</code> for command line git, <code>jgit</code> for JGit
+         */
+        @NonNull
+        public String getImplementation() {
+            return implementation;
+        }
+
+        /**
+         * @return operation name, like <code>fetch</code>, <code>checkout</code> or <code>ls-remote</code>
+         */
+        @NonNull
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * @return wall clock time of the operation in nanoseconds
+         */
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * @return exit status of the git process, 0 for a successful JGit operation, -1 for a failed JGit operation or a git process which did not complete
+         */
+        public int getExitStatus() {
+            return exitStatus;
+        }
+
+        public boolean isSuccess() {
+            return exitStatus == 0;
+        }
+
+        /**
+         * @return bytes written to standard output, -1 if there was no process
+         */
+        public long getStdoutBytes() {
+            return stdoutBytes;
+        }
+
+        /**
+         * @return bytes written to standard error, -1 if there was no process
+         */
+        public long getStderrBytes() {
+            return stderrBytes;
+        }
+
+        /**
+         * @return bytes received by a fetch or clone, -1 if not known
+         */
+        public long getTransferredBytes() {
+            return transferredBytes;
+        }
+
+        @Override
+        public String toString() {
+            return implementation + " " + operation + " " + TimeUnit.NANOSECONDS.toMillis(durationNanos) + " ms, status " + exitStatus;
+        }
+    }
+
+    /**
+     * Latency histogram with logarithmic buckets. Each bucket is 2^(1/4)
+     * times as wide as the previous one, so percentiles are accurate to
+     * about 20 percent, from 100 microseconds up to several days.
+     */
+    public static final class Histogram {
+        private static final long BASE_NANOS = 100_000;
+        private static final int BUCKETS_PER_DOUBLING = 4;
+        private static final int BUCKETS = 128;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        Histogram() {
+        }
+
+        void record(long nanos) {
+            counts.incrementAndGet(bucketOf(nanos));
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        static int bucketOf(long nanos) {
+            if (nanos <= BASE_NANOS) {
+                return 0;
+            }
+            int bucket = 1 + (int) Math.floor(BUCKETS_PER_DOUBLING * Math.log((double) nanos / BASE_NANOS) / Math.log(2));
+            return Math.min(bucket, BUCKETS - 1);
+        }
+
+        /* Upper bound of the durations counted in a bucket */
+        static long upperBoundNanos(int bucket) {
+            return (long) (BASE_NANOS * Math.pow(2, (double) bucket / BUCKETS_PER_DOUBLING));
+        }
+
+        /**
+         * @return number of recorded operations
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @return longest recorded duration in nanoseconds
+         */
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * @return mean recorded duration in nanoseconds, 0 if nothing was recorded
+         */
+        public long getMeanNanos() {
+            long n = count.get();
+            return n == 0 ? 0 : totalNanos.get() / n;
+        }
+
+        /**
+         * Returns an estimate of a percentile, like 0.5 for the median or
+         * 0.99 for the 99th percentile.
+         *
+         * @param quantile between 0 and 1
+         * @return duration in nanoseconds which that share of the operations did not exceed, 0 if nothing was recorded
+         */
+        public long getPercentileNanos(double quantile) {
+            if (quantile < 0 || quantile > 1) {
+                throw new IllegalArgumentException("Quantile " + quantile + " is not between 0 and 1");
+            }
+            long total = 0;
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundNanos(i), maxNanos.get());
+                }
+            }
+            return maxNanos.get();
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + getCount()
+                    + " p50=" + TimeUnit.NANOSECONDS.toMillis(getPercentileNanos(0.5)) + "ms"
+                    + " p99=" + TimeUnit.NANOSECONDS.toMillis(getPercentileNanos(0.99)) + "ms"
+                    + " max=" + TimeUnit.NANOSECONDS.toMillis(getMaxNanos()) + "ms";
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package org.jenkinsci.plugins.gitclient;
+
+import java.io.File;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.plugins.git.GitException;
+
+/**
+ * Emits Java Flight Recorder events for git operations, so git phases show
+ * up in JDK Mission Control next to garbage collection and thread activity.
+ * <p>
+ * Four event types are defined, all in the category Jenkins / Git:
+ * <ul>
+ * <li><code>org.jenkinsci.plugins.gitclient.GitFetch</code> for fetch and clone commands</li>
+ * <li><code>org.jenkinsci.plugins.gitclient.GitCheckout</code> for checkout commands</li>
+ * <li><code>org.jenkinsci.plugins.gitclient.GitCommand</code> for every command line git process and other JGit operations</li>
+ * <li><code>org.jenkinsci.plugins.gitclient.GitRemoteCommand</code> for commands sent to an agent</li>
+ * </ul>
+ * Each carries the repository path, the operation, the implementation and
+ * the exit status.
+ * <p>
+ * The plugin is compiled for Java 8, where the <code>jdk.jfr</code> API is
+ * not always present, so the event types are created at runtime through
+ * <code>jdk.jfr.EventFactory</code> by reflection. Without flight recorder
+ * support all events are no-ops.
+ */
+final class GitFlightRecorder {
+
+    private static final Logger LOGGER = Logger.getLogger(GitFlightRecorder.class.getName());
+
+    private static final Event DISABLED = new Event(null, null);
+
+    private static final EventType FETCH = EventType.create("GitFetch", "Git Fetch",
+            "Fetch or clone of a git repository");
+    private static final EventType CHECKOUT = EventType.create("GitCheckout", "Git Checkout",
+            "Checkout of a git working tree");
+    private static final EventType COMMAND = EventType.create("GitCommand", "Git Command",
+            "Command line git process or JGit operation");
+    private static final EventType REMOTE_COMMAND = EventType.create("GitRemoteCommand", "Git Remote Command",
+            "Git command sent to the agent holding the workspace");
+
+    private GitFlightRecorder() {
+    }
+
+    /**
+     * Starts timing an operation of a git client running in this JVM.
+     *
+     * @param operation operation name, like <code>fetch</code>
+     * @return event to commit when the operation is done
+     */
+    @NonNull
+    static Event begin(@NonNull String operation) {
+        switch (operation) {
+            case "fetch":
+            case "clone":
+                return begin(FETCH);
+            case "checkout":
+                return begin(CHECKOUT);
+            default:
+                return begin(COMMAND);
+        }
+    }
+
+    /**
+     * Starts timing a single command line git process.
+     *
+     * @return event to commit when the process is done
+     */
+    @NonNull
+    static Event beginProcess() {
+        return begin(COMMAND);
+    }
+
+    /**
+     * Starts timing a command sent to a remote git client.
+     *
+     * @return event to commit when the command is done
+     */
+    @NonNull
+    static Event beginRemote() {
+        return begin(REMOTE_COMMAND);
+    }
+
+    /**
+     * Runs an operation of a git client running in this JVM and records it.
+     *
+     * @param repository repository directory, may be null
+     * @param implementation <code>git</code> or <code>jgit</code>
+     * @param operation operation name, like <code>fetch</code>
+     * @param body the operation
+     */
+    static void time(@CheckForNull File repository, @NonNull String implementation, @NonNull String operation,
+                     @NonNull GitCommandMetrics.Operation body) throws GitException, InterruptedException {
+        Event event = begin(operation);
+        int status = -1;
+        try {
+            body.run();
+            status = 0;
+        } finally {
+            event.commit(repository, implementation, operation, status);
+        }
+    }
+
+    private static Event begin(@CheckForNull EventType type) {
+        if (type == null) {
+            return DISABLED;
+        }
+        try {
+            Object event = type.factory.newEvent();
+            if (!type.factory.isEnabled(event)) {
+                return DISABLED;
+            }
+            type.factory.begin(event);
+            return new Event(type.factory, event);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Cannot create flight recorder event", e);
+            return DISABLED;
+        }
+    }
+
+    /**
+     * One timed operation. Instances are not thread safe.
+     */
+    static final class Event {
+        private final Factory factory;
+        private final Object event;
+
+        private Event(Factory factory, Object event) {
+            this.factory = factory;
+            this.event = event;
+        }
+
+        /**
+         * Ends the operation and commits the event if the recording is interested in it.
+         *
+         * @param repository repository directory, may be null
+         * @param implementation <code>git</code>, <code>jgit</code> or <code>remote</code>
+         * @param operation operation name
+         * @param exitStatus 0 for success
+         */
+        void commit(@CheckForNull File repository, @NonNull String implementation, @NonNull String operation, int exitStatus) {
+            if (event == null) {
+                return;
+            }
+            try {
+                factory.end(event);
+                if (factory.shouldCommit(event)) {
+                    factory.set(event, 0, repository == null ? null : repository.getPath());
+                    factory.set(event, 1, implementation);
+                    factory.set(event, 2, operation);
+                    factory.set(event, 3, exitStatus);
+                    factory.set(event, 4, exitStatus == 0);
+                    factory.commit(event);
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Cannot commit flight recorder event", e);
+            }
+        }
+    }
+
+    /* Reflective access to jdk.jfr.EventFactory and jdk.jfr.Event */
+    private static final class Factory {
+        private final Object eventFactory;
+        private final Method newEvent;
+        private final Method isEnabled;
+        private final Method begin;
+        private final Method end;
+        private final Method shouldCommit;
+        private final Method set;
+        private final Method commit;
+
+        Factory(Object eventFactory) throws ReflectiveOperationException {
+            this.eventFactory = eventFactory;
+            Class<?> event = Class.forName("jdk.jfr.Event");
+            newEvent = eventFactory.getClass().getMethod("newEvent");
+            isEnabled = event.getMethod("isEnabled");
+            begin = event.getMethod("begin");
+            end = event.getMethod("end");
+            shouldCommit = event.getMethod("shouldCommit");
+            set = event.getMethod("set", int.class, Object.class);
+            commit = event.getMethod("commit");
+        }
+
+        Object newEvent() throws ReflectiveOperationException {
+            return invoke(newEvent, eventFactory);
+        }
+
+        boolean isEnabled(Object event) throws ReflectiveOperationException {
+            return (Boolean) invoke(isEnabled, event);
+        }
+
+        void begin(Object event) throws ReflectiveOperationException {
+            invoke(begin, event);
+        }
+
+        void end(Object event) throws ReflectiveOperationException {
+            invoke(end, event);
+        }
+
+        boolean shouldCommit(Object event) throws ReflectiveOperationException {
+            return (Boolean) invoke(shouldCommit, event);
+        }
+
+        void set(Object event, int index, Object value) throws ReflectiveOperationException {
+            invoke(set, event, index, value);
+        }
+
+        void commit(Object event) throws ReflectiveOperationException {
+            invoke(commit, event);
+        }
+
+        private static Object invoke(Method method, Object target, Object... args) throws ReflectiveOperationException {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    private static final class EventType {
+        private final Factory factory;
+
+        private EventType(Factory factory) {
+            this.factory = factory;
+        }
+
+        /**
+         * Defines an event type, null if flight recorder is not available.
+         */
+        @CheckForNull
+        static EventType create(String name, String label, String description) {
+            try {
+                Class<?> flightRecorder = Class.forName("jdk.jfr.FlightRecorder");
+                if (!(Boolean) flightRecorder.getMethod("isAvailable").invoke(null)) {
+                    return null;
+                }
+                List<Object> annotations = new ArrayList<>();
+                annotations.add(annotation("jdk.jfr.Name", GitFlightRecorder.class.getPackage().getName() + "." + name));
+                annotations.add(annotation("jdk.jfr.Label", label));
+                annotations.add(annotation("jdk.jfr.Description", description));
+                annotations.add(annotation("jdk.jfr.Category", new String[] {"Jenkins", "Git"}));
+                // the stack trace would only show the reflective call
+                annotations.add(annotation("jdk.jfr.StackTrace", false));
+
+                List<Object> fields = Arrays.asList(
+                        field(String.class, "repository", "Repository"),
+                        field(String.class, "implementation", "Implementation"),
+                        field(String.class, "operation", "Operation"),
+                        field(int.class, "exitStatus", "Exit Status"),
+                        field(boolean.class, "success", "Success"));
+
+                Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+                Object factory = eventFactory.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+                return new EventType(new Factory(factory));
+            } catch (ClassNotFoundException e) {
+                return null;
+            } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+                LOGGER.log(Level.FINE, "Cannot define flight recorder event " + name, e);
+                return null;
+            }
+        }
+
+        private static Object annotation(String type, Object value) throws ReflectiveOperationException {
+            Class<? extends Annotation> annotationType = Class.forName(type).asSubclass(Annotation.class);
+            Constructor<?> constructor = Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+            return constructor.newInstance(annotationType, value);
+        }
+
+        private static Object field(Class<?> type, String name, String label) throws ReflectiveOperationException {
+            Constructor<?> constructor = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+            return constructor.newInstance(type, name, Collections.singletonList(annotation("jdk.jfr.Label", label)));
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package org.jenkinsci.plugins.gitclient;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Progress of one task of a running fetch or clone, like counting,
+ * compressing or receiving objects, or resolving deltas.
+ * <p>
+ * Command line git reports progress on standard error when called with
+ * <code>--progress</code>, JGit reports it to a
+ * {@link org.eclipse.jgit.lib.ProgressMonitor}. Both are translated into
+ * this model while the operation runs and handed to the registered
+ * {@link Listener}s, so slow mirrors and throttled links can be spotted
+ * before the operation completes.
+ */
+public final class GitProgress {
+
+    private static final Logger LOGGER = Logger.getLogger(GitProgress.class.getName());
+
+    private static final List<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    /* "remote: Counting objects: 100% (12/12), done." or "Receiving objects:  45% (5/11), 1.20 MiB | 600.00 KiB/s" */
+    private static final Pattern PROGRESS = Pattern.compile(
+            "(remote: )?([A-Z][A-Za-z ]*?):\\s+(?:(\\d+)% \\((\\d+)/(\\d+)\\)|(\\d+))"
+            + "(?:, ([0-9]+(?:\\.[0-9]+)?) (bytes|KiB|MiB|GiB))?"
+            + "(?: \\| ([0-9]+(?:\\.[0-9]+)?) (bytes|KiB|MiB|GiB)/s)?"
+            + "(, done\\.?)?.*");
+
+    private final String implementation;
+    private final String operation;
+    private final String task;
+    private final boolean remote;
+    private final long completed;
+    private final long total;
+    private final long bytes;
+    private final long bytesPerSecond;
+    private final boolean done;
+
+    GitProgress(@NonNull String implementation, @NonNull String operation, @NonNull String task, boolean remote,
+                long completed, long total, long bytes, long bytesPerSecond, boolean done) {
+        this.implementation = implementation;
+        this.operation = operation;
+        this.task = task;
+        this.remote = remote;
+        this.completed = completed;
+        this.total = total;
+        this.bytes = bytes;
+        this.bytesPerSecond = bytesPerSecond;
+        this.done = done;
+    }
+
+    /**
+     * Receives progress of running operations. Called on the thread reading
+     * the output of git or running JGit, implementations must be fast and
+     * thread safe.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onProgress(@NonNull GitProgress progress);
+    }
+
+    /**
+     * Registers a listener.
+     *
+     * @param listener listener to call with progress of all operations
+     */
+    public static void addListener(@NonNull Listener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener listener registered with {@link #addListener(Listener)}
+     */
+    public static void removeListener(@NonNull Listener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    static void publish(@NonNull GitProgress progress) {
+        for (Listener listener : LISTENERS) {
+            try {
+                listener.onProgress(progress);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Git progress listener " + listener + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * Parses one progress line of command line git.
+     *
+     * @param operation git subcommand which wrote the line
+     * @param line line of standard error, split at carriage returns and line feeds
+     * @return progress, null if the line does not report progress
+     */
+    @CheckForNull
+    static GitProgress parse(@NonNull String operation, @NonNull String line) {
+        Matcher m = PROGRESS.matcher(line.trim());
+        if (!m.matches()) {
+            return null;
+        }
+        boolean remote = m.group(1) != null;
+        String task = m.group(2);
+        long completed;
+        long total;
+        if (m.group(3) != null) {
+            completed = Long.parseLong(m.group(4));
+            total = Long.parseLong(m.group(5));
+        } else {
+            completed = Long.parseLong(m.group(6));
+            total = -1;
+        }
+        long bytes = m.group(7) == null ? -1 : toBytes(m.group(7), m.group(8));
+        long rate = m.group(9) == null ? -1 : toBytes(m.group(9), m.group(10));
+        boolean done = m.group(11) != null;
+        return new GitProgress("git", operation, task, remote, completed, total, bytes, rate, done);
+    }
+
+    private static long toBytes(String amount, String unit) {
+        double value = Double.parseDouble(amount);
+        switch (unit) {
+            case "GiB":
+                value *= 1024;
+                // fall through
+            case "MiB":
+                value *= 1024;
+                // fall through
+            case "KiB":
+                value *= 1024;
+                break;
+            default:
+                break;
+        }
+        return (long) value;
+    }
+
+    /**
+     * @return <code>git</code> for command line git, <code>jgit</code> for JGit
+     */
+    @NonNull
+    public String getImplementation() {
+        return implementation;
+    }
+
+    /**
+     * @return operation reporting progress, like <code>fetch</code> or <code>clone</code>
+     */
+    @NonNull
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return task name as reported by git, like <code>Receiving objects</code>
+     */
+    @NonNull
+    public String getTask() {
+        return task;
+    }
+
+    /**
+     * @return true if the task runs on the remote side, like counting objects on the server
+     */
+    public boolean isRemote() {
+        return remote;
+    }
+
+    /**
+     * @return work units completed, usually objects or deltas
+     */
+    public long getCompleted() {
+        return completed;
+    }
+
+    /**
+     * @return total work units, -1 if not known
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return completed percentage, -1 if the total is not known
+     */
+    public int getPercent() {
+        if (total <= 0) {
+            return -1;
+        }
+        return (int) Math.min(100, completed * 100 / total);
+    }
+
+    /**
+     * @return bytes received so far, -1 if not reported
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return current transfer rate in bytes per second, -1 if not reported
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @return true if the task is complete
+     */
+    public boolean isDone() {
+        return done || (total > 0 && completed >= total);
+    }
+
+    /**
+     * @return compact description for build logs, like <code>Receiving objects 45% (5/11), 1.2 MiB, 600.0 KiB/s</code>
+     */
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        if (remote) {
+            b.append("remote: ");
+        }
+        b.append(task);
+        if (total > 0) {
+            b.append(' ').append(getPercent()).append("% (").append(completed).append('/').append(total).append(')');
+        } else {
+            b.append(' ').append(completed);
+        }
+        if (bytes >= 0) {
+            b.append(", ").append(formatBytes(bytes));
+        }
+        if (bytesPerSecond >= 0) {
+            b.append(", ").append(formatBytes(bytesPerSecond)).append("/s");
+        }
+        if (isDone()) {
+            b.append(", done");
+        }
+        return b.toString();
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " bytes";
+        }
+        String[] units = {"KiB", "MiB", "GiB"};
+        double value = bytes;
+        int unit = -1;
+        while (value >= 1024 && unit < units.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return String.format(Locale.ROOT, "%.1f %s", value, units[unit]);
+    }
+}
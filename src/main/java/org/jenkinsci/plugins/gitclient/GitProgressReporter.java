@@ -0,0 +1,74 @@
+package org.jenkinsci.plugins.gitclient;
+
+import java.util.concurrent.TimeUnit;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.model.TaskListener;
+
+/**
+ * Throttles the progress of one operation before it is published to the
+ * {@link GitProgress.Listener}s and logged.
+ * <p>
+ * Listeners receive the first and last update of every task, and at most
+ * one update per second in between. The build log receives one compact
+ * line per log interval, so operations completing within the interval do
+ * not log progress at all.
+ */
+final class GitProgressReporter {
+
+    /**
+     * Seconds between progress lines in the build log of long running
+     * fetch and clone operations.
+     *
+     * <code>LOG_INTERVAL_SECONDS=Integer.getInteger(GitProgressReporter.class.getName() + ".logIntervalSeconds", 10)</code>.
+     *
+     * Use '-Dorg.jenkinsci.plugins.gitclient.GitProgressReporter.logIntervalSeconds=0'
+     * to disable progress lines in the build log.
+     */
+    private static final int LOG_INTERVAL_SECONDS = Integer.getInteger(GitProgressReporter.class.getName() + ".logIntervalSeconds", 10);
+
+    private static final long PUBLISH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final TaskListener listener;
+    private final long logIntervalNanos;
+    private String task;
+    private boolean remote;
+    private long lastPublished;
+    private long lastLogged;
+
+    GitProgressReporter(@CheckForNull TaskListener listener) {
+        this(listener, TimeUnit.SECONDS.toNanos(LOG_INTERVAL_SECONDS));
+    }
+
+    GitProgressReporter(@CheckForNull TaskListener listener, long logIntervalNanos) {
+        this.listener = listener;
+        this.logIntervalNanos = logIntervalNanos;
+        this.lastLogged = System.nanoTime();
+        this.lastPublished = lastLogged - PUBLISH_INTERVAL_NANOS;
+    }
+
+    /**
+     * @return true if the next update would be published or logged, allows callers to skip creating frequent updates
+     */
+    synchronized boolean isDue() {
+        long now = System.nanoTime();
+        return now - lastPublished >= PUBLISH_INTERVAL_NANOS
+                || (listener != null && logIntervalNanos > 0 && now - lastLogged >= logIntervalNanos);
+    }
+
+    synchronized void update(@NonNull GitProgress progress) {
+        long now = System.nanoTime();
+        boolean newTask = !progress.getTask().equals(task) || progress.isRemote() != remote;
+        task = progress.getTask();
+        remote = progress.isRemote();
+        if (newTask || progress.isDone() || now - lastPublished >= PUBLISH_INTERVAL_NANOS) {
+            lastPublished = now;
+            GitProgress.publish(progress);
+        }
+        if (listener != null && logIntervalNanos > 0 && now - lastLogged >= logIntervalNanos) {
+            lastLogged = now;
+            listener.getLogger().println(" > " + progress.getOperation() + " progress: " + progress);
+        }
+    }
+}
@@ -21,6 +21,8 @@ import hudson.plugins.git.GitException;
 import hudson.plugins.git.GitLockFailedException;
 import hudson.plugins.git.IndexEntry;
 import hudson.plugins.git.Revision;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -31,16 +33,29 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Field;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.IOUtils;
@@ -68,8 +83,7 @@ import org.eclipse.jgit.errors.LockFailedException;
 import org.eclipse.jgit.errors.NotSupportedException;
 import org.eclipse.jgit.errors.TransportException;
 import org.eclipse.jgit.fnmatch.FileNameMatcher;
-import org.eclipse.jgit.internal.storage.file.FileRepository;
-import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.ConfigConstants;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.ObjectLoader;
@@ -85,8 +99,6 @@ import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.merge.MergeStrategy;
 import org.eclipse.jgit.notes.Note;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.RevFlag;
-import org.eclipse.jgit.revwalk.RevFlagSet;
 import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevSort;
 import org.eclipse.jgit.revwalk.RevTree;
@@ -106,7 +118,14 @@ import org.eclipse.jgit.transport.Transport;
 import org.eclipse.jgit.transport.URIish;
 import org.eclipse.jgit.transport.PushResult;
 import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.jenkinsci.plugins.gitclient.cgit.GitCommandsExecutor;
+import org.jenkinsci.plugins.gitclient.jgit.Describer;
 import org.jenkinsci.plugins.gitclient.jgit.PreemptiveAuthHttpClientConnectionFactory;
+import org.jenkinsci.plugins.gitclient.jgit.ReachabilityIndex;
+import org.jenkinsci.plugins.gitclient.jgit.RepositoryPool;
+import org.jenkinsci.plugins.gitclient.jgit.SparseCheckout;
+import org.jenkinsci.plugins.gitclient.jgit.TransportRepository;
+import org.jenkinsci.plugins.gitclient.jgit.WindowCacheTuning;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.jenkinsci.plugins.gitclient.trilead.SmartCredentialsProvider;
@@ -161,6 +180,12 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         // make a point of overwriting it with ours.
         SshSessionFactory.setInstance(new TrileadSessionFactory());
 
+        try {
+            WindowCacheTuning.installFromSystemProperties();
+        } catch (IllegalArgumentException e) {
+            listener.getLogger().println("[WARNING] JGit window cache settings ignored: " + e.getMessage());
+        }
+
         if (httpConnectionFactory != null) {
             httpConnectionFactory.setCredentialsProvider(asSmartCredentialsProvider());
             // allow override of HttpConnectionFactory to avoid JENKINS-37934
@@ -305,11 +330,12 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public void execute() throws GitException, InterruptedException {
+                timed("checkout", this::doExecute);
+            }
 
-                if(! sparseCheckoutPaths.isEmpty()) {
-                    listener.getLogger().println("[ERROR] JGit doesn't support sparse checkout.");
-                    throw new UnsupportedOperationException("not implemented yet");
-                }
+            private void doExecute() throws GitException, InterruptedException {
+
+                boolean sparse = !sparseCheckoutPaths.isEmpty() || isSparseCheckout();
 
                 if (branch == null)
                     doCheckoutWithResetAndRetry(ref);
@@ -317,6 +343,11 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     doCheckoutWithResetAndRetryAndCleanBranch(branch, ref);
                 else
                     doCheckout(ref, branch);
+
+                // Will activate or deactivate sparse checkout depending on the given paths
+                if (sparse) {
+                    doSparseCheckout(sparseCheckoutPaths);
+                }
             }
         };
     }
@@ -334,7 +365,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         Repository repo = null;
         while (true) {
             try {
-                repo = getRepository();
+                repo = openRepository();
                 try {
                     // force in Jgit is "-B" in Git CLI, meaning no forced switch,
                     // but forces recreation of the branch.
@@ -391,7 +422,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 if (retried)
                     throw new GitException("Could not checkout " + ref, e);
                 retried = true;
-                repo = getRepository(); /* Reusing repo declared and assigned earlier */
+                repo = openRepository(); /* Reusing repo declared and assigned earlier */
                 for (String path : e.getConflictingPaths()) {
                     File conflict = new File(repo.getWorkTree(), path);
                     if (!conflict.delete() && conflict.exists()) {
@@ -413,15 +444,43 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     }
 
     private void doCheckout(String ref, String branch) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             git(repo).checkout().setName(branch).setCreateBranch(true).setForce(true).setStartPoint(ref).call();
         } catch (GitAPIException e) {
             throw new GitException("Could not checkout " + branch + " with start point " + ref, e);
         }
     }
 
+    private boolean isSparseCheckout() throws GitException {
+        try (Repository repo = openRepository()) {
+            return repo.getConfig().getBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, "sparsecheckout", false);
+        }
+    }
+
+    /* Like read-tree -mu HEAD with the sparse checkout paths, an empty list of paths deactivates sparse checkout */
+    private void doSparseCheckout(List<String> paths) throws GitException {
+        try (Repository repo = openRepository()) {
+            ObjectId head = repo.resolve(Constants.HEAD + "^{commit}");
+            if (head == null) {
+                throw new GitException("No commit checked out in " + workspace);
+            }
+
+            List<String> patterns = paths.isEmpty() ? Collections.singletonList("/*") : paths;
+            File sparseCheckoutFile = new File(repo.getDirectory(), "info/sparse-checkout");
+            Files.createDirectories(sparseCheckoutFile.getParentFile().toPath());
+            Files.write(sparseCheckoutFile.toPath(), patterns, StandardCharsets.UTF_8);
+            StoredConfig config = repo.getConfig();
+            config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, "sparsecheckout", !paths.isEmpty());
+            config.save();
+
+            new SparseCheckout(patterns).checkout(repo, head);
+        } catch (IOException e) {
+            throw new GitException("Could not apply sparse checkout paths " + paths, e);
+        }
+    }
+
     private void doCheckoutWithResetAndRetryAndCleanBranch(String branch, String ref) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             RefUpdate refUpdate = repo.updateRef(R_HEADS + branch);
             refUpdate.setNewObjectId(repo.resolve(ref));
             switch (refUpdate.forceUpdate()) {
@@ -444,7 +503,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public void add(String filePattern) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             git(repo).add().addFilepattern(filePattern).call();
         } catch (GitAPIException e) {
             throw new GitException(e);
@@ -458,7 +517,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public void commit(String message) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             CommitCommand cmd = git(repo).commit().setMessage(message).setAuthor(author);
             if (committer!=null)
                 cmd.setCommitter(new PersonIdent(committer,new Date()));
@@ -471,7 +530,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public void branch(String name) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             git(repo).branchCreate().setName(name).call();
         } catch (GitAPIException e) {
             throw new GitException(e);
@@ -481,7 +540,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public void deleteBranch(String name) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             git(repo).branchDelete().setForce(true).setBranchNames(name).call();
         } catch (GitAPIException e) {
             throw new GitException(e);
@@ -511,7 +570,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     }
 
     public Set<Branch> getBranchesInternal(ListBranchCommand.ListMode mode) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             List<Ref> refs = git(repo).branchList().setListMode(mode).call();
             Set<Branch> branches = new HashSet<>(refs.size());
             for (Ref ref : refs) {
@@ -526,7 +585,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public void tag(String name, String message) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             git(repo).tag().setName(name).setMessage(message).setForceUpdate(true).call();
         } catch (GitAPIException e) {
             throw new GitException(e);
@@ -536,7 +595,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public boolean tagExists(String tagName) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             Ref tag =  repo.exactRef(R_TAGS + tagName);
             return tag != null;
         } catch (IOException e) {
@@ -578,7 +637,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             @Override
             public org.jenkinsci.plugins.gitclient.FetchCommand shallow(boolean shallow) {
                 if (shallow) {
-                    listener.getLogger().println("[WARNING] JGit doesn't support shallow clone. This flag is ignored");
+                    listener.getLogger().println("[WARNING] JGit doesn't support shallow fetch, the full history is fetched. Use command line git for shallow fetch");
                 }
                 return this;
             }
@@ -603,7 +662,19 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public void execute() throws GitException, InterruptedException {
-                try (Repository repo = getRepository()) {
+                // identical fetches into the same repository which start after this call share one fetch
+                List<Object> key = Arrays.asList("jgit fetch", workspace.getAbsolutePath(), String.valueOf(url), String.valueOf(refspecs),
+                        tags, shouldPrune, RemoteRefCache.identity(url == null ? null : credentialsFor(url.toString())));
+                SingleFlight.runLatest(key,
+                        () -> listener.getLogger().println("Waiting for the same fetch from " + url + " running for this repository"),
+                        () -> {
+                            timed("fetch", this::doExecute);
+                            return null;
+                        });
+            }
+
+            private void doExecute() throws GitException, InterruptedException {
+                try (Repository repo = openRepository()) {
                     Git git = git(repo);
 
                     List<RefSpec> allRefSpecs = new ArrayList<>();
@@ -627,11 +698,13 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     }
                     fetch.setRemote(url.toString());
                     fetch.setCredentialsProvider(getProvider());
+                    fetch.setProgressMonitor(new JGitProgressMonitor(listener, "fetch"));
 
                     fetch.setRefSpecs(allRefSpecs);
                     fetch.setRemoveDeletedRefs(shouldPrune);
 
                     fetch.call();
+                    RemoteRefCache.invalidate(url.toPrivateString());
                 } catch (GitAPIException e) {
                     throw new GitException(e);
                 }
@@ -655,7 +728,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public void fetch(String remoteName, RefSpec... refspec) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             FetchCommand fetch = git(repo).fetch().setTagOpt(TagOpt.FETCH_TAGS);
             if (remoteName != null) fetch.setRemote(remoteName);
             fetch.setCredentialsProvider(getProvider());
@@ -668,6 +741,10 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             fetch.setRefSpecs(refSpecs);
 
             fetch.call();
+            String url = repo.getConfig().getString("remote", remoteName != null ? remoteName : Constants.DEFAULT_REMOTE_NAME, "url");
+            if (url != null) {
+                RemoteRefCache.invalidate(url);
+            }
         } catch (GitAPIException e) {
             throw new GitException(e);
         }
@@ -683,7 +760,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public void ref(String refName) throws GitException, InterruptedException {
 	refName = refName.replace(' ', '_');
-	try (Repository repo = getRepository()) {
+	try (Repository repo = openRepository()) {
 	    RefUpdate refUpdate = repo.updateRef(refName);
 	    refUpdate.setNewObjectId(repo.exactRef(Constants.HEAD).getObjectId());
 	    switch (refUpdate.forceUpdate()) {
@@ -704,7 +781,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public boolean refExists(String refName) throws GitException, InterruptedException {
 	refName = refName.replace(' ', '_');
-	try (Repository repo = getRepository()) {
+	try (Repository repo = openRepository()) {
 	    Ref ref = repo.findRef(refName);
 	    return ref != null;
 	} catch (IOException e) {
@@ -716,7 +793,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public void deleteRef(String refName) throws GitException, InterruptedException {
 	refName = refName.replace(' ', '_');
-	try (Repository repo = getRepository()) {
+	try (Repository repo = openRepository()) {
 	    RefUpdate refUpdate = repo.updateRef(refName);
 	    // Required, even though this is a forced delete.
 	    refUpdate.setNewObjectId(repo.exactRef(Constants.HEAD).getObjectId());
@@ -743,7 +820,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 	} else {
 	    refPrefix = refPrefix.replace(' ', '_');
 	}
-	try (Repository repo = getRepository()) {
+	try (Repository repo = openRepository()) {
 	    List<Ref> refList = repo.getRefDatabase().getRefsByPrefix(refPrefix);
 	    Set<String> refs = new HashSet<>(refList.size());
 	    for (Ref ref : refList) {
@@ -766,12 +843,22 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public Map<String, ObjectId> getRemoteReferences(String url, String pattern, boolean headsOnly, boolean tagsOnly)
             throws GitException, InterruptedException {
+        String query = "jgit refs " + pattern + " " + headsOnly + " " + tagsOnly;
+        return new HashMap<>(RemoteRefCache.get(url, credentialsFor(url), query,
+                () -> listRemoteReferences(url, pattern, headsOnly, tagsOnly)));
+    }
+
+    private Map<String, ObjectId> listRemoteReferences(String url, String pattern, boolean headsOnly, boolean tagsOnly)
+            throws GitException {
         Map<String, ObjectId> references = new HashMap<>();
         String regexPattern = null;
         if (pattern != null) {
             regexPattern = createRefRegexFromGlob(pattern);
         }
-        try (Repository repo = openDummyRepository()) {
+        GitFlightRecorder.Event event = GitFlightRecorder.begin("ls-remote");
+        long start = System.nanoTime();
+        boolean success = false;
+        try (Repository repo = TransportRepository.getInstance()) {
             LsRemoteCommand lsRemote = new LsRemoteCommand(repo);
             if (headsOnly) {
                 lsRemote.setHeads(headsOnly);
@@ -794,8 +881,12 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                         references.put(refName, refObjectId);
                     }
                 }
+            success = true;
         } catch (JGitInternalException | GitAPIException | IOException e) {
             throw new GitException(e);
+        } finally {
+            GitCommandMetrics.recordJGit("ls-remote", start, success);
+            event.commit(null, "jgit", "ls-remote", success ? 0 : -1);
         }
         return references;
     }
@@ -804,6 +895,11 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @SuppressFBWarnings(value = "RCN_REDUNDANT_NULLCHECK_WOULD_HAVE_BEEN_A_NPE", justification = "Java 11 spotbugs error")
     public Map<String, String> getRemoteSymbolicReferences(String url, String pattern)
             throws GitException, InterruptedException {
+        return new HashMap<>(RemoteRefCache.get(url, credentialsFor(url), "jgit symrefs " + pattern,
+                () -> listRemoteSymbolicReferences(url, pattern)));
+    }
+
+    private Map<String, String> listRemoteSymbolicReferences(String url, String pattern) throws GitException {
         Map<String, String> references = new HashMap<>();
         String regexPattern = null;
         if (pattern != null) {
@@ -812,50 +908,89 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         if (regexPattern != null && !Constants.HEAD.matches(regexPattern)) {
             return references;
         }
-        try (Repository repo = openDummyRepository()) {
-            try {
-                // HACK HACK HACK
-                // The symref info is advertised as a capability starting from git 1.8.5
-                // So all we need to do is ask JGit to fetch the refs and then (because JGit adds all capabilities
-                // into a Set) we iterate the resulting set to find any that matching symref=$symref:$realref
-                // of course JGit does not expose a way to iterate the capabilities, so instead we have to hack
-                // and peek inside
-                // TODO if JGit implement https://bugs.eclipse.org/bugs/show_bug.cgi?id=514052 we should switch to that
-                Class<?> basePackConnection = BasePackFetchConnection.class.getSuperclass();
-                Field remoteCapablities = basePackConnection.getDeclaredField("remoteCapablities");
-                remoteCapablities.setAccessible(true);
-                try (Transport transport = Transport.open(repo, url)) {
-                    transport.setCredentialsProvider(getProvider());
-                    try (FetchConnection fc = transport.openFetch()) {
-                        fc.getRefs();
-                        if (fc instanceof BasePackFetchConnection) {
-                            Object o = remoteCapablities.get(fc);
-                            if (o instanceof Set) {
-                                boolean hackWorked = false;
-                                @SuppressWarnings("unchecked") /* compile-time type erasure causes this */
-                                Set<String> capabilities = (Set<String>)o;
-                                for (String capability: capabilities) {
-                                    if (capability.startsWith("symref=")) {
-                                        hackWorked = true;
-                                        int index = capability.indexOf(':', 7);
-                                        if (index != -1) {
-                                            references.put(capability.substring(7, index), capability.substring(index+1));
-                                        }
-                                    }
-                                }
-                                if (hackWorked) {
-                                    return references;
-                                }
-                            }
-                        }
+        try (Repository repo = TransportRepository.getInstance();
+             Transport transport = Transport.open(repo, url)) {
+            transport.setCredentialsProvider(getProvider());
+            try (FetchConnection fc = transport.openFetch()) {
+                fc.getRefs();
+                references.putAll(advertisedSymbolicReferences(fc));
+            }
+        } catch (IOException | URISyntaxException e) {
+            throw new GitException(e);
+        }
+        return references;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public RemoteSnapshot getRemoteSnapshot(String url) throws GitException, InterruptedException {
+        return RemoteRefCache.get(url, credentialsFor(url), "jgit snapshot", () -> listRemoteSnapshot(url));
+    }
+
+    private RemoteSnapshot listRemoteSnapshot(String url) throws GitException {
+        GitFlightRecorder.Event event = GitFlightRecorder.begin("ls-remote");
+        long start = System.nanoTime();
+        boolean success = false;
+        try (Repository repo = TransportRepository.getInstance();
+             Transport transport = Transport.open(repo, url)) {
+            transport.setCredentialsProvider(getProvider());
+            RemoteSnapshot.Builder snapshot = new RemoteSnapshot.Builder();
+            try (FetchConnection fc = transport.openFetch()) {
+                for (Ref r : fc.getRefs()) {
+                    ObjectId id = r.getPeeledObjectId() != null ? r.getPeeledObjectId() : r.getObjectId();
+                    if (id != null) {
+                        snapshot.add(r.getName(), id);
                     }
-                    // ignore this is a total hack
                 }
-            } catch (IllegalAccessException | NoSuchFieldException e) {
-                // ignore, caller will just have to try it the Git 1.8.4 way, we'll return an empty map
+                // read from the same advertisement, no second connection
+                for (Map.Entry<String, String> symref : advertisedSymbolicReferences(fc).entrySet()) {
+                    snapshot.addSymbolicReference(symref.getKey(), symref.getValue());
+                }
             }
+            success = true;
+            return snapshot.build();
         } catch (IOException | URISyntaxException e) {
             throw new GitException(e);
+        } finally {
+            GitCommandMetrics.recordJGit("ls-remote", start, success);
+            event.commit(null, "jgit", "ls-remote", success ? 0 : -1);
+        }
+    }
+
+    /*
+     * Symbolic references of a connection which read the ref advertisement, empty if they are not known.
+     */
+    private static Map<String, String> advertisedSymbolicReferences(FetchConnection fc) {
+        Map<String, String> references = new HashMap<>();
+        if (!(fc instanceof BasePackFetchConnection)) {
+            return references;
+        }
+        try {
+            // HACK HACK HACK
+            // The symref info is advertised as a capability starting from git 1.8.5
+            // So all we need to do is ask JGit to fetch the refs and then (because JGit adds all capabilities
+            // into a Set) we iterate the resulting set to find any that matching symref=$symref:$realref
+            // of course JGit does not expose a way to iterate the capabilities, so instead we have to hack
+            // and peek inside
+            // TODO if JGit implement https://bugs.eclipse.org/bugs/show_bug.cgi?id=514052 we should switch to that
+            Class<?> basePackConnection = BasePackFetchConnection.class.getSuperclass();
+            Field remoteCapablities = basePackConnection.getDeclaredField("remoteCapablities");
+            remoteCapablities.setAccessible(true);
+            Object o = remoteCapablities.get(fc);
+            if (o instanceof Set) {
+                @SuppressWarnings("unchecked") /* compile-time type erasure causes this */
+                Set<String> capabilities = (Set<String>)o;
+                for (String capability: capabilities) {
+                    if (capability.startsWith("symref=")) {
+                        int index = capability.indexOf(':', 7);
+                        if (index != -1) {
+                            references.put(capability.substring(7, index), capability.substring(index+1));
+                        }
+                    }
+                }
+            }
+        } catch (IllegalAccessException | NoSuchFieldException e) {
+            // ignore, caller will just have to try it the Git 1.8.4 way, we'll return an empty map
         }
         return references;
     }
@@ -903,7 +1038,15 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     @SuppressFBWarnings(value = "RCN_REDUNDANT_NULLCHECK_WOULD_HAVE_BEEN_A_NPE", justification = "Java 11 spotbugs error")
     public ObjectId getHeadRev(String remoteRepoUrl, String branchSpec) throws GitException {
-        try (Repository repo = openDummyRepository();
+        return RemoteRefCache.get(remoteRepoUrl, credentialsFor(remoteRepoUrl), "jgit head " + branchSpec,
+                () -> listHeadRev(remoteRepoUrl, branchSpec));
+    }
+
+    private ObjectId listHeadRev(String remoteRepoUrl, String branchSpec) throws GitException {
+        GitFlightRecorder.Event event = GitFlightRecorder.begin("ls-remote");
+        long start = System.nanoTime();
+        boolean success = false;
+        try (Repository repo = TransportRepository.getInstance();
              final Transport tn = Transport.open(repo, new URIish(remoteRepoUrl))) {
             final String branchName = extractBranchNameFromBranchSpec(branchSpec);
             String regexBranch = createRefRegexFromGlob(branchName);
@@ -912,29 +1055,35 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             try (FetchConnection c = tn.openFetch()) {
                 for (final Ref r : c.getRefs()) {
                     if (r.getName().matches(regexBranch)) {
+                        success = true;
                         return r.getPeeledObjectId() != null ? r.getPeeledObjectId() : r.getObjectId();
                     }
                 }
             }
+            success = true;
         } catch (IOException | URISyntaxException | IllegalStateException e) {
             throw new GitException(e);
+        } finally {
+            GitCommandMetrics.recordJGit("ls-remote", start, success);
+            event.commit(null, "jgit", "ls-remote", success ? 0 : -1);
         }
         return null;
     }
 
-    /**
-     * Creates a empty dummy {@link Repository} to keep JGit happy where it wants a valid {@link Repository} operation
-     * for remote objects.
-     */
-    private Repository openDummyRepository() throws IOException {
-        final File tempDir = Util.createTempDir();
-        return new FileRepositoryImpl(tempDir, tempDir);
+    /* Credentials used for a URL */
+    private StandardCredentials credentialsFor(String url) {
+        return asSmartCredentialsProvider().getCredentials(url);
+    }
+
+    /* Records a JGit operation in the metrics and the flight recorder */
+    private void timed(String operation, GitCommandMetrics.Operation body) throws GitException, InterruptedException {
+        GitFlightRecorder.time(workspace, "jgit", operation, () -> GitCommandMetrics.timeJGit(operation, body));
     }
 
     /** {@inheritDoc} */
     @Override
     public String getRemoteUrl(String name) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             return repo.getConfig().getString("remote",name,"url");
         }
     }
@@ -957,6 +1106,20 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         }
     }
 
+    /*
+     * Repository shared with the other operations on the work tree, see
+     * RepositoryPool. Only used by operations which close it again, callers
+     * of getRepository() may rely on garbage collection to release theirs.
+     */
+    @NonNull
+    private Repository openRepository() throws GitException {
+        try {
+            return RepositoryPool.getInstance().open(workspace);
+        } catch (IOException e) {
+            throw new GitException(e);
+        }
+    }
+
     /**
      * getWorkTree.
      *
@@ -970,7 +1133,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public void setRemoteUrl(String name, String url) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             StoredConfig config = repo.getConfig();
             config.setString("remote", name, "url", url);
             config.save();
@@ -982,7 +1145,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public void addRemoteUrl(String name, String url) throws GitException, InterruptedException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             StoredConfig config = repo.getConfig();
 
             List<String> urls = new ArrayList<>();
@@ -999,7 +1162,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public void addNote(String note, String namespace) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             ObjectId head = repo.resolve(HEAD); // commit to put a note on
 
             AddNoteCommand cmd = git(repo).notesAdd();
@@ -1035,7 +1198,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public void appendNote(String note, String namespace) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             ObjectId head = repo.resolve(HEAD); // commit to put a note on
 
             ShowNoteCommand cmd = git(repo).notesShow();
@@ -1073,6 +1236,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             private RevWalk walk = new RevWalk(or);
             private Writer out;
             private boolean hasIncludedRev = false;
+            private int parallelism = 1;
 
             @Override
             public ChangelogCommand excludes(String rev) {
@@ -1127,6 +1291,12 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 return this;
             }
 
+            @Override
+            public ChangelogCommand parallelism(int n) {
+                this.parallelism = Math.max(1, n);
+                return this;
+            }
+
             private void closeResources() {
                 walk.close();
                 or.close();
@@ -1150,12 +1320,16 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                 if (out == null) {
                     throw new IllegalStateException(); // Match CliGitAPIImpl
                 }
-                try (PrintWriter pw = new PrintWriter(out,false)) {
-                    RawFormatter formatter= new RawFormatter();
+                try (PrintWriter pw = new PrintWriter(out,false);
+                     RawFormatter formatter = new RawFormatter(repo, or)) {
                     if (!hasIncludedRev) {
                         /* If no rev has been included, assume HEAD */
                         this.includes("HEAD");
                     }
+                    if (parallelism > 1) {
+                        formatInParallel(repo, walk, parallelism, pw);
+                        return;
+                    }
                     for (RevCommit commit : walk) {
                         // git whatachanged doesn't show the merge commits unless -m is given
                         if (commit.getParentCount()>1)  continue;
@@ -1171,10 +1345,150 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         };
     }
 
+    /**
+     * Walks the commits of a changelog on the calling thread and formats
+     * them on a pool of worker threads, each with its own reader. At most
+     * a few commits per worker are formatted ahead of the writer, which
+     * writes them in the order of the walk. The walk is not reset or closed
+     * before all workers have ended.
+     */
+    private void formatInParallel(Repository repo, RevWalk walk, int parallelism, PrintWriter pw) throws IOException, InterruptedException {
+        FormatterPool formatters = new FormatterPool();
+        Deque<Future<String>> pending = new ArrayDeque<>();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                new NamingThreadFactory(new DaemonThreadFactory(), "JGit changelog " + workspace));
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                formatters.add(new RawFormatter(repo, repo.newObjectReader()));
+            }
+            for (RevCommit commit : walk) {
+                // git whatachanged doesn't show the merge commits unless -m is given
+                if (commit.getParentCount()>1)  continue;
+
+                pending.add(executor.submit(new FormatTask(commit, formatters)));
+                if (pending.size() >= parallelism * 4) {
+                    pw.print(nextFormatted(pending));
+                }
+            }
+            while (!pending.isEmpty()) {
+                pw.print(nextFormatted(pending));
+            }
+        } finally {
+            for (Future<String> future : pending) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+            boolean interrupted = false;
+            // formatting a commit does not stop on interrupt, but it ends
+            while (true) {
+                try {
+                    if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            formatters.close();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /* Formatters shared by the workers, each closed by whoever holds it once the pool is closed */
+    private static final class FormatterPool {
+        private final BlockingQueue<RawFormatter> idle = new LinkedBlockingQueue<>();
+        private volatile boolean closed;
+
+        RawFormatter take() throws InterruptedException {
+            return idle.take();
+        }
+
+        void add(RawFormatter formatter) {
+            idle.add(formatter);
+            if (closed) {
+                closeIdle();
+            }
+        }
+
+        void close() {
+            closed = true;
+            closeIdle();
+        }
+
+        private void closeIdle() {
+            for (RawFormatter formatter; (formatter = idle.poll()) != null; ) {
+                formatter.close();
+                formatter.or.close();
+            }
+        }
+    }
+
+    /* Formats one commit, which the walk parsed before the task was created */
+    private static final class FormatTask implements Callable<String> {
+        private final RevCommit commit;
+        private final FormatterPool formatters;
+
+        FormatTask(RevCommit commit, FormatterPool formatters) {
+            this.commit = commit;
+            this.formatters = formatters;
+        }
+
+        @Override
+        public String call() throws IOException, InterruptedException {
+            RawFormatter formatter = formatters.take();
+            try {
+                StringWriter sw = new StringWriter();
+                try (PrintWriter entry = new PrintWriter(sw)) {
+                    formatter.format(commit, null, entry, true);
+                }
+                return sw.toString();
+            } finally {
+                formatters.add(formatter);
+            }
+        }
+    }
+
+    private static String nextFormatted(Deque<Future<String>> pending) throws IOException, InterruptedException {
+        try {
+            return pending.remove().get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
     /**
      * Formats {@link RevCommit}.
+     * <p>
+     * The reader, tree walk and rename detector are reused for all
+     * commits formatted by one instance, which must be closed after use.
      */
-    class RawFormatter {
+    class RawFormatter implements AutoCloseable {
+        private final ObjectReader or;
+        private final TreeWalk tw;
+        private final RenameDetector rd;
+        private final FastDateFormat iso = FastDateFormat.getInstance(ISO_8601);
+
+        /**
+         * @param repo repository of the commits
+         * @param or reader of the commits, not closed by this formatter
+         */
+        RawFormatter(Repository repo, ObjectReader or) {
+            this.or = or;
+            this.tw = new TreeWalk(or);
+            this.tw.setRecursive(true);
+            this.tw.setFilter(TreeFilter.ANY_DIFF);
+            this.rd = new RenameDetector(repo);
+        }
+
         private boolean hasNewPath(DiffEntry d) {
             return d.getChangeType()==ChangeType.COPY || d.getChangeType()==ChangeType.RENAME;
         }
@@ -1213,7 +1527,6 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             pw.printf("tree %s\n", commit.getTree().name());
             for (RevCommit p : commit.getParents())
                 pw.printf("parent %s\n",p.name());
-            FastDateFormat iso = FastDateFormat.getInstance(ISO_8601);
             PersonIdent a = commit.getAuthorIdent();
             pw.printf("author %s <%s> %s\n", a.getName(), a.getEmailAddress(), iso.format(a.getWhen()));
             PersonIdent c = commit.getCommitterIdent();
@@ -1228,9 +1541,6 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             pw.println(msg);
 
             // see man git-diff-tree for the format
-            try (Repository repo = getRepository();
-                 ObjectReader or = repo.newObjectReader();
-                 TreeWalk tw = new TreeWalk(or)) {
             if (parent != null) {
                 /* Caller provided a parent commit, use it */
                 tw.reset(parent.getTree(), commit.getTree());
@@ -1249,10 +1559,6 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     tw.reset(commit.getTree(), commit.getTree());
                 }
             }
-            tw.setRecursive(true);
-            tw.setFilter(TreeFilter.ANY_DIFF);
-
-            final RenameDetector rd = new RenameDetector(repo);
 
             rd.reset();
             rd.addAll(DiffEntry.scan(tw));
@@ -1273,9 +1579,13 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 	                pw.println();
 	                pw.println();
 	            }
-                }
             }
         }
+
+        @Override
+        public void close() {
+            tw.close();
+        }
     }
 
     /**
@@ -1286,7 +1596,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      */
     @Override
     public void clean(boolean cleanSubmodule) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             Git git = git(repo);
             git.reset().setMode(HARD).call();
             git.clean().setCleanDirectories(true).setIgnore(false).setForce(cleanSubmodule).call();
@@ -1404,10 +1714,15 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public void execute() throws GitException, InterruptedException {
+                timed("clone", this::doExecute);
+            }
+
+            private void doExecute() throws GitException, InterruptedException {
                 Repository repository = null;
 
                 try {
                     // the directory needs to be clean or else JGit complains
+                    RepositoryPool.getInstance().evict(workspace);
                     if (workspace.exists())
                         Util.deleteContentsRecursive(workspace);
 
@@ -1467,13 +1782,13 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     // Jgit repository has alternates directory set, but seems to ignore them
                     // Workaround: close this repo and create a new one
                     repository.close();
-                    repository = getRepository();
+                    repository = openRepository();
 
                     if (refspecs == null) {
                         refspecs = Collections.singletonList(new RefSpec("+refs/heads/*:refs/remotes/"+remote+"/*"));
                     }
                     FetchCommand fetch = new Git(repository).fetch()
-                            .setProgressMonitor(new JGitProgressMonitor(listener))
+                            .setProgressMonitor(new JGitProgressMonitor(listener, "clone"))
                             .setRemote(url)
                             .setCredentialsProvider(getProvider())
                             .setTagOpt(tags ? TagOpt.FETCH_TAGS : TagOpt.NO_TAGS)
@@ -1573,7 +1888,11 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public void execute() throws GitException, InterruptedException {
-                try (Repository repo = getRepository()) {
+                timed("merge", this::doExecute);
+            }
+
+            private void doExecute() throws GitException, InterruptedException {
+                try (Repository repo = openRepository()) {
                     Git git = git(repo);
                     MergeResult mergeResult;
                     if (strategy != null)
@@ -1634,7 +1953,11 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public void execute() throws GitException, InterruptedException {
-                try (Repository repo = getRepository()) {
+                timed("rebase", this::doExecute);
+            }
+
+            private void doExecute() throws GitException, InterruptedException {
+                try (Repository repo = openRepository()) {
                     Git git = git(repo);
                     RebaseResult rebaseResult = git.rebase().setUpstream(upstream).call();
                     if (!rebaseResult.getStatus().isSuccessful()) {
@@ -1651,7 +1974,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public void deleteTag(String tagName) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             git(repo).tagDelete().setTags(tagName).call();
         } catch (GitAPIException e) {
             throw new GitException(e);
@@ -1661,7 +1984,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public String getTagMessage(String tagName) throws GitException {
-        try (Repository repo = getRepository();
+        try (Repository repo = openRepository();
             ObjectReader or = repo.newObjectReader();
             RevWalk walk = new RevWalk(or)) {
             return walk.parseTag(repo.resolve(tagName)).getFullMessage().trim();
@@ -1673,7 +1996,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public List<IndexEntry> getSubmodules(String treeIsh) throws GitException {
-        try (Repository repo = getRepository();
+        try (Repository repo = openRepository();
              ObjectReader or = repo.newObjectReader();
              RevWalk w = new RevWalk(or)) {
             List<IndexEntry> r = new ArrayList<>();
@@ -1695,7 +2018,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public void addSubmodule(String remoteURL, String subdir) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             git(repo).submoduleAdd().setPath(subdir).setURI(remoteURL).call();
         } catch (GitAPIException e) {
             throw new GitException(e);
@@ -1708,7 +2031,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         if (tagPattern == null) tagPattern = "*";
 
         Set<String> tags = new HashSet<>();
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             FileNameMatcher matcher = new FileNameMatcher(tagPattern, null);
             Map<String, Ref> tagList = repo.getTags();
             for (String name : tagList.keySet()) {
@@ -1728,7 +2051,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         /* BUG: Lists local tag names, not remote tag names */
         if (tagPattern == null) tagPattern = "*";
 
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             Set<String> tags = new HashSet<>();
             FileNameMatcher matcher = new FileNameMatcher(tagPattern, '/');
             List<Ref> refList = repo.getRefDatabase().getRefsByPrefix(R_TAGS);
@@ -1752,13 +2075,29 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      */
     @Override
     public boolean hasGitRepo() throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             return repo.getObjectDatabase().exists();
         } catch (GitException e) {
             return false;
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * JGit reads the shallow commits of repositories cloned by command line
+     * git, but cannot fetch a shallow history itself.
+     */
+    @Override
+    public boolean isShallowRepository() throws GitException {
+        try (Repository repo = openRepository();
+             ObjectReader reader = repo.newObjectReader()) {
+            return repo.getObjectDatabase().exists() && !reader.getShallowCommits().isEmpty();
+        } catch (IOException e) {
+            throw new GitException(e);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean isCommitInRepo(ObjectId commit) throws GitException {
@@ -1766,7 +2105,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             return false;
         }
         final boolean found;
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             found = repo.hasObject(commit);
         }
         return found;
@@ -1775,7 +2114,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public void prune(RemoteConfig repository) throws GitException {
-        try (Repository gitRepo = getRepository()) {
+        try (Repository gitRepo = openRepository()) {
             String remote = repository.getName();
             String prefix = "refs/remotes/" + remote + "/";
 
@@ -1798,7 +2137,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @SuppressFBWarnings(value = "RCN_REDUNDANT_NULLCHECK_WOULD_HAVE_BEEN_A_NPE", justification = "Java 11 spotbugs error")
     private Set<String> listRemoteBranches(String remote) throws NotSupportedException, TransportException, URISyntaxException {
         Set<String> branches = new HashSet<>();
-        try (final Repository repo = getRepository()) {
+        try (final Repository repo = openRepository()) {
             StoredConfig config = repo.getConfig();
             try (final Transport tn = Transport.open(repo, new URIish(config.getString("remote",remote,"url")))) {
                 tn.setCredentialsProvider(getProvider());
@@ -1863,23 +2202,27 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public void execute() throws GitException, InterruptedException {
-                try (Repository repo = getRepository()) {
+                timed("push", this::doExecute);
+            }
+
+            private void doExecute() throws GitException, InterruptedException {
+                try (Repository repo = openRepository()) {
                     RefSpec ref = (refspec != null) ? new RefSpec(fixRefSpec(refspec, repo)) : Transport.REFSPEC_PUSH_ALL;
                     listener.getLogger().println("RefSpec is \""+ref+"\".");
                     Git g = git(repo);
-                    Config config = g.getRepository().getConfig();
                     if (remote == null) {
                         throw new GitException("PushCommand requires a remote repository URL");
                     }
-                    config.setString("remote", "org_jenkinsci_plugins_gitclient_JGitAPIImpl", "url", remote.toPrivateASCIIString());
-                    org.eclipse.jgit.api.PushCommand pc = g.push().setRemote("org_jenkinsci_plugins_gitclient_JGitAPIImpl").setRefSpecs(ref)
-                            .setProgressMonitor(new JGitProgressMonitor(listener))
+                    // the repository may be shared with other clients, so push to the URL instead of a remote in its config
+                    org.eclipse.jgit.api.PushCommand pc = g.push().setRemote(remote.toPrivateASCIIString()).setRefSpecs(ref)
+                            .setProgressMonitor(new JGitProgressMonitor(listener, "push"))
                             .setCredentialsProvider(getProvider())
                             .setForce(force);
                     if(tags) {
                         pc.setPushTags();
                     }
                     Iterable<PushResult> results = pc.call();
+                    RemoteRefCache.invalidate(remote.toPrivateString());
                     for(PushResult result:results) for(RemoteRefUpdate update:result.getRemoteUpdates()) {
                         RemoteRefUpdate.Status status = update.getStatus();
                         if(!OK.equals(status)&&!UP_TO_DATE.equals(status)) {
@@ -1887,7 +2230,6 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                                 "' refspec '" + refspec + "' to " + remote.toPrivateASCIIString());
                         }
                     }
-                    config.unset("remote", "org_jenkinsci_plugins_gitclient_JGitAPIImpl", "url");
                 } catch (IOException | JGitInternalException | GitAPIException e) {
                     throw new GitException(e);
                 }
@@ -2001,7 +2343,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                   throw new UnsupportedOperationException("not implemented yet");
                 }
 
-                try (Repository repo = getRepository();
+                try (Repository repo = openRepository();
                      ObjectReader or = repo.newObjectReader();
                      RevWalk walk = new RevWalk(or)) {
 
@@ -2084,7 +2426,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public ObjectId revParse(String revName) throws GitException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             ObjectId id = repo.resolve(revName + "^{commit}");
             if (id == null)
                 throw new GitException("Unknown git object "+ revName);
@@ -2103,7 +2445,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     /** {@inheritDoc} */
     @Override
     public List<String> showRevision(ObjectId from, ObjectId to, Boolean useRawOutput) throws GitException {
-        try (Repository repo = getRepository();
+        try (Repository repo = openRepository();
              ObjectReader or = repo.newObjectReader();
              RevWalk w = new RevWalk(or)) {
             w.markStart(w.parseCommit(to));
@@ -2114,8 +2456,8 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             List<String> r = new ArrayList<>();
             StringWriter sw = new StringWriter();
-            RawFormatter f = new RawFormatter();
-            try (PrintWriter pw = new PrintWriter(sw)) {
+            try (PrintWriter pw = new PrintWriter(sw);
+                 RawFormatter f = new RawFormatter(repo, or)) {
                 for (RevCommit c : w) {
                     // do not duplicate merge commits unless using raw output
                     if (c.getParentCount()<=1 || !useRawOutput) {
@@ -2139,7 +2481,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
     private Iterable<JGitAPIImpl> submodules() throws IOException {
         List<JGitAPIImpl> submodules = new ArrayList<>();
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             SubmoduleWalk generator = SubmoduleWalk.forIndex(repo);
             while (generator.next()) {
                 submodules.add(new JGitAPIImpl(generator.getDirectory(), listener));
@@ -2148,6 +2490,28 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         return submodules;
     }
 
+    private List<String> submodulePaths() throws IOException {
+        List<String> paths = new ArrayList<>();
+        try (Repository repo = openRepository()) {
+            SubmoduleWalk generator = SubmoduleWalk.forIndex(repo);
+            while (generator.next()) {
+                paths.add(generator.getPath());
+            }
+        }
+        return paths;
+    }
+
+    private void updateSubmodule(String path, CredentialsProvider provider) throws GitException {
+        try (Repository repo = openRepository()) {
+            SubmoduleUpdateCommand update = git(repo).submoduleUpdate();
+            update.setCredentialsProvider(provider);
+            update.addPath(path);
+            update.call();
+        } catch (GitAPIException e) {
+            throw new GitException(e);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public void submoduleClean(boolean recursive) throws GitException {
@@ -2174,6 +2538,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
             private boolean recursive      = false;
             private boolean remoteTracking = false;
             private String  ref            = null;
+            private int     threads        = 1;
 
             @Override
             public org.jenkinsci.plugins.gitclient.SubmoduleUpdateCommand recursive(boolean recursive) {
@@ -2221,14 +2586,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public org.jenkinsci.plugins.gitclient.SubmoduleUpdateCommand threads(int threads) {
-                // TODO: I have no idea if JGit can update submodules in parallel
-                // It might work, or it might blow up horribly. This probably depends on
-                // whether JGit relies on any global/shared state. Since I have no
-                // experience with JGit, I'm leaving this unimplemented for the time
-                // being. But if some brave soul wants to test this, feel free to provide
-                // an implementation similar to the one in the CliGitAPIImpl class using
-                // an ExecutorService.
-                listener.getLogger().println("[WARNING] JGit doesn't support updating submodules in parallel. This flag is ignored");
+                this.threads = threads;
                 return this;
             }
 
@@ -2239,6 +2597,10 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
             @Override
             public void execute() throws GitException, InterruptedException {
+                timed("submodule", this::doExecute);
+            }
+
+            private void doExecute() throws GitException, InterruptedException {
                 if (remoteTracking) {
                     listener.getLogger().println("[ERROR] JGit doesn't support remoteTracking submodules yet.");
                     throw new UnsupportedOperationException("not implemented yet");
@@ -2248,16 +2610,35 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                     throw new UnsupportedOperationException("not implemented yet");
                 }
 
-                try (Repository repo = getRepository()) {
-                    SubmoduleUpdateCommand update = git(repo).submoduleUpdate();
-                    update.setCredentialsProvider(getProvider());
-                    update.call();
-                    if (recursive) {
-                        for (JGitAPIImpl sub : submodules()) {
-                            sub.submoduleUpdate().recursive(recursive).execute();
+                // Nested submodules authenticate with the credentials of this command, not those of their own client
+                CredentialsProvider provider = getProvider();
+                // One level of nested submodules at a time, so that all levels share the same number of threads
+                GitCommandsExecutor executor = new GitCommandsExecutor(threads, listener);
+                List<JGitAPIImpl> level = Collections.singletonList(JGitAPIImpl.this);
+                try {
+                    while (!level.isEmpty()) {
+                        List<Callable<Void>> commands = new ArrayList<>();
+                        for (JGitAPIImpl parent : level) {
+                            for (String path : parent.submodulePaths()) {
+                                commands.add(() -> {
+                                    parent.updateSubmodule(path, provider);
+                                    return null;
+                                });
+                            }
+                        }
+                        executor.invokeAll(commands);
+
+                        List<JGitAPIImpl> next = new ArrayList<>();
+                        if (recursive) {
+                            for (JGitAPIImpl parent : level) {
+                                for (JGitAPIImpl sub : parent.submodules()) {
+                                    next.add(sub);
+                                }
+                            }
                         }
+                        level = next;
                     }
-                } catch (IOException | GitAPIException e) {
+                } catch (IOException e) {
                     throw new GitException(e);
                 }
             }
@@ -2278,7 +2659,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Deprecated
     @Override
     public void merge(String refSpec) throws GitException, InterruptedException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             merge(repo.resolve(refSpec));
         } catch (IOException e) {
             throw new GitException(e);
@@ -2324,58 +2705,23 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      */
     @Override
     public List<Branch> getBranchesContaining(String revspec, boolean allBranches) throws GitException, InterruptedException {
-        try (Repository repo = getRepository();
-             ObjectReader or = repo.newObjectReader();
-             RevWalk walk = new RevWalk(or)) {
-            walk.setRetainBody(false);
-            walk.sort(RevSort.TOPO);// so that by the time we hit target we have all that we want
-
+        try (Repository repo = openRepository()) {
             ObjectId id = repo.resolve(revspec);
             if (id==null)   throw new GitException("Invalid commit: "+revspec);
-            RevCommit target = walk.parseCommit(id);
-
-            // we can track up to 24 flags at a time in JGit, so that's how many branches we will traverse in every iteration
-            List<RevFlag> flags = new ArrayList<>(24);
-            for (int i=0; i<24; i++)
-                flags.add(walk.newFlag("branch" + i));
-            walk.carry(flags);
-
-            List<Branch> result = new ArrayList<>();  // we'll built up the return value in here
 
             List<Ref> branches = getAllBranchRefs(allBranches);
-            while (!branches.isEmpty()) {
-                List<Ref> batch = branches.subList(0,Math.min(flags.size(),branches.size()));
-                branches = branches.subList(batch.size(),branches.size());  // remaining
-
-                walk.reset();
-                int idx=0;
-                for (Ref r : batch) {
-                    RevCommit c = walk.parseCommit(r.getObjectId());
-                    walk.markStart(c);
-                    c.add(flags.get(idx));
-                    idx++;
-                }
-
-                // anything reachable from the target commit in question is not worth traversing.
-                for (RevCommit p : target.getParents()) {
-                    walk.markUninteresting(p);
-                }
-
-                for (RevCommit c : walk) {
-                    if (c.equals(target))
-                        break;
-                }
-
+            Map<String, ObjectId> tips = new HashMap<>();
+            for (Ref r : branches) {
+                tips.put(r.getName(), r.getObjectId());
+            }
+            Set<String> containing = ReachabilityIndex.getRefsContaining(repo, id, tips);
 
-                idx=0;
-                for (Ref r : batch) {
-                    if (target.has(flags.get(idx))) {
-                        result.add(new Branch(r));
-                    }
-                    idx++;
+            List<Branch> result = new ArrayList<>();  // we'll built up the return value in here
+            for (Ref r : branches) {
+                if (containing.contains(r.getName())) {
+                    result.add(new Branch(r));
                 }
             }
-
             return result;
         } catch (IOException e) {
             throw new GitException(e);
@@ -2384,7 +2730,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
 
     private List<Ref> getAllBranchRefs(boolean originBranches) {
         List<Ref> branches = new ArrayList<>();
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             for (Ref r : repo.getAllRefs().values()) {
                 final String branchName = r.getName();
                 if (branchName.startsWith(R_HEADS)
@@ -2400,7 +2746,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Deprecated
     @Override
     public ObjectId mergeBase(ObjectId id1, ObjectId id2) throws InterruptedException {
-        try (Repository repo = getRepository();
+        try (Repository repo = openRepository();
              ObjectReader or = repo.newObjectReader();
              RevWalk walk = new RevWalk(or)) {
             walk.setRetainBody(false);  // we don't need the body for this computation
@@ -2421,7 +2767,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Deprecated
     @Override
     public String getAllLogEntries(String branch) throws InterruptedException {
-        try (Repository repo = getRepository();
+        try (Repository repo = openRepository();
              ObjectReader or = repo.newObjectReader();
              RevWalk walk = new RevWalk(or)) {
             StringBuilder w = new StringBuilder();
@@ -2448,7 +2794,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      * Adds all matching refs as start commits.
      */
     private void markRefs(RevWalk walk, Predicate<Ref> filter) throws IOException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             for (Ref r : repo.getAllRefs().values()) {
                 if (filter.apply(r)) {
                     RevCommit c = walk.parseCommit(r.getObjectId());
@@ -2467,7 +2813,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Deprecated
     @Override
     public void submoduleInit() throws GitException, InterruptedException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             git(repo).submoduleInit().call();
         } catch (GitAPIException e) {
             throw new GitException(e);
@@ -2483,7 +2829,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Deprecated
     @Override
     public void submoduleSync() throws GitException, InterruptedException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             git(repo).submoduleSync().call();
         } catch (GitAPIException e) {
             throw new GitException(e);
@@ -2495,7 +2841,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Override
     public String getSubmoduleUrl(String name) throws GitException, InterruptedException {
         String v = null;
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             v = repo.getConfig().getString("submodule", name, "url");
         }
         if (v==null)    throw new GitException("No such submodule: "+name);
@@ -2506,7 +2852,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Deprecated
     @Override
     public void setSubmoduleUrl(String name, String url) throws GitException, InterruptedException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             StoredConfig config = repo.getConfig();
             config.setString("submodule", name, "url", url);
             config.save();
@@ -2549,149 +2895,49 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
      * This implementation is based on my reading of the cgit source code at https://github.com/git/git/blob/master/builtin/describe.c
      *
      * <p>
-     * The basic structure of the algorithm is as follows. We walk the commit graph,
-     * find tags, and mark commits that are reachable from those tags. The marking
-     * uses flags given by JGit, so there's a fairly small upper bound in the number of tags
-     * we can keep track of.
-     *
-     * <p>
-     * As we walk commits, we count commits that each tag doesn't contain.
-     * We call it "depth", following the variable name in C Git.
-     * As we walk further and find enough tags, we go into wind-down mode and only walk
-     * to the point of accurately determining all the depths.
+     * The walk is done by {@link Describer}, which keeps the peeled tags of the
+     * repository between calls.
      */
     @Override
     public String describe(String tip) throws GitException, InterruptedException {
-        try (Repository repo = getRepository()) {
-            final ObjectReader or = repo.newObjectReader();
-            final RevWalk w = new RevWalk(or); // How to dispose of this ?
-            w.setRetainBody(false);
-
-            Map<ObjectId,Ref> tags = new HashMap<>();
-            for (Ref r : repo.getTags().values()) {
-                ObjectId key = repo.peel(r).getPeeledObjectId();
-                if (key==null)  key = r.getObjectId();
-                tags.put(key, r);
-            }
-
-            final RevFlagSet allFlags = new RevFlagSet(); // combined flags of all the Candidate instances
-
-            /**
-             * Tracks the depth of each tag as we find them.
-             */
-            class Candidate {
-                final Ref tag;
-                final RevFlag flag;
-
-                /**
-                 * This field number of commits that are reachable from the tip but
-                 * not reachable from the tag.
-                 */
-                int depth;
-
-                Candidate(RevCommit commit, Ref tag) {
-                    this.tag = tag;
-                    this.flag = w.newFlag(tag.getName());
-                    // we'll mark all the nodes reachable from this tag accordingly
-                    allFlags.add(flag);
-                    w.carry(flag);
-                    commit.add(flag);
-                    commit.carry(flag);
-                }
-
-                /**
-                 * Does this tag contains the given commit?
-                 */
-                public boolean reaches(RevCommit c) {
-                    return c.has(flag);
-                }
-
-                public String describe(ObjectId tip) throws IOException {
-                    return String.format("%s-%d-g%s", tag.getName().substring(R_TAGS.length()),
-                            depth, or.abbreviate(tip).name());
-                }
-            }
-            List<Candidate> candidates = new ArrayList<>();    // all the candidates we find
-
-            ObjectId tipId = repo.resolve(tip);
-
-            Ref lucky = tags.get(tipId);
-            if (lucky!=null)
-                return lucky.getName().substring(R_TAGS.length());
-
-            w.markStart(w.parseCommit(tipId));
-
-            int maxCandidates = 10;
+        return describe(Collections.singletonList(tip)).get(tip);
+    }
 
-            int seen = 0;   // commit seen thus far
-            RevCommit c;
-            while ((c=w.next())!=null) {
-                if (!c.hasAny(allFlags)) {
-                    // if a tag already dominates this commit,
-                    // then there's no point in picking a tag on this commit
-                    // since the one that dominates it is always more preferable
-                    Ref t = tags.get(c);
-                    if (t!=null) {
-                        Candidate cd = new Candidate(c, t);
-                        candidates.add(cd);
-                        cd.depth = seen;
-                    }
+    /**
+     * {@inheritDoc}
+     *
+     * The tags are read and peeled once for all commits.
+     */
+    @Override
+    public Map<String, String> describe(Collection<String> commitIshes) throws GitException, InterruptedException {
+        Map<String, String> descriptions = new LinkedHashMap<>();
+        try (Repository repo = openRepository();
+             Describer describer = new Describer(repo)) {
+            for (String commitIsh : commitIshes) {
+                if (descriptions.containsKey(commitIsh)) {
+                    continue;
                 }
-
-                // if the newly discovered commit isn't reachable from a tag that we've seen
-                // it counts toward the total depth.
-                for (Candidate cd : candidates) {
-                    if (!cd.reaches(c)) {
-                        cd.depth++;
-                    }
+                ObjectId id = repo.resolve(commitIsh);
+                if (id == null) {
+                    throw new GitException("Invalid commit: " + commitIsh);
                 }
-
-                // if we have search going for enough tags, we wil start closing down.
-                // JGit can only give us a finite number of bits, so we can't track
-                // all tags even if we wanted to.
-                if (candidates.size()>=maxCandidates)
-                    break;
-
-                // TODO: if all the commits in the queue of RevWalk has allFlags
-                // there's no point in continuing search as we'll not discover any more
-                // tags. But RevWalk doesn't expose this.
-
-                seen++;
-            }
-
-            // at this point we aren't adding any more tags to our search,
-            // but we still need to count all the depths correctly.
-            while ((c=w.next())!=null) {
-                if (c.hasAll(allFlags)) {
-                    // no point in visiting further from here, so cut the search here
-                    for (RevCommit p : c.getParents())
-                        p.add(RevFlag.SEEN);
-                } else {
-                    for (Candidate cd : candidates) {
-                        if (!cd.reaches(c)) {
-                            cd.depth++;
-                        }
-                    }
+                String description = describer.describe(id);
+                if (description == null) {
+                    throw new GitException("No tags can describe " + commitIsh);
                 }
+                descriptions.put(commitIsh, description);
             }
-
-            if (candidates.isEmpty())
-                throw new GitException("No tags can describe "+tip);
-
-            // if all the nodes are dominated by all the tags, the walk stops
-            Collections.sort(candidates, (Candidate o1, Candidate o2) -> o1.depth-o2.depth);
-
-            return candidates.get(0).describe(tipId);
         } catch (IOException e) {
             throw new GitException(e);
         }
+        return descriptions;
     }
 
     /** {@inheritDoc} */
     @Deprecated
     @Override
     public List<IndexEntry> lsTree(String treeIsh, boolean recursive) throws GitException, InterruptedException {
-        try (Repository repo = getRepository();
+        try (Repository repo = openRepository();
              ObjectReader or = repo.newObjectReader();
              RevWalk w = new RevWalk(or)) {
             TreeWalk tree = new TreeWalk(or);
@@ -2717,7 +2963,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     @Deprecated
     @Override
     public void reset(boolean hard) throws GitException, InterruptedException {
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             ResetCommand reset = new ResetCommand(repo);
             reset.setMode(hard?HARD:MIXED);
             reset.call();
@@ -2740,7 +2986,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         try {
             if (isBlank(GIT_DIR) || !(new File(GIT_DIR)).isAbsolute()) {
                 if ((new File(workspace, ".git")).exists()) {
-                    repo = getRepository();
+                    repo = openRepository();
                 } else {
                     repo = new RepositoryBuilder().setGitDir(workspace).build();
                 }
@@ -2792,7 +3038,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
                                  "BC_UNCONFIRMED_CAST_OF_RETURN_VALUE"},
                         justification = "Java 11 spotbugs error and JGit interaction with spotbugs")
     private StoredConfig getConfig(String GIT_DIR) throws GitException {
-        try (Repository repo = isBlank(GIT_DIR) ? getRepository() : new RepositoryBuilder().setWorkTree(new File(GIT_DIR)).build()) {
+        try (Repository repo = isBlank(GIT_DIR) ? openRepository() : new RepositoryBuilder().setWorkTree(new File(GIT_DIR)).build()) {
             return repo.getConfig();
         } catch (IOException ioe) {
             throw new GitException(ioe);
@@ -2804,7 +3050,7 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
     public Set<GitObject> getTags() throws GitException, InterruptedException {
         Set<GitObject> peeledTags = new HashSet<>();
         Set<String> tagNames = new HashSet<>();
-        try (Repository repo = getRepository()) {
+        try (Repository repo = openRepository()) {
             Map<String, Ref> tagsRead = repo.getTags();
             for (Map.Entry<String, Ref> entry : tagsRead.entrySet()) {
                 /* Prefer peeled ref if available (for tag commit), otherwise take first tag reference seen */
@@ -2827,24 +3073,4 @@ public class JGitAPIImpl extends LegacyCompatibleGitAPIImpl {
         }
         return peeledTags;
     }
-
-    private static class FileRepositoryImpl extends FileRepository {
-
-        private final File tempDir;
-
-        public FileRepositoryImpl(File gitDir, File tempDir) throws IOException {
-            super(gitDir);
-            this.tempDir = tempDir;
-        }
-
-        @Override
-        public void close() {
-            super.close();
-            try {
-                Util.deleteRecursive(tempDir);
-            } catch (IOException e) {
-                // ignore
-            }
-        }
-    }
 }
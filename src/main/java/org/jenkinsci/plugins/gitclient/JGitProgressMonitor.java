@@ -12,6 +12,10 @@ import java.io.PrintStream;
 public class JGitProgressMonitor implements org.eclipse.jgit.lib.ProgressMonitor {
 
     private final PrintStream log;
+    private final String operation;
+    private final GitProgressReporter reporter;
+    private String title;
+    private int totalWork;
     private int completed;
 
     /**
@@ -20,7 +24,20 @@ public class JGitProgressMonitor implements org.eclipse.jgit.lib.ProgressMonitor
      * @param listener a {@link hudson.model.TaskListener} object.
      */
     public JGitProgressMonitor(TaskListener listener) {
+        this(listener, "git");
+    }
+
+    /**
+     * Constructor for JGitProgressMonitor which reports the progress of an
+     * operation to the {@link GitProgress.Listener}s.
+     *
+     * @param listener a {@link hudson.model.TaskListener} object.
+     * @param operation operation name, like <code>fetch</code> or <code>push</code>
+     */
+    public JGitProgressMonitor(TaskListener listener, String operation) {
         this.log = listener.getLogger();
+        this.operation = operation;
+        this.reporter = new GitProgressReporter(listener);
     }
 
     /** {@inheritDoc} */
@@ -30,17 +47,32 @@ public class JGitProgressMonitor implements org.eclipse.jgit.lib.ProgressMonitor
     /** {@inheritDoc} */
     public void beginTask(String title, int totalWork) {
         log.println(title);
+        this.title = title;
+        this.totalWork = totalWork;
+        this.completed = 0;
+        report(false);
     }
 
     /** {@inheritDoc} */
     public void update(int completed) {
         this.completed += completed;
+        if (reporter.isDue()) {
+            report(false);
+        }
     }
 
     /**
      * endTask.
      */
     public void endTask() {
+        report(true);
+    }
+
+    private void report(boolean done) {
+        if (title != null) {
+            long total = totalWork == UNKNOWN ? -1 : totalWork;
+            reporter.update(new GitProgress("jgit", operation, title, false, completed, total, -1, -1, done));
+        }
     }
 
     /**
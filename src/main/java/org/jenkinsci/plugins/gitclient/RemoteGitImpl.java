@@ -35,6 +35,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -142,10 +143,15 @@ class RemoteGitImpl implements GitClient, IGitAPI, Serializable {
         }
 
         public void execute() throws GitException, InterruptedException {
+            GitFlightRecorder.Event event = GitFlightRecorder.beginRemote();
+            int status = -1;
             try {
                 channel.call(new GitCommandMasterToSlaveCallable());
+                status = 0;
             } catch (IOException e) {
                 throw new GitException(e);
+            } finally {
+                event.commit(null, "remote", command.getSimpleName(), status);
             }
         }
 
@@ -284,6 +290,12 @@ class RemoteGitImpl implements GitClient, IGitAPI, Serializable {
         return proxy.hasGitRepo();
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public boolean isShallowRepository() throws GitException, InterruptedException {
+        return proxy.isShallowRepository();
+    }
+
     /** {@inheritDoc} */
     public boolean isCommitInRepo(ObjectId commit) throws GitException, InterruptedException {
         return proxy.isCommitInRepo(commit);
@@ -568,6 +580,18 @@ class RemoteGitImpl implements GitClient, IGitAPI, Serializable {
         return proxy.getRemoteSymbolicReferences(remoteRepoUrl, pattern);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public RemoteSnapshot getRemoteSnapshot(String remoteRepoUrl) throws GitException, InterruptedException {
+        return proxy.getRemoteSnapshot(remoteRepoUrl);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public RemoteRefChanges getRemoteRefChanges(String remoteRepoUrl, RemoteRefState previous, boolean includeTags, boolean keepRefs) throws GitException, InterruptedException {
+        return proxy.getRemoteRefChanges(remoteRepoUrl, previous, includeTags, keepRefs);
+    }
+
     /** {@inheritDoc} */
     public ObjectId revParse(String revName) throws GitException, InterruptedException {
         return proxy.revParse(revName);
@@ -878,6 +902,12 @@ class RemoteGitImpl implements GitClient, IGitAPI, Serializable {
         return getGitAPI().describe(commitIsh);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, String> describe(Collection<String> commitIshes) throws GitException, InterruptedException {
+        return getGitAPI().describe(commitIshes);
+    }
+
     /** {@inheritDoc} */
     public List<Tag> getTagsOnCommit(String revName) throws GitException, IOException, InterruptedException {
         return getGitAPI().getTagsOnCommit(revName);
@@ -0,0 +1,292 @@
+package org.jenkinsci.plugins.gitclient;
+
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.transport.URIish;
+
+import com.cloudbees.jenkins.plugins.sshcredentials.SSHUserPrivateKey;
+import com.cloudbees.plugins.credentials.common.PasswordCredentials;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import com.cloudbees.plugins.credentials.common.UsernameCredentials;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.Secret;
+
+/**
+ * Cache of the refs listed by remote repositories, shared by the git
+ * clients of this JVM.
+ * <p>
+ * Multibranch indexing, polling and head revision lookups of many jobs ask
+ * the same server for the refs of the same repository within seconds. The
+ * results of {@link GitClient#getRemoteReferences}, {@link GitClient#getHeadRev}
+ * and {@link GitClient#getRemoteSymbolicReferences} are kept for the time
+ * to live, keyed by the normalized URL, the credentials and the query. The
+ * credentials are identified by a digest of their id and secrets, so that
+ * clients with other credentials of the same id do not see the result.
+ * Fetching from or pushing to a URL through a git client drops the results
+ * for that URL. The least recently used results are dropped when the cache
+ * is full.
+ * <p>
+ * The cache is disabled by default, because a cached result does not show
+ * refs changed by others until it expires. Identical queries running at
+ * the same time share one call to the server even then.
+ */
+public final class RemoteRefCache {
+
+    /**
+     * Seconds a remote ref listing is reused, 0 to disable the cache.
+     *
+     * <code>TTL_SECONDS=Long.getLong(RemoteRefCache.class.getName() + ".ttlSeconds", 0)</code>.
+     *
+     * Use '-Dorg.jenkinsci.plugins.gitclient.RemoteRefCache.ttlSeconds=10'
+     * to ask a server at most once per 10 seconds for the same refs.
+     */
+    private static final long TTL_SECONDS = Long.getLong(RemoteRefCache.class.getName() + ".ttlSeconds", 0);
+
+    /**
+     * Maximum number of cached remote ref listings.
+     *
+     * <code>MAX_ENTRIES=Integer.getInteger(RemoteRefCache.class.getName() + ".maxEntries", 1000)</code>.
+     */
+    private static final int MAX_ENTRIES = Integer.getInteger(RemoteRefCache.class.getName() + ".maxEntries", 1000);
+
+    private static volatile long ttlNanos = TimeUnit.SECONDS.toNanos(TTL_SECONDS);
+    private static volatile int maxEntries = MAX_ENTRIES;
+
+    /* access ordered, guarded by itself */
+    private static final Map<Key, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+
+    /* counts invalidations, results loaded across an invalidation are not stored */
+    private static long generation;
+
+    private RemoteRefCache() {
+    }
+
+    /**
+     * Loads a remote ref listing.
+     *
+     * @param <T> type of the result
+     * @param <E> type of the exception thrown by the loader
+     */
+    @FunctionalInterface
+    public interface Loader<T, E extends Exception> {
+        T load() throws E;
+    }
+
+    /**
+     * Returns the cached result of a query, or loads and caches it. Callers
+     * asking for the same query while it loads share the load, see
+     * {@link SingleFlight}. The result is shared by all callers, so it must
+     * not be modified.
+     *
+     * @param url URL of the remote repository
+     * @param credentials credentials used for the URL, null if none
+     * @param query operation and arguments which determine the result
+     * @param loader lists the refs if there is no cached result
+     * @param <T> type of the result
+     * @param <E> type of the exception thrown by the loader
+     * @return result of the query, may be null if the loader returns null
+     * @throws E if the loader fails, failures are not cached
+     */
+    public static <T, E extends Exception> T get(@NonNull String url, @CheckForNull StandardCredentials credentials,
+                                                 @NonNull String query, @NonNull Loader<T, E> loader) throws E {
+        Key key = new Key(normalize(url), identity(credentials), query);
+        long ttl = ttlNanos;
+        if (ttl <= 0) {
+            return SingleFlight.run(key, loader::load);
+        }
+        long loadGeneration;
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(key);
+            if (entry != null && System.nanoTime() - entry.loaded < ttl) {
+                @SuppressWarnings("unchecked") /* the query determines the type */
+                T value = (T) entry.value;
+                return value;
+            }
+            loadGeneration = generation;
+        }
+        long loaded = System.nanoTime();
+        T value = SingleFlight.run(key, loader::load);
+        synchronized (ENTRIES) {
+            if (generation == loadGeneration) {
+                ENTRIES.put(key, new Entry(value, loaded));
+                Iterator<Entry> eldest = ENTRIES.values().iterator();
+                for (int excess = ENTRIES.size() - maxEntries; excess > 0 && eldest.hasNext(); excess--) {
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Drops the cached results for a URL, like after the refs of the remote
+     * repository were fetched or changed.
+     *
+     * @param url URL of the remote repository
+     */
+    public static void invalidate(@NonNull String url) {
+        String normalized = normalize(url);
+        synchronized (ENTRIES) {
+            generation++;
+            ENTRIES.keySet().removeIf(key -> key.url.equals(normalized));
+        }
+    }
+
+    /**
+     * Drops all cached results.
+     */
+    public static void invalidateAll() {
+        synchronized (ENTRIES) {
+            generation++;
+            ENTRIES.clear();
+        }
+    }
+
+    /**
+     * Sets how long results are reused, replacing the time to live of the
+     * system property.
+     *
+     * @param ttl time to live, 0 to disable the cache
+     * @param unit unit of the time to live
+     */
+    public static void setTimeToLive(long ttl, @NonNull TimeUnit unit) {
+        ttlNanos = unit.toNanos(ttl);
+        if (ttl <= 0) {
+            invalidateAll();
+        }
+    }
+
+    /**
+     * Sets the maximum number of cached results, replacing the maximum of
+     * the system property.
+     *
+     * @param entries maximum number of cached results
+     */
+    public static void setMaximumSize(int entries) {
+        maxEntries = entries;
+    }
+
+    /**
+     * @return number of cached results, including expired results not dropped yet
+     */
+    public static int size() {
+        synchronized (ENTRIES) {
+            return ENTRIES.size();
+        }
+    }
+
+    /* Spellings of the same repository URL which git treats alike */
+    @NonNull
+    static String normalize(@NonNull String url) {
+        String u = url.trim();
+        while (u.endsWith("/")) {
+            u = u.substring(0, u.length() - 1);
+        }
+        try {
+            URIish uri = new URIish(u);
+            if (uri.isRemote() && uri.getPath() != null && uri.getPath().endsWith(".git")) {
+                // servers resolve repo and repo.git alike, local paths are different repositories
+                uri = uri.setPath(uri.getPath().substring(0, uri.getPath().length() - 4));
+            }
+            if (uri.getScheme() != null) {
+                uri = uri.setScheme(uri.getScheme().toLowerCase(Locale.ENGLISH));
+            }
+            if (uri.getHost() != null) {
+                uri = uri.setHost(uri.getHost().toLowerCase(Locale.ENGLISH));
+            }
+            return uri.toPrivateString();
+        } catch (URISyntaxException e) {
+            return u;
+        }
+    }
+
+    /* Digest of the id and secrets of credentials */
+    @NonNull
+    static String identity(@CheckForNull StandardCredentials credentials) {
+        if (credentials == null) {
+            return "";
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(digest, credentials.getClass().getName());
+        update(digest, credentials.getId());
+        if (credentials instanceof UsernameCredentials) {
+            update(digest, ((UsernameCredentials) credentials).getUsername());
+        }
+        if (credentials instanceof PasswordCredentials) {
+            update(digest, Secret.toString(((PasswordCredentials) credentials).getPassword()));
+        }
+        if (credentials instanceof SSHUserPrivateKey) {
+            SSHUserPrivateKey key = (SSHUserPrivateKey) credentials;
+            for (String privateKey : key.getPrivateKeys()) {
+                update(digest, privateKey);
+            }
+            update(digest, Secret.toString(key.getPassphrase()));
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static final class Key {
+        final String url;
+        final String credentials;
+        final String query;
+
+        Key(String url, String credentials, String query) {
+            this.url = url;
+            this.credentials = credentials;
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return url.equals(key.url) && credentials.equals(key.credentials) && query.equals(key.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(url, credentials, query);
+        }
+    }
+
+    private static final class Entry {
+        final Object value;
+        final long loaded;
+
+        Entry(Object value, long loaded) {
+            this.value = value;
+            this.loaded = loaded;
+        }
+    }
+}
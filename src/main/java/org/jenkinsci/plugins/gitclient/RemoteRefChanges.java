@@ -0,0 +1,132 @@
+package org.jenkinsci.plugins.gitclient;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.eclipse.jgit.lib.ObjectId;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Refs of a remote repository which changed since a previous
+ * {@link RemoteRefState}, with the state to pass to the next poll.
+ *
+ * @see GitClient#getRemoteRefChanges(String, RemoteRefState, boolean, boolean)
+ */
+public final class RemoteRefChanges implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final RemoteRefState state;
+    private final boolean complete;
+    private final Map<String, ObjectId> added;
+    private final Map<String, ObjectId> updated;
+    private final Set<String> removed;
+
+    private RemoteRefChanges(RemoteRefState state, boolean complete, Map<String, ObjectId> added,
+                             Map<String, ObjectId> updated, Set<String> removed) {
+        this.state = state;
+        this.complete = complete;
+        this.added = Collections.unmodifiableMap(added);
+        this.updated = Collections.unmodifiableMap(updated);
+        this.removed = Collections.unmodifiableSet(removed);
+    }
+
+    /**
+     * Compares refs with a previous state. If the digest of the refs equals
+     * the previous digest, the refs are not compared one by one.
+     *
+     * @param previous state of the previous poll, null if there was none
+     * @param refs objects by ref name
+     * @param keepRefs true if the new state keeps the refs, so that the next poll can list the changed refs
+     * @return changes since the previous state
+     */
+    @NonNull
+    public static RemoteRefChanges between(@CheckForNull RemoteRefState previous, @NonNull Map<String, ObjectId> refs,
+                                           boolean keepRefs) {
+        SortedMap<String, ObjectId> current = new TreeMap<>(refs);
+        ObjectId digest = RemoteRefState.digest(current);
+        if (previous != null && previous.getDigest().equals(digest)) {
+            RemoteRefState state = previous.hasRefs() == keepRefs ? previous : RemoteRefState.of(current, digest, keepRefs);
+            return new RemoteRefChanges(state, true, Collections.emptyMap(), Collections.emptyMap(), Collections.emptySet());
+        }
+        RemoteRefState state = RemoteRefState.of(current, digest, keepRefs);
+        Map<String, ObjectId> before = previous != null ? previous.getRefs() : Collections.emptyMap();
+        if (before == null) {
+            // only the digest is known, every ref may have changed
+            return new RemoteRefChanges(state, false, current, Collections.emptyMap(), Collections.emptySet());
+        }
+        Map<String, ObjectId> added = new TreeMap<>();
+        Map<String, ObjectId> updated = new TreeMap<>();
+        for (Map.Entry<String, ObjectId> ref : current.entrySet()) {
+            ObjectId old = before.get(ref.getKey());
+            if (old == null) {
+                added.put(ref.getKey(), ref.getValue());
+            } else if (!old.equals(ref.getValue())) {
+                updated.put(ref.getKey(), ref.getValue());
+            }
+        }
+        Set<String> removed = new TreeSet<>(before.keySet());
+        removed.removeAll(current.keySet());
+        return new RemoteRefChanges(state, true, added, updated, removed);
+    }
+
+    /**
+     * @return state of the refs now, to pass to the next poll
+     */
+    @NonNull
+    public RemoteRefState getState() {
+        return state;
+    }
+
+    /**
+     * @return true if no ref was added, updated or removed since the previous state
+     */
+    public boolean isUnchanged() {
+        return complete && added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+    }
+
+    /**
+     * @return false if refs changed but the previous state kept only the digest. Then {@link #getAdded()} lists
+     *      all refs and {@link #getUpdated()} and {@link #getRemoved()} are empty.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return objects of refs which were not in the previous state, by ref name
+     */
+    @NonNull
+    public Map<String, ObjectId> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return new objects of refs which point to other objects than in the previous state, by ref name
+     */
+    @NonNull
+    public Map<String, ObjectId> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return names of refs which were in the previous state and are gone
+     */
+    @NonNull
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteRefChanges{added=" + added.keySet() + ", updated=" + updated.keySet()
+                + ", removed=" + removed + ", complete=" + complete + ", state=" + state + "}";
+    }
+}
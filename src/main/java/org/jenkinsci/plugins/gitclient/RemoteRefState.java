@@ -0,0 +1,178 @@
+package org.jenkinsci.plugins.gitclient;
+
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Compact state of the refs of a remote repository, kept between two polls
+ * to ask {@link GitClient#getRemoteRefChanges} which refs changed.
+ * <p>
+ * The state is a SHA-1 digest over the ref names and objects, sorted by
+ * name. It may also keep the refs themselves, packed into one string of
+ * names and one array of raw object ids instead of a map, so that the
+ * changed refs can be told apart. The digest alone is enough to tell
+ * whether anything changed and can be stored as a token of 40 characters.
+ *
+ * @see RemoteRefChanges
+ */
+public final class RemoteRefState implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ObjectId digest;
+
+    /* names separated by newlines and their raw object ids in the same order, null if only the digest is kept */
+    private final String names;
+    private final byte[] ids;
+
+    private RemoteRefState(ObjectId digest, String names, byte[] ids) {
+        this.digest = digest;
+        this.names = names;
+        this.ids = ids;
+    }
+
+    /**
+     * Creates the state of refs.
+     *
+     * @param refs objects by ref name
+     * @param keepRefs true to keep the refs, so that the changed refs can be listed later
+     * @return state of the refs
+     */
+    @NonNull
+    public static RemoteRefState of(@NonNull Map<String, ObjectId> refs, boolean keepRefs) {
+        SortedMap<String, ObjectId> sorted = new TreeMap<>(refs);
+        return of(sorted, digest(sorted), keepRefs);
+    }
+
+    static RemoteRefState of(SortedMap<String, ObjectId> refs, ObjectId digest, boolean keepRefs) {
+        if (!keepRefs) {
+            return new RemoteRefState(digest, null, null);
+        }
+        StringBuilder names = new StringBuilder();
+        byte[] ids = new byte[refs.size() * Constants.OBJECT_ID_LENGTH];
+        int offset = 0;
+        for (Map.Entry<String, ObjectId> ref : refs.entrySet()) {
+            if (offset > 0) {
+                names.append('\n');
+            }
+            names.append(ref.getKey());
+            ref.getValue().copyRawTo(ids, offset);
+            offset += Constants.OBJECT_ID_LENGTH;
+        }
+        return new RemoteRefState(digest, names.toString(), ids);
+    }
+
+    /**
+     * Restores the state of refs from its token. The state does not keep
+     * the refs, so it only tells whether refs changed, not which.
+     *
+     * @param token token of a state, see {@link #getToken()}
+     * @return state with the digest of the token
+     * @throws IllegalArgumentException if the token is not a token of a state
+     */
+    @NonNull
+    public static RemoteRefState fromToken(@NonNull String token) {
+        if (!ObjectId.isId(token)) {
+            throw new IllegalArgumentException("Not a ref state token: " + token);
+        }
+        return new RemoteRefState(ObjectId.fromString(token), null, null);
+    }
+
+    /* SHA-1 over the name and raw object id of each ref, in the order of the map */
+    static ObjectId digest(SortedMap<String, ObjectId> refs) {
+        MessageDigest md = Constants.newMessageDigest();
+        byte[] raw = new byte[Constants.OBJECT_ID_LENGTH];
+        for (Map.Entry<String, ObjectId> ref : refs.entrySet()) {
+            md.update(Constants.encode(ref.getKey()));
+            md.update((byte) 0);
+            ref.getValue().copyRawTo(raw, 0);
+            md.update(raw);
+        }
+        return ObjectId.fromRaw(md.digest());
+    }
+
+    /**
+     * @return digest of the refs as 40 hexadecimal characters, restored by {@link #fromToken(String)}
+     */
+    @NonNull
+    public String getToken() {
+        return digest.name();
+    }
+
+    ObjectId getDigest() {
+        return digest;
+    }
+
+    /**
+     * @return true if the state keeps the refs, not only their digest
+     */
+    public boolean hasRefs() {
+        return names != null;
+    }
+
+    /**
+     * @return objects by ref name, sorted by name, null if the state keeps only the digest
+     */
+    @CheckForNull
+    public Map<String, ObjectId> getRefs() {
+        if (names == null) {
+            return null;
+        }
+        Map<String, ObjectId> refs = new TreeMap<>();
+        int offset = 0;
+        int start = 0;
+        while (offset < ids.length) {
+            int end = names.indexOf('\n', start);
+            if (end == -1) {
+                end = names.length();
+            }
+            refs.put(names.substring(start, end), ObjectId.fromRaw(ids, offset));
+            start = end + 1;
+            offset += Constants.OBJECT_ID_LENGTH;
+        }
+        return Collections.unmodifiableMap(refs);
+    }
+
+    /**
+     * @return this state without the refs, only the digest
+     */
+    @NonNull
+    public RemoteRefState withoutRefs() {
+        return names == null ? this : new RemoteRefState(digest, null, null);
+    }
+
+    /**
+     * States are equal if they have the same digest, whether they keep the
+     * refs or not.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return digest.equals(((RemoteRefState) o).digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return digest.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteRefState{" + digest.name() + (ids != null ? ", refs=" + ids.length / Constants.OBJECT_ID_LENGTH : "") + "}";
+    }
+}
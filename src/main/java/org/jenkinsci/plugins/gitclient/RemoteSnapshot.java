@@ -0,0 +1,137 @@
+package org.jenkinsci.plugins.gitclient;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Branches, tags and symbolic references of a remote repository, read from
+ * one ref advertisement of the server.
+ *
+ * @see GitClient#getRemoteSnapshot(String)
+ */
+public final class RemoteSnapshot implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, ObjectId> heads;
+    private final Map<String, ObjectId> tags;
+    private final Map<String, String> symbolicReferences;
+    private final ObjectId head;
+
+    /**
+     * @param heads branches by full ref name
+     * @param tags tags by full ref name, with the commit of annotated tags
+     * @param symbolicReferences symbolic references by name, with the name of the reference they point to
+     * @param head object of HEAD, null if the remote repository did not list it
+     */
+    public RemoteSnapshot(@NonNull Map<String, ObjectId> heads, @NonNull Map<String, ObjectId> tags,
+                          @NonNull Map<String, String> symbolicReferences, @CheckForNull ObjectId head) {
+        this.heads = Collections.unmodifiableMap(new TreeMap<>(heads));
+        this.tags = Collections.unmodifiableMap(new TreeMap<>(tags));
+        this.symbolicReferences = Collections.unmodifiableMap(new TreeMap<>(symbolicReferences));
+        this.head = head;
+    }
+
+    /**
+     * @return branches by full ref name like <code>refs/heads/master</code>, sorted by name
+     */
+    @NonNull
+    public Map<String, ObjectId> getHeads() {
+        return heads;
+    }
+
+    /**
+     * @return tags by full ref name like <code>refs/tags/v1.0</code>, sorted by name, annotated tags are peeled to
+     *      the object they tag
+     */
+    @NonNull
+    public Map<String, ObjectId> getTags() {
+        return tags;
+    }
+
+    /**
+     * @return symbolic references by name, like <code>HEAD</code> to <code>refs/heads/master</code>. Empty if the
+     *      remote repository or the client do not report symbolic references, like
+     *      {@link GitClient#getRemoteSymbolicReferences(String, String)}
+     */
+    @NonNull
+    public Map<String, String> getSymbolicReferences() {
+        return symbolicReferences;
+    }
+
+    /**
+     * @return object HEAD of the remote repository points to, null if it was not listed, like in an empty repository
+     */
+    @CheckForNull
+    public ObjectId getHead() {
+        return head;
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteSnapshot{heads=" + heads.size() + ", tags=" + tags.size()
+                + ", symbolicReferences=" + symbolicReferences + ", head=" + (head != null ? head.name() : null) + "}";
+    }
+
+    /**
+     * Collects the refs of a ref advertisement.
+     */
+    public static final class Builder {
+        private final Map<String, ObjectId> heads = new TreeMap<>();
+        private final Map<String, ObjectId> tags = new TreeMap<>();
+        private final Map<String, String> symbolicReferences = new TreeMap<>();
+        private ObjectId head;
+
+        /**
+         * Adds an advertised ref. Refs other than HEAD, branches and tags
+         * are ignored. The peeled entry of an annotated tag, named like
+         * <code>refs/tags/v1.0^{}</code>, replaces the tag object.
+         *
+         * @param name name of the ref
+         * @param id object the ref points to
+         * @return this builder
+         */
+        public Builder add(@NonNull String name, @NonNull ObjectId id) {
+            if (name.equals(Constants.HEAD)) {
+                head = id;
+            } else if (name.startsWith(Constants.R_HEADS)) {
+                heads.put(name, id);
+            } else if (name.startsWith(Constants.R_TAGS)) {
+                if (name.endsWith("^{}")) {
+                    tags.put(name.substring(0, name.length() - 3), id);
+                } else {
+                    tags.putIfAbsent(name, id);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Adds a symbolic reference.
+         *
+         * @param name name of the symbolic reference, like <code>HEAD</code>
+         * @param target name of the reference it points to
+         * @return this builder
+         */
+        public Builder addSymbolicReference(@NonNull String name, @NonNull String target) {
+            symbolicReferences.put(name, target);
+            return this;
+        }
+
+        /**
+         * @return snapshot of the refs added
+         */
+        @NonNull
+        public RemoteSnapshot build() {
+            return new RemoteSnapshot(heads, tags, symbolicReferences, head);
+        }
+    }
+}
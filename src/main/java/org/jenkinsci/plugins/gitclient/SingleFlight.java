@@ -0,0 +1,206 @@
+package org.jenkinsci.plugins.gitclient;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.plugins.git.GitException;
+
+/**
+ * Coalesces identical remote operations which run at the same time in
+ * this JVM, like the ls-remote calls of many jobs triggered by the same
+ * push, so that they share one call to the server.
+ * <p>
+ * The first caller of an operation runs it, callers asking for the same
+ * operation while it runs wait for it and get its result or its exception.
+ * With {@link #run(Object, Runnable, Operation)} a caller which joins a
+ * running operation may get a result which misses changes made after the
+ * operation started but before the call, like a push which triggered the
+ * call. That is fine for listings which may be outdated anyway, not for a
+ * fetch which must see that push. {@link #runLatest} only shares operations
+ * which started after the call. If the running operation is interrupted,
+ * the waiting callers run the operation again.
+ */
+public final class SingleFlight {
+
+    /**
+     * Constant which allows identical concurrent remote operations to
+     * share one call.
+     *
+     * <code>ENABLED=Boolean.valueOf(System.getProperty(SingleFlight.class.getName() + ".enabled", "true"))</code>.
+     *
+     * Use '-Dorg.jenkinsci.plugins.gitclient.SingleFlight.enabled=false'
+     * to run every operation on its own.
+     */
+    private static final boolean ENABLED = Boolean.valueOf(System.getProperty(SingleFlight.class.getName() + ".enabled", "true"));
+
+    private static final Map<Object, Flight> FLIGHTS = new ConcurrentHashMap<>();
+
+    private static final Object RETRY = new Object();
+
+    private SingleFlight() {
+    }
+
+    /**
+     * An operation which may be shared.
+     *
+     * @param <T> type of the result
+     * @param <E> type of the exception thrown by the operation
+     */
+    @FunctionalInterface
+    public interface Operation<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * Runs an operation, or waits for the identical operation which is
+     * running already.
+     *
+     * @param key identifies the operation, equal keys must identify operations with equal results and exceptions
+     * @param operation runs the operation
+     * @param <T> type of the result
+     * @param <E> type of the exception thrown by the operation
+     * @return result of the operation, shared with the callers which joined it
+     * @throws E if the operation fails
+     * @throws GitException if the caller is interrupted while waiting for the operation
+     */
+    public static <T, E extends Exception> T run(@NonNull Object key, @NonNull Operation<T, E> operation) throws E {
+        return run(key, null, operation);
+    }
+
+    /**
+     * Runs an operation, or waits for the identical operation which is
+     * running already.
+     *
+     * @param key identifies the operation, equal keys must identify operations with equal results and exceptions
+     * @param joining called before waiting for the running operation, like to tell the user, null if not needed
+     * @param operation runs the operation
+     * @param <T> type of the result
+     * @param <E> type of the exception thrown by the operation
+     * @return result of the operation, shared with the callers which joined it
+     * @throws E if the operation fails
+     * @throws GitException if the caller is interrupted while waiting for the operation
+     */
+    public static <T, E extends Exception> T run(@NonNull Object key, @CheckForNull Runnable joining,
+                                                 @NonNull Operation<T, E> operation) throws E {
+        if (!ENABLED) {
+            return operation.run();
+        }
+        while (true) {
+            Flight flight = new Flight();
+            Flight running = FLIGHTS.putIfAbsent(key, flight);
+            if (running == null) {
+                return lead(key, flight, operation);
+            }
+            if (joining != null) {
+                joining.run();
+            }
+            Object value;
+            try {
+                value = SingleFlight.<E>join(running);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GitException("Interrupted while waiting for the same operation of another caller", e);
+            }
+            if (value != RETRY) {
+                @SuppressWarnings("unchecked") /* equal keys have results of the same type */
+                T result = (T) value;
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Runs an operation, or shares the identical operation of another
+     * caller which started after this call, so that the result includes
+     * all changes made before the call. A caller which finds an identical
+     * operation which started earlier waits for it to end and then shares
+     * the next run with the other callers which waited. A caller
+     * interrupted while waiting gets an {@link InterruptedException}, like
+     * a caller interrupted while running the operation.
+     *
+     * @param key identifies the operation, equal keys must identify operations with equal results and exceptions
+     * @param joining called each time before waiting for another operation, like to tell the user, null if not needed
+     * @param operation runs the operation
+     * @param <T> type of the result
+     * @param <E> type of the exception thrown by the operation
+     * @return result of the operation, shared with the callers which joined it
+     * @throws E if the operation fails
+     * @throws InterruptedException if the caller is interrupted while waiting for another operation
+     */
+    public static <T, E extends Exception> T runLatest(@NonNull Object key, @CheckForNull Runnable joining,
+                                                       @NonNull Operation<T, E> operation) throws E, InterruptedException {
+        if (!ENABLED) {
+            return operation.run();
+        }
+        long called = System.nanoTime();
+        while (true) {
+            Flight flight = new Flight();
+            Flight running = FLIGHTS.putIfAbsent(key, flight);
+            if (running == null) {
+                return lead(key, flight, operation);
+            }
+            if (joining != null) {
+                joining.run();
+            }
+            if (running.started - called < 0) {
+                // may have read the remote before the changes this caller expects, run again once it ended
+                try {
+                    running.get();
+                } catch (ExecutionException e) {
+                    // the next run reports its own failure
+                }
+                continue;
+            }
+            Object value = SingleFlight.<E>join(running);
+            if (value != RETRY) {
+                @SuppressWarnings("unchecked") /* equal keys have results of the same type */
+                T result = (T) value;
+                return result;
+            }
+        }
+    }
+
+    /* Waits for the result of a running operation, RETRY if the caller running it was interrupted */
+    private static <E extends Exception> Object join(Flight running) throws E, InterruptedException {
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) {
+                // the caller running the operation was interrupted, not this one
+                return RETRY;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            @SuppressWarnings("unchecked") /* equal keys throw exceptions of the same type */
+            E exception = (E) cause;
+            throw exception;
+        }
+    }
+
+    private static <T, E extends Exception> T lead(Object key, Flight flight, Operation<T, E> operation) throws E {
+        try {
+            T value = operation.run();
+            FLIGHTS.remove(key, flight);
+            flight.complete(value);
+            return value;
+        } catch (Exception | Error e) {
+            FLIGHTS.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /* Result of one run of an operation */
+    private static final class Flight extends CompletableFuture<Object> {
+        final long started = System.nanoTime();
+    }
+}
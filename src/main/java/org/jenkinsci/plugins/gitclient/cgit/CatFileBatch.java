@@ -0,0 +1,303 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Client side of a long running <code>git cat-file --batch</code> process.
+ * <p>
+ * Object names are written to the standard input of the process, which
+ * answers with the object id, type and content of each object. Many
+ * object lookups can be answered by one process instead of starting a git
+ * process per lookup.
+ * <p>
+ * A session bound to an owner with {@link #closeWhenUnreachable(Object)}
+ * is closed once the owner, like the git client using it, has been garbage
+ * collected. The session also closes itself after it has been idle for the
+ * configured time, or when one query has been running that long, like
+ * when the process hangs. Callers check {@link #isClosed()} and start a
+ * new session when needed. Queries are serialized, a session may be
+ * shared by threads.
+ */
+public class CatFileBatch implements Closeable {
+
+    private static final ScheduledExecutorService IDLE_REAPER = Executors.newSingleThreadScheduledExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), CatFileBatch.class.getSimpleName()));
+
+    /* owners of sessions are enqueued here once they are unreachable */
+    private static final ReferenceQueue<Object> UNREACHABLE_OWNERS = new ReferenceQueue<>();
+
+    /* keeps the references to owners reachable until they are enqueued */
+    private static final Set<OwnerReference> OWNER_REFERENCES = ConcurrentHashMap.newKeySet();
+
+    static {
+        startOwnerReaper();
+    }
+
+    private final OutputStream stdin;
+    private final InputStream stdout;
+    private final Closeable process;
+    private final long idleTimeoutMillis;
+    /* serializes queries, the other fields are guarded by this */
+    private final ReentrantLock queryLock = new ReentrantLock();
+    private long lastUsed;
+    /* start of the running query, 0 if none is running */
+    private long queryStarted;
+    private boolean closed;
+    private ScheduledFuture<?> idleCheck;
+    private OwnerReference ownerReference;
+
+    /**
+     * @param stdin standard input of the <code>git cat-file --batch</code> process
+     * @param stdout standard output of the process
+     * @param process closed after stdin was closed, to release the process
+     * @param idleTimeoutMillis the session is closed after being idle or running one query that long, never if not positive
+     */
+    public CatFileBatch(OutputStream stdin, InputStream stdout, Closeable process, long idleTimeoutMillis) {
+        this.stdin = stdin;
+        this.stdout = new BufferedInputStream(stdout);
+        this.process = process;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Object found by a query.
+     */
+    public static final class GitObjectData {
+        private final ObjectId id;
+        private final String type;
+        private final byte[] content;
+
+        GitObjectData(ObjectId id, String type, byte[] content) {
+            this.id = id;
+            this.type = type;
+            this.content = content;
+        }
+
+        public ObjectId getId() {
+            return id;
+        }
+
+        /**
+         * @return object type, one of "commit", "tree", "blob" or "tag"
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * @return raw object content, or null if the content was not requested
+         */
+        public byte[] getContent() {
+            return content;
+        }
+    }
+
+    /**
+     * Looks up an object by any name git understands, like a SHA1, a ref
+     * name or an expression like <code>master^{commit}</code>.
+     *
+     * @param objectName name of the object, must not contain line breaks
+     * @param withContent true if the object content should be returned
+     * @return the object, or null if the name is missing or ambiguous
+     * @throws IOException on communication failure with the process, the session is closed in that case
+     * @throws IllegalArgumentException if objectName contains line breaks
+     */
+    public GitObjectData query(String objectName, boolean withContent) throws IOException {
+        if (objectName.indexOf('\n') >= 0 || objectName.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Object name must not contain line breaks: " + objectName);
+        }
+        queryLock.lock();
+        try {
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException("cat-file session closed");
+                }
+                queryStarted = System.currentTimeMillis();
+                scheduleIdleCheck();
+            }
+            try {
+                stdin.write((objectName + "\n").getBytes(StandardCharsets.UTF_8));
+                stdin.flush();
+                String header = readLine();
+                String[] fields = header.split(" ");
+                if (fields.length != 3 || fields[0].length() != 40) {
+                    // "<name> missing" or "<name> ambiguous"
+                    return null;
+                }
+                long size = Long.parseLong(fields[2]);
+                byte[] content = readContent(size, withContent);
+                if (stdout.read() != '\n') {
+                    throw new IOException("Missing object terminator after " + header);
+                }
+                return new GitObjectData(ObjectId.fromString(fields[0]), fields[1], content);
+            } catch (IOException | RuntimeException e) {
+                close();
+                throw e instanceof IOException ? (IOException) e : new IOException("Unexpected cat-file output", e);
+            } finally {
+                synchronized (this) {
+                    queryStarted = 0;
+                    lastUsed = System.currentTimeMillis();
+                    scheduleIdleCheck();
+                }
+            }
+        } finally {
+            queryLock.unlock();
+        }
+    }
+
+    /**
+     * Closes this session once the owner is no longer reachable, so that the
+     * process does not outlive the object using it. The session must not
+     * reference the owner.
+     *
+     * @param owner object using this session
+     * @return this session
+     */
+    public synchronized CatFileBatch closeWhenUnreachable(Object owner) {
+        if (!closed && ownerReference == null) {
+            ownerReference = new OwnerReference(owner, this);
+            OWNER_REFERENCES.add(ownerReference);
+        }
+        return this;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes the session and stops the process. A query running in another
+     * thread fails.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (idleCheck != null) {
+            idleCheck.cancel(false);
+        }
+        if (ownerReference != null) {
+            OWNER_REFERENCES.remove(ownerReference);
+            ownerReference.clear();
+        }
+        try {
+            stdin.close();
+        } finally {
+            process.close();
+        }
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = stdout.read()) != '\n') {
+            if (b < 0) {
+                throw new EOFException("cat-file process ended unexpectedly");
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8.name());
+    }
+
+    private byte[] readContent(long size, boolean keep) throws IOException {
+        if (keep && size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Object too large: " + size + " bytes");
+        }
+        byte[] content = keep ? new byte[(int) size] : null;
+        byte[] skipBuffer = keep ? null : new byte[(int) Math.min(size, 8192)];
+        long remaining = size;
+        while (remaining > 0) {
+            int n;
+            if (keep) {
+                n = stdout.read(content, (int) (size - remaining), (int) remaining);
+            } else {
+                n = stdout.read(skipBuffer, 0, (int) Math.min(remaining, skipBuffer.length));
+            }
+            if (n < 0) {
+                throw new EOFException("cat-file process ended unexpectedly");
+            }
+            remaining -= n;
+        }
+        return content;
+    }
+
+    /* guarded by this */
+    private void scheduleIdleCheck() {
+        if (closed || idleTimeoutMillis <= 0 || (idleCheck != null && !idleCheck.isDone())) {
+            return;
+        }
+        long delay = (queryStarted != 0 ? queryStarted : lastUsed) + idleTimeoutMillis - System.currentTimeMillis();
+        idleCheck = IDLE_REAPER.schedule(this::closeIfIdle, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void closeIfIdle() {
+        idleCheck = null;
+        if (closed) {
+            return;
+        }
+        boolean hung = queryStarted != 0;
+        if (System.currentTimeMillis() - (hung ? queryStarted : lastUsed) >= idleTimeoutMillis) {
+            try {
+                if (hung) {
+                    // stop the process first, closing stdin could wait for the blocked query to finish writing
+                    process.close();
+                }
+                close();
+            } catch (IOException e) {
+                // process is gone either way
+            }
+        } else {
+            scheduleIdleCheck();
+        }
+    }
+
+    private static void startOwnerReaper() {
+        Thread reaper = new NamingThreadFactory(new DaemonThreadFactory(), CatFileBatch.class.getSimpleName() + " owner reaper")
+                .newThread(() -> {
+                    while (true) {
+                        try {
+                            OwnerReference reference = (OwnerReference) UNREACHABLE_OWNERS.remove();
+                            OWNER_REFERENCES.remove(reference);
+                            reference.session.close();
+                        } catch (InterruptedException e) {
+                            return;
+                        } catch (IOException e) {
+                            // process is gone either way
+                        }
+                    }
+                });
+        reaper.start();
+    }
+
+    private static final class OwnerReference extends PhantomReference<Object> {
+        final CatFileBatch session;
+
+        OwnerReference(Object owner, CatFileBatch session) {
+            super(owner, UNREACHABLE_OWNERS);
+            this.session = session;
+        }
+    }
+}
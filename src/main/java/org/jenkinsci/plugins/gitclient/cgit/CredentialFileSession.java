@@ -0,0 +1,255 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Temporary files which pass one credential to command line git, like a
+ * private key, an askpass script and a GIT_SSH wrapper, together with the
+ * environment variables that refer to them.
+ * <p>
+ * Sessions are handed out by a {@link Cache}, which lets concurrent and
+ * consecutive git commands using the same credential share the files
+ * instead of writing and deleting them for every command. Git clients
+ * are not closed, so files are only deleted once a session was unused for
+ * the idle time of its cache, or when the JVM exits. Files can also be
+ * deleted by others before that, like together with the temporary
+ * directory of a workspace, then the session is created again.
+ */
+public final class CredentialFileSession {
+
+    private static final ScheduledExecutorService IDLE_REAPER = Executors.newSingleThreadScheduledExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), CredentialFileSession.class.getSimpleName()));
+
+    /* Sessions with files on disk, deleted by the shutdown hook */
+    private static final Set<CredentialFileSession> LIVE = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (CredentialFileSession session : LIVE) {
+                session.delete();
+            }
+        }, CredentialFileSession.class.getSimpleName() + " cleanup"));
+    }
+
+    private final List<File> files = new ArrayList<>();
+    private final List<Runnable> cleanups = new ArrayList<>();
+    private final Map<String, String> environment = new HashMap<>();
+    private final Consumer<File> deleter;
+    private int users;
+    private long lastUsed;
+    private boolean deleted;
+
+    private CredentialFileSession(Consumer<File> deleter) {
+        this.deleter = deleter;
+        LIVE.add(this);
+    }
+
+    /**
+     * Registers a file to be deleted with this session.
+     *
+     * @param file temporary file, may be null
+     * @return the file
+     */
+    public synchronized File addFile(File file) {
+        if (file != null) {
+            files.add(file);
+        }
+        return file;
+    }
+
+    /**
+     * Registers an action to run when the files of this session are deleted.
+     *
+     * @param cleanup action, like forgetting a secret held in memory
+     */
+    public synchronized void addCleanup(Runnable cleanup) {
+        cleanups.add(cleanup);
+    }
+
+    /**
+     * Adds an environment variable to pass to git commands using this session.
+     *
+     * @param name variable name
+     * @param value variable value
+     */
+    public synchronized void putEnvironment(String name, String value) {
+        environment.put(name, value);
+    }
+
+    public synchronized Map<String, String> getEnvironment() {
+        return Collections.unmodifiableMap(new HashMap<>(environment));
+    }
+
+    /**
+     * @return true once the files of this session were deleted
+     */
+    public synchronized boolean isDeleted() {
+        return deleted;
+    }
+
+    /* true if none of the files was deleted by others, guarded by this */
+    private boolean filesExist() {
+        for (File file : files) {
+            if (!file.exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void delete() {
+        if (deleted) {
+            return;
+        }
+        deleted = true;
+        LIVE.remove(this);
+        for (File file : files) {
+            deleter.accept(file);
+        }
+        files.clear();
+        for (Runnable cleanup : cleanups) {
+            cleanup.run();
+        }
+        cleanups.clear();
+    }
+
+    /**
+     * Creates the files of a new session.
+     */
+    @FunctionalInterface
+    public interface Factory {
+        void create(CredentialFileSession session) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Sessions of one git client, keyed by credential and URL.
+     *
+     * @param <K> key type
+     */
+    public static final class Cache<K> {
+        private final Map<K, CredentialFileSession> sessions = new HashMap<>();
+        private final long idleMillis;
+        private final Consumer<File> deleter;
+
+        /**
+         * @param idleMillis files are deleted after a session was unused that long, not shared at all if not positive
+         * @param deleter deletes one file
+         */
+        public Cache(long idleMillis, Consumer<File> deleter) {
+            this.idleMillis = idleMillis;
+            this.deleter = deleter;
+        }
+
+        /**
+         * Returns the session for key, creating its files if needed. Every
+         * call must be paired with {@link #release(CredentialFileSession)}.
+         *
+         * @param key identifies credential and URL
+         * @param factory creates the files if there is no session for key
+         * @return session in use by the caller
+         * @throws IOException if the files cannot be created
+         * @throws InterruptedException if interrupted
+         */
+        public CredentialFileSession acquire(K key, Factory factory) throws IOException, InterruptedException {
+            CredentialFileSession stale = null;
+            synchronized (this) {
+                CredentialFileSession session = sessions.get(key);
+                if (session != null) {
+                    synchronized (session) {
+                        if (!session.deleted && session.filesExist()) {
+                            session.users++;
+                            return session;
+                        }
+                        if (!session.deleted) {
+                            // files were deleted by others, like with the temporary directory of the workspace
+                            sessions.remove(key);
+                            if (session.users == 0) {
+                                stale = session;
+                            }
+                        }
+                    }
+                }
+            }
+            if (stale != null) {
+                stale.delete();
+            }
+            CredentialFileSession created = new CredentialFileSession(deleter);
+            try {
+                factory.create(created);
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                created.delete();
+                throw e;
+            }
+            synchronized (this) {
+                CredentialFileSession session = sessions.get(key);
+                if (session != null) {
+                    synchronized (session) {
+                        if (!session.deleted && session.filesExist()) {
+                            // created concurrently by another thread, use that one
+                            session.users++;
+                            created.delete();
+                            return session;
+                        }
+                    }
+                }
+                created.users++;
+                if (idleMillis > 0) {
+                    sessions.put(key, created);
+                }
+                return created;
+            }
+        }
+
+        /**
+         * Ends the use of a session by one caller.
+         *
+         * @param session session returned by {@link #acquire}, ignored if null
+         */
+        public void release(CredentialFileSession session) {
+            if (session == null) {
+                return;
+            }
+            synchronized (session) {
+                session.users--;
+                session.lastUsed = System.currentTimeMillis();
+                if (session.users > 0) {
+                    return;
+                }
+            }
+            if (idleMillis <= 0) {
+                session.delete();
+            } else {
+                IDLE_REAPER.schedule(() -> deleteIfIdle(session), idleMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void deleteIfIdle(CredentialFileSession session) {
+            synchronized (this) {
+                synchronized (session) {
+                    if (session.deleted || session.users > 0
+                            || System.currentTimeMillis() - session.lastUsed < idleMillis) {
+                        // in use or used again, a later release schedules another check
+                        return;
+                    }
+                    sessions.values().remove(session);
+                    session.delete();
+                }
+            }
+        }
+    }
+}
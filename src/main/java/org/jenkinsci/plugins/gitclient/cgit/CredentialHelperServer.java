@@ -0,0 +1,248 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Answers the askpass prompts of command line git and ssh from memory.
+ * <p>
+ * One listener on the loopback interface is shared by all git clients of
+ * this JVM, together with one static askpass script pointing at it. A git
+ * command using credentials gets the script as <code>GIT_ASKPASS</code> and
+ * <code>SSH_ASKPASS</code> and a random token in {@link #TOKEN_VARIABLE}. The
+ * script sends the token and the prompt to the listener, which replies with
+ * the user name or secret registered for that token. No secret is written
+ * to disk.
+ * <p>
+ * The script connects through the <code>/dev/tcp</code> redirection of bash,
+ * so the server is only available on Unix machines with
+ * <code>/bin/bash</code>.
+ */
+public final class CredentialHelperServer {
+
+    private static final Logger LOGGER = Logger.getLogger(CredentialHelperServer.class.getName());
+
+    /**
+     * Environment variable passing the token to the askpass script.
+     */
+    public static final String TOKEN_VARIABLE = "JENKINS_GIT_CREDENTIAL_TOKEN";
+
+    private static final String BASH = "/bin/bash";
+    private static final int READ_TIMEOUT_MILLIS = 10_000;
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    private static CredentialHelperServer instance;
+    private static boolean unavailable;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Answers> registrations = new ConcurrentHashMap<>();
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final File script;
+
+    CredentialHelperServer(File scriptDir) throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        try {
+            script = writeScript(scriptDir, serverSocket.getInetAddress().getHostAddress(), serverSocket.getLocalPort());
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+        executor = Executors.newCachedThreadPool(
+                new NamingThreadFactory(new DaemonThreadFactory(), CredentialHelperServer.class.getSimpleName()));
+        executor.execute(this::acceptLoop);
+    }
+
+    /**
+     * Returns the server of this JVM, starting it on first use.
+     *
+     * @return the server, null if it is not available on this machine
+     */
+    @CheckForNull
+    public static synchronized CredentialHelperServer getInstance() {
+        if (instance == null && !unavailable) {
+            if (File.pathSeparatorChar == ';' || !new File(BASH).canExecute()) {
+                unavailable = true;
+                return null;
+            }
+            try {
+                instance = new CredentialHelperServer(null);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Cannot start credential helper server, using credential files", e);
+                unavailable = true;
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return askpass script to pass as <code>GIT_ASKPASS</code> and <code>SSH_ASKPASS</code>
+     */
+    @NonNull
+    public File getScript() {
+        return script;
+    }
+
+    /**
+     * Registers the answers for the prompts of one credential.
+     *
+     * @param username answer to prompts starting with "Username", null if git should not ask for one
+     * @param secret answer to all other prompts, like the password or the passphrase of a private key
+     * @return token to pass in {@link #TOKEN_VARIABLE}, valid until {@link #unregister(String)}
+     */
+    @NonNull
+    public String register(@CheckForNull String username, @NonNull String secret) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        StringBuilder token = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            token.append(String.format("%02x", b & 0xff));
+        }
+        registrations.put(token.toString(), new Answers(username, secret));
+        return token.toString();
+    }
+
+    /**
+     * Forgets the answers registered for a token.
+     *
+     * @param token token returned by {@link #register(String, String)}
+     */
+    public void unregister(@NonNull String token) {
+        registrations.remove(token);
+    }
+
+    /**
+     * Answer to an askpass prompt.
+     *
+     * @param token token passed to the script
+     * @param prompt prompt passed to the script by git or ssh
+     * @return the answer, null for an unknown token
+     */
+    @CheckForNull
+    String answer(String token, String prompt) {
+        Answers answers = token == null ? null : registrations.get(token);
+        if (answers == null) {
+            return null;
+        }
+        if (answers.username != null && prompt != null && prompt.startsWith("Username")) {
+            return answers.username;
+        }
+        return answers.secret;
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops listening and deletes the script. Intended for tests, the
+     * server returned by {@link #getInstance()} lives as long as the JVM.
+     */
+    void close() throws IOException {
+        try {
+            serverSocket.close();
+        } finally {
+            executor.shutdownNow();
+            if (!script.delete() && script.exists()) {
+                LOGGER.log(Level.FINE, "Cannot delete {0}", script);
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.execute(() -> serve(socket));
+            } catch (SocketException e) {
+                // closed
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Credential helper server failed to accept a connection", e);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            s.setSoTimeout(READ_TIMEOUT_MILLIS);
+            Reader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            String token = readLine(reader);
+            String prompt = readLine(reader);
+            String answer = answer(token, prompt);
+            if (answer != null) {
+                OutputStream out = s.getOutputStream();
+                out.write((answer + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Credential helper request failed", e);
+        }
+    }
+
+    /* Reads one line without its terminator, at most MAX_LINE_LENGTH characters */
+    private static String readLine(Reader reader) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = reader.read()) != -1 && c != '\n') {
+            if (line.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("Credential helper request line too long");
+            }
+            line.append((char) c);
+        }
+        if (c == -1 && line.length() == 0) {
+            return null;
+        }
+        int end = line.length();
+        if (end > 0 && line.charAt(end - 1) == '\r') {
+            line.setLength(end - 1);
+        }
+        return line.toString();
+    }
+
+    private static File writeScript(File dir, String address, int port) throws IOException {
+        File script = File.createTempFile("jenkins-git-askpass", ".sh", dir);
+        script.deleteOnExit();
+        try (PrintWriter w = new PrintWriter(script, "UTF-8")) {
+            w.println("#!" + BASH);
+            w.println("exec 3<>/dev/tcp/" + address + "/" + port + " || exit 1");
+            w.println("printf '%s\\n%s\\n' \"$" + TOKEN_VARIABLE + "\" \"$1\" >&3");
+            w.println("cat <&3");
+        }
+        if (!script.setExecutable(true, true)) {
+            throw new IOException("Cannot make " + script + " executable");
+        }
+        return script;
+    }
+
+    private static final class Answers {
+        private final String username;
+        private final String secret;
+
+        Answers(String username, String secret) {
+            this.username = username;
+            this.secret = secret;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * JVM wide cache of facts probed from a git executable, like the output
+ * of <code>git --version</code> or the location of the ssh executable
+ * shipped with it.
+ * <p>
+ * Results are keyed by the resolved path of the executable together with
+ * its modification time and size, so an upgrade of git in place is noticed
+ * on the next lookup. Executables which cannot be resolved to a file are
+ * not cached.
+ */
+public final class GitProbeCache {
+
+    private static final Map<Key, Map<String, Object>> PROBES = new ConcurrentHashMap<>();
+
+    private GitProbeCache() {
+    }
+
+    /**
+     * Identity of a git executable file.
+     */
+    public static final class Key {
+        private final String path;
+        private final long lastModified;
+        private final long length;
+
+        Key(String path, long lastModified, long length) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return lastModified == key.lastModified && length == key.length && path.equals(key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, lastModified, length);
+        }
+
+        @Override
+        public String toString() {
+            return path;
+        }
+    }
+
+    /**
+     * Resolves a git executable the way the operating system would when
+     * launching it: names containing a path separator are used as given,
+     * other names are searched on the PATH.
+     *
+     * @param gitExe git executable as configured, like <code>git</code> or <code>/usr/bin/git</code>
+     * @param path value of the PATH environment variable used to launch git, null for the PATH of this JVM
+     * @return key of the resolved executable, null if it cannot be found
+     */
+    @CheckForNull
+    public static Key resolve(@NonNull String gitExe, @CheckForNull String path) {
+        if (gitExe.indexOf('/') >= 0 || gitExe.indexOf(File.separatorChar) >= 0) {
+            return keyOf(new File(gitExe));
+        }
+        if (path == null) {
+            path = System.getenv("PATH");
+        }
+        if (path == null) {
+            return null;
+        }
+        String[] suffixes = File.pathSeparatorChar == ';' ? new String[] {"", ".exe", ".cmd", ".bat"} : new String[] {""};
+        for (String dir : path.split(File.pathSeparator)) {
+            if (dir.isEmpty()) {
+                continue;
+            }
+            for (String suffix : suffixes) {
+                Key key = keyOf(new File(dir, gitExe + suffix));
+                if (key != null) {
+                    return key;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the cached result of a probe, running the probe if the
+     * result is not known yet for this executable.
+     *
+     * @param key executable to probe, the probe is run uncached if null
+     * @param probeName name of the probe, like "version"
+     * @param probe computes the result, returning null marks the result as not cacheable
+     * @param <T> result type
+     * @return result of the probe
+     */
+    @CheckForNull
+    @SuppressWarnings("unchecked")
+    public static <T> T get(@CheckForNull Key key, @NonNull String probeName, @NonNull Supplier<T> probe) {
+        if (key == null) {
+            return probe.get();
+        }
+        Map<String, Object> results = PROBES.get(key);
+        if (results == null) {
+            // drop results of an earlier version of the same executable
+            PROBES.keySet().removeIf(k -> k.path.equals(key.path) && !k.equals(key));
+            results = PROBES.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        }
+        Object result = results.get(probeName);
+        if (result == null) {
+            result = probe.get();
+            if (result != null) {
+                results.put(probeName, result);
+            }
+        }
+        return (T) result;
+    }
+
+    /**
+     * Forgets all probe results, intended for tests.
+     */
+    public static void clear() {
+        PROBES.clear();
+    }
+
+    @CheckForNull
+    private static Key keyOf(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        File absolute = file.getAbsoluteFile();
+        return new Key(absolute.getPath(), absolute.lastModified(), absolute.length());
+    }
+}
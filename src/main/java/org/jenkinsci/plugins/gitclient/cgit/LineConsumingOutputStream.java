@@ -0,0 +1,149 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Output stream which splits the bytes written to it into lines and hands
+ * each line to a consumer as soon as it is complete.
+ * <p>
+ * Used to parse the output of command line git while the process is still
+ * running, so that the complete output never has to be held in memory.
+ * Lines are separated by '\n', a trailing '\r' is removed. A final line
+ * without line terminator is delivered on {@link #close()}. Progress output,
+ * which redraws a line by ending it with '\r', can be split at every '\r'
+ * instead; empty lines are skipped then.
+ * <p>
+ * The stream is usually written by a stream copy thread of the launched
+ * process. An exception thrown by the consumer must not stop that thread,
+ * or the process could block on a full pipe. The first exception is
+ * therefore remembered, later lines are discarded, and the exception is
+ * rethrown by {@link #close()}.
+ */
+public class LineConsumingOutputStream extends OutputStream {
+
+    private static final int INITIAL_LINE_SIZE = 128;
+
+    private final Charset charset;
+    private final Consumer<String> consumer;
+    private final boolean splitAtCarriageReturn;
+    private byte[] buf = new byte[INITIAL_LINE_SIZE];
+    private int count;
+    private boolean closed;
+    private RuntimeException failure;
+
+    public LineConsumingOutputStream(Charset charset, Consumer<String> consumer) {
+        this(charset, false, consumer);
+    }
+
+    /**
+     * @param charset encoding of the output
+     * @param splitAtCarriageReturn true to end a line at '\r' as well as at '\n'
+     * @param consumer receives every line
+     */
+    public LineConsumingOutputStream(Charset charset, boolean splitAtCarriageReturn, Consumer<String> consumer) {
+        this.charset = charset;
+        this.splitAtCarriageReturn = splitAtCarriageReturn;
+        this.consumer = consumer;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureOpen();
+        if (isEol(b)) {
+            eol();
+        } else {
+            append(b);
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        int end = off + len;
+        int start = off;
+        for (int i = off; i < end; i++) {
+            if (isEol(b[i])) {
+                append(b, start, i - start);
+                eol();
+                start = i + 1;
+            }
+        }
+        append(b, start, end - start);
+    }
+
+    /**
+     * Delivers a pending partial line, if any. Further writes are rejected.
+     *
+     * @throws RuntimeException first exception thrown by the consumer
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (count > 0) {
+                eol();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private boolean isEol(int b) {
+        return b == '\n' || (splitAtCarriageReturn && b == '\r');
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void append(int b) {
+        grow(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    private void append(byte[] b, int off, int len) {
+        if (len <= 0) {
+            return;
+        }
+        grow(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    private void grow(int minCapacity) {
+        if (minCapacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, minCapacity));
+        }
+    }
+
+    private void eol() {
+        int len = count;
+        if (len > 0 && buf[len - 1] == '\r') {
+            len--;
+        }
+        if (len == 0 && splitAtCarriageReturn) {
+            return;
+        }
+        String line = new String(buf, 0, len, charset);
+        count = 0;
+        if (buf.length > INITIAL_LINE_SIZE * 64) {
+            /* Do not keep the buffer of an exceptionally long line alive */
+            buf = new byte[INITIAL_LINE_SIZE];
+        }
+        if (failure != null) {
+            return;
+        }
+        try {
+            consumer.accept(line);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+}
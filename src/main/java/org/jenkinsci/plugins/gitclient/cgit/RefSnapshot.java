@@ -0,0 +1,340 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import org.eclipse.jgit.lib.ObjectId;
+
+/**
+ * Immutable index of all refs of a repository, read with a single
+ * <code>git for-each-ref</code> call using {@link #FOR_EACH_REF_FORMAT}.
+ * <p>
+ * A snapshot carries a {@link Stamp} of the ref storage taken before the
+ * refs were listed. {@link #isCurrent()} compares the stamp with the
+ * file system, so that refs changed by other processes are noticed
+ * without launching git.
+ */
+public final class RefSnapshot {
+
+    /**
+     * Format passed to <code>git for-each-ref --format</code>, one line per
+     * ref with object id, ref name, peeled object id and type, and the
+     * target of a symbolic ref. Ref names cannot contain spaces.
+     */
+    public static final String FOR_EACH_REF_FORMAT = "%(objectname) %(refname) %(*objectname) %(*objecttype) %(symref)";
+
+    private final Map<String, Ref> refs;
+    private final Stamp stamp;
+
+    private RefSnapshot(Map<String, Ref> refs, Stamp stamp) {
+        this.refs = Collections.unmodifiableMap(refs);
+        this.stamp = stamp;
+    }
+
+    /**
+     * A single ref of the snapshot.
+     */
+    public static final class Ref {
+        private final String name;
+        private final ObjectId objectId;
+        private final ObjectId peeledObjectId;
+        private final boolean fullyPeeled;
+        private final String symbolicTarget;
+
+        Ref(String name, ObjectId objectId, ObjectId peeledObjectId, boolean fullyPeeled, String symbolicTarget) {
+            this.name = name;
+            this.objectId = objectId;
+            this.peeledObjectId = peeledObjectId;
+            this.fullyPeeled = fullyPeeled;
+            this.symbolicTarget = symbolicTarget;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public ObjectId getObjectId() {
+            return objectId;
+        }
+
+        /**
+         * @return object the annotated tag points to, null if the ref does not point to an annotated tag
+         */
+        @CheckForNull
+        public ObjectId getPeeledObjectId() {
+            return peeledObjectId;
+        }
+
+        /**
+         * @return false if the ref points to a tag of a tag, whose peeled object id is not the final target
+         */
+        public boolean isFullyPeeled() {
+            return fullyPeeled;
+        }
+
+        /**
+         * @return the ref name this symbolic ref points to, null if it is not a symbolic ref
+         */
+        @CheckForNull
+        public String getSymbolicTarget() {
+            return symbolicTarget;
+        }
+
+        public boolean isSymbolic() {
+            return symbolicTarget != null;
+        }
+    }
+
+    /**
+     * Collects the output lines of <code>git for-each-ref</code>.
+     */
+    public static final class Builder {
+        private final Map<String, Ref> refs = new TreeMap<>();
+
+        public void addLine(String line) {
+            if (line.isEmpty()) {
+                return;
+            }
+            String[] fields = line.split(" ", -1);
+            if (fields.length != 5) {
+                throw new IllegalArgumentException("Unexpected for-each-ref output line '" + line + "'");
+            }
+            ObjectId peeled = fields[2].isEmpty() ? null : ObjectId.fromString(fields[2]);
+            boolean fullyPeeled = !"tag".equals(fields[3]);
+            String symbolicTarget = fields[4].isEmpty() ? null : fields[4];
+            refs.put(fields[1], new Ref(fields[1], ObjectId.fromString(fields[0]), peeled, fullyPeeled, symbolicTarget));
+        }
+
+        public RefSnapshot build(@CheckForNull Stamp stamp) {
+            return new RefSnapshot(refs, stamp);
+        }
+    }
+
+    /**
+     * @param name full ref name, like <code>refs/heads/master</code>
+     * @return ref with that name, null if it does not exist
+     */
+    @CheckForNull
+    public Ref get(String name) {
+        return refs.get(name);
+    }
+
+    /**
+     * @return all refs, sorted by name
+     */
+    public Collection<Ref> getRefs() {
+        return refs.values();
+    }
+
+    /**
+     * @return true if the ref storage has not changed since the snapshot was taken
+     */
+    public boolean isCurrent() {
+        return stamp != null && stamp.isCurrent();
+    }
+
+    /**
+     * Matches a ref name like <code>git for-each-ref &lt;pattern&gt;</code>:
+     * either literally, completely or from the beginning up to a slash, or
+     * as a glob in which wildcards do not match a slash.
+     *
+     * @param pattern for-each-ref pattern
+     * @param refName full ref name
+     * @return true if the pattern matches
+     */
+    public static boolean forEachRefMatches(String pattern, String refName) {
+        if (refName.startsWith(pattern)) {
+            int length = pattern.length();
+            if (refName.length() == length || refName.charAt(length) == '/' || pattern.endsWith("/")) {
+                return true;
+            }
+        }
+        return globToRegex(pattern, true).matcher(refName).matches();
+    }
+
+    /**
+     * Matches a tag name like <code>git tag -l &lt;pattern&gt;</code>,
+     * as a glob in which wildcards also match a slash.
+     *
+     * @param pattern tag pattern
+     * @param tagName tag name without <code>refs/tags/</code>
+     * @return true if the pattern matches
+     */
+    public static boolean tagMatches(String pattern, String tagName) {
+        return globToRegex(pattern, false).matcher(tagName).matches();
+    }
+
+    /**
+     * Matches a ref name like <code>git show-ref &lt;pattern&gt;</code>,
+     * the pattern has to match complete trailing components of the name.
+     *
+     * @param pattern show-ref pattern
+     * @param refName full ref name
+     * @return true if the pattern matches
+     */
+    public static boolean showRefMatches(String pattern, String refName) {
+        return refName.equals(pattern) || refName.endsWith("/" + pattern);
+    }
+
+    /* Translates a wildmatch style glob, pathname true if wildcards must not match '/' */
+    static Pattern globToRegex(String glob, boolean pathname) {
+        String anyChar = pathname ? "[^/]" : ".";
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    if (pathname && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        regex.append(".*");
+                        i++;
+                    } else {
+                        regex.append(anyChar).append('*');
+                    }
+                    break;
+                case '?':
+                    regex.append(anyChar);
+                    break;
+                case '[':
+                    int end = glob.indexOf(']', i + 2);
+                    if (end < 0) {
+                        regex.append("\\[");
+                        break;
+                    }
+                    String set = glob.substring(i + 1, end);
+                    if (set.startsWith("!") || set.startsWith("^")) {
+                        set = "^" + set.substring(1);
+                    }
+                    regex.append('[').append(set.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                    i = end;
+                    break;
+                case '\\':
+                    if (i + 1 < glob.length()) {
+                        i++;
+                        c = glob.charAt(i);
+                    }
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                    break;
+                default:
+                    regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Modification times of the places that hold the refs of a repository:
+     * the <code>packed-refs</code> file and the directories below
+     * <code>refs/</code> and <code>reftable/</code>.
+     * <p>
+     * Git writes a loose ref, <code>packed-refs</code> and the table list
+     * of a reftable by renaming a lock file, which changes the modification
+     * time of the directory, so the loose ref files themselves are not
+     * recorded. A change made within the same time stamp tick as the newest
+     * recorded modification could go unnoticed, so a stamp is only trusted
+     * if that modification is more than a tick older than the stamp. The
+     * tick is {@link #COARSE_TICK_MILLIS} if all recorded times are whole
+     * seconds, as on file systems with coarse time stamps, and
+     * {@link #FINE_TICK_MILLIS} otherwise.
+     */
+    public static final class Stamp {
+
+        static final long COARSE_TICK_MILLIS = 2000;
+        static final long FINE_TICK_MILLIS = 50;
+
+        private final Path gitDir;
+        private final Map<String, Long> entries;
+        private final boolean racy;
+
+        private Stamp(Path gitDir, Map<String, Long> entries, boolean racy) {
+            this.gitDir = gitDir;
+            this.entries = entries;
+            this.racy = racy;
+        }
+
+        /**
+         * Records the state of the ref storage.
+         *
+         * @param gitDir the directory holding <code>packed-refs</code> and <code>refs/</code>
+         * @return stamp of the current state
+         * @throws IOException if the ref storage cannot be read
+         */
+        @NonNull
+        public static Stamp of(@NonNull Path gitDir) throws IOException {
+            long takenAt = System.currentTimeMillis();
+            Map<String, Long> entries = new HashMap<>();
+            long[] newest = { Long.MIN_VALUE };
+            boolean[] coarse = { true };
+            record(gitDir, gitDir.resolve("packed-refs"), entries, newest, coarse);
+            for (String tree : new String[] {"refs", "reftable"}) {
+                Path root = gitDir.resolve(tree);
+                if (!Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+                    entries.put(tree, -1L);
+                    continue;
+                }
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        put(gitDir, dir, attrs, entries, newest, coarse);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                        if (exc instanceof NoSuchFileException) {
+                            // concurrently deleted, the parent directory time stamp records that
+                            return FileVisitResult.CONTINUE;
+                        }
+                        throw exc;
+                    }
+                });
+            }
+            long tick = coarse[0] ? COARSE_TICK_MILLIS : FINE_TICK_MILLIS;
+            return new Stamp(gitDir, entries, takenAt - newest[0] <= tick);
+        }
+
+        private static void record(Path gitDir, Path file, Map<String, Long> entries, long[] newest, boolean[] coarse) throws IOException {
+            try {
+                put(gitDir, file, Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS), entries, newest, coarse);
+            } catch (NoSuchFileException e) {
+                entries.put(gitDir.relativize(file).toString(), -1L);
+            }
+        }
+
+        private static void put(Path gitDir, Path path, BasicFileAttributes attrs, Map<String, Long> entries, long[] newest, boolean[] coarse) {
+            long modified = attrs.lastModifiedTime().toMillis();
+            entries.put(gitDir.relativize(path).toString(), modified ^ (attrs.size() << 20));
+            newest[0] = Math.max(newest[0], modified);
+            if (modified % 1000 != 0) {
+                coarse[0] = false;
+            }
+        }
+
+        /**
+         * @return true if the ref storage looks exactly as it did when this stamp was taken
+         */
+        public boolean isCurrent() {
+            if (racy) {
+                return false;
+            }
+            try {
+                return of(gitDir).entries.equals(entries);
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+/**
+ * Output stream which keeps the bytes written to it in memory up to a
+ * limit, and moves them to a temporary file once the limit is exceeded.
+ * <p>
+ * Used to capture the output of command line git which is returned as a
+ * whole, so that the process does not grow and copy a byte array on the
+ * heap while it runs. The string returned by {@link #toString(Charset)}
+ * still holds the complete output; output which can be large is parsed
+ * line by line with {@link LineConsumingOutputStream} instead. The content
+ * can be read any number of times after {@link #close()};
+ * {@link #delete()} removes the temporary file and must be called once
+ * the content is no longer needed.
+ */
+public class SpillingOutputStream extends OutputStream {
+
+    private static final Logger LOGGER = Logger.getLogger(SpillingOutputStream.class.getName());
+
+    private static final int INITIAL_SIZE = 1024;
+
+    private final int memoryLimit;
+    private final File directory;
+    private byte[] buf = new byte[INITIAL_SIZE];
+    private int count;
+    private File file;
+    private OutputStream fileOut;
+    private long size;
+    private boolean closed;
+    private boolean spillFailed;
+
+    /**
+     * @param memoryLimit bytes kept in memory before spilling to disk
+     * @param directory directory of the temporary file, null for the default temporary directory
+     */
+    public SpillingOutputStream(int memoryLimit, @CheckForNull File directory) {
+        this.memoryLimit = memoryLimit;
+        this.directory = directory;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureOpen();
+        if (fileOut == null && !spillFailed && count + 1 > memoryLimit) {
+            spill();
+        }
+        if (fileOut != null) {
+            fileOut.write(b);
+        } else {
+            grow(count + 1);
+            buf[count++] = (byte) b;
+        }
+        size++;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (fileOut == null && !spillFailed && (long) count + len > memoryLimit) {
+            spill();
+        }
+        if (fileOut != null) {
+            fileOut.write(b, off, len);
+        } else {
+            grow(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+        size += len;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (fileOut != null) {
+            fileOut.flush();
+        }
+    }
+
+    /**
+     * Ends writing. The content stays available until {@link #delete()}.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (fileOut != null) {
+                fileOut.close();
+            }
+        }
+    }
+
+    /**
+     * Ends writing and deletes the temporary file, if any.
+     */
+    public synchronized void delete() {
+        try {
+            close();
+        } catch (IOException e) {
+            // deleting anyway
+        }
+        buf = new byte[0];
+        count = 0;
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                file.deleteOnExit();
+            }
+            file = null;
+        }
+    }
+
+    /**
+     * @return number of bytes written
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    private synchronized InputStream openInputStream() throws IOException {
+        flush();
+        if (file != null) {
+            return new FileInputStream(file);
+        }
+        return new ByteArrayInputStream(buf, 0, count);
+    }
+
+    /**
+     * Returns the complete content as string. Only for callers which need
+     * the content as a whole, this reads a spilled file into memory.
+     *
+     * @param charset encoding of the content
+     * @return the content
+     * @throws IOException if the temporary file cannot be read
+     */
+    public synchronized String toString(Charset charset) throws IOException {
+        if (file != null) {
+            flush();
+            return new String(Files.readAllBytes(file.toPath()), charset);
+        }
+        return new String(buf, 0, count, charset);
+    }
+
+    /**
+     * Returns the beginning of the content, like for an error message.
+     *
+     * @param maxBytes number of bytes to return at most
+     * @param charset encoding of the content
+     * @return the beginning of the content, followed by the total size if it was cut
+     * @throws IOException if the temporary file cannot be read
+     */
+    public synchronized String head(int maxBytes, Charset charset) throws IOException {
+        if (size <= maxBytes) {
+            return toString(charset);
+        }
+        byte[] head = new byte[maxBytes];
+        int read = 0;
+        try (InputStream in = openInputStream()) {
+            int n;
+            while (read < maxBytes && (n = in.read(head, read, maxBytes - read)) != -1) {
+                read += n;
+            }
+        }
+        return new String(head, 0, read, charset) + "... (" + size + " bytes)";
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void grow(int minCapacity) {
+        if (minCapacity > buf.length) {
+            int capacity = buf.length << 1;
+            if (!spillFailed) {
+                capacity = Math.min(capacity, memoryLimit);
+            }
+            buf = Arrays.copyOf(buf, Math.max(capacity, minCapacity));
+        }
+    }
+
+    /* A failed write would stop the stream copy thread and block git on a full pipe, keep the content in memory instead */
+    private void spill() {
+        try {
+            file = File.createTempFile("git-output", ".tmp", directory);
+            fileOut = new BufferedOutputStream(new FileOutputStream(file));
+            fileOut.write(buf, 0, count);
+            buf = new byte[0];
+            count = 0;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot spill git output to " + file + ", keeping it in memory", e);
+            spillFailed = true;
+            if (fileOut != null) {
+                try {
+                    fileOut.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                fileOut = null;
+            }
+            if (file != null && !file.delete()) {
+                file.deleteOnExit();
+            }
+            file = null;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package org.jenkinsci.plugins.gitclient.jgit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.DateRevQueue;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Describes commits relative to the nearest tag, like
+ * <code>git describe --tags</code>.
+ * <p>
+ * The commits the tags point to are kept in an index per repository,
+ * which is rebuilt when the tags change; tags which did not change are
+ * not peeled again. The walk from the described commit follows commit
+ * time order like RevWalk, finds up to {@link #MAX_CANDIDATES} tags, and
+ * counts for each of them the commits it does not contain. It ends as
+ * soon as every commit left to visit is contained in all tags found,
+ * because no further commit can change the result.
+ * <p>
+ * JGit does not read commit-graph files, so generation numbers are not
+ * available to end the walk earlier.
+ */
+public final class Describer implements AutoCloseable {
+
+    /** Tags considered for a description, the default of C Git. */
+    static final int MAX_CANDIDATES = 10;
+
+    private static final int MAX_REPOSITORIES = 32;
+
+    /* Repository directory to its tag index */
+    private static final Map<File, TagIndex> INDEXES = new LinkedHashMap<File, TagIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, TagIndex> eldest) {
+            return size() > MAX_REPOSITORIES;
+        }
+    };
+
+    private final ObjectReader reader;
+    private final Map<ObjectId, String> tags;
+
+    /**
+     * Reads the tags of a repository, reusing the index of an earlier
+     * describer if the tags did not change.
+     *
+     * @param repo repository of the commits to describe
+     * @throws IOException if the tags cannot be read
+     */
+    public Describer(@NonNull Repository repo) throws IOException {
+        this.tags = tagIndex(repo);
+        this.reader = repo.newObjectReader();
+    }
+
+    /**
+     * Describes a commit.
+     *
+     * @param tip commit to describe, annotated tags are peeled
+     * @return name of the tag pointing to the commit, or the nearest tag followed by the
+     *      number of commits since the tag and the abbreviated commit, null if no tag contains the commit
+     * @throws IOException if the history cannot be read
+     */
+    @CheckForNull
+    public String describe(@NonNull AnyObjectId tip) throws IOException {
+        String exact = tags.get(tip.toObjectId());
+        if (exact != null) {
+            return exact;
+        }
+        try (DescribeWalk walk = new DescribeWalk(reader)) {
+            DescribeCommit start = (DescribeCommit) walk.parseCommit(tip);
+            exact = tags.get(start.toObjectId());
+            if (exact != null) {
+                return exact;
+            }
+            return describe(walk, start);
+        }
+    }
+
+    @Override
+    public void close() {
+        reader.close();
+    }
+
+    private String describe(DescribeWalk walk, DescribeCommit start) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        int seen = 0;   // commits seen thus far
+
+        Search search = new Search(walk);
+        search.add(start);
+        DescribeCommit c;
+        while ((c = search.poll()) != null) {
+            if (!names.isEmpty() && search.incomplete == 0 && search.isComplete(c)) {
+                // every commit left is contained in all candidates, depths cannot change anymore
+                break;
+            }
+            if (names.size() < MAX_CANDIDATES) {
+                String tag = (c.flags & search.allFlags) == 0 ? tags.get(c.toObjectId()) : null;
+                if (tag != null) {
+                    // a tag dominating this commit would always be preferable, so only undominated tags are candidates
+                    names.add(tag);
+                    depths.add(seen);
+                    search.addCandidate(c, 1 << (names.size() - 1));
+                }
+                seen++;
+            } else if (search.isComplete(c)) {
+                // parents are contained in all candidates as well, no point in visiting them
+                search.carry(c);
+                continue;
+            }
+            for (int i = 0; i < names.size(); i++) {
+                if ((c.flags & (1 << i)) == 0) {
+                    depths.set(i, depths.get(i) + 1);
+                }
+            }
+            search.addParents(c);
+        }
+
+        if (names.isEmpty()) {
+            return null;
+        }
+        int best = 0;
+        for (int i = 1; i < names.size(); i++) {
+            if (depths.get(i) < depths.get(best)) {
+                best = i;
+            }
+        }
+        return String.format("%s-%d-g%s", names.get(best), depths.get(best), reader.abbreviate(start).name());
+    }
+
+    private static Map<ObjectId, String> tagIndex(Repository repo) throws IOException {
+        File key = repo.getDirectory() != null ? repo.getDirectory().getAbsoluteFile() : new File(repo.getIdentifier());
+        TagIndex previous;
+        synchronized (INDEXES) {
+            previous = INDEXES.get(key);
+        }
+        Map<String, ObjectId> refs = new LinkedHashMap<>();
+        List<Ref> tagRefs = repo.getRefDatabase().getRefsByPrefix(Constants.R_TAGS);
+        for (Ref r : tagRefs) {
+            refs.put(r.getName(), r.getObjectId());
+        }
+        if (previous != null && previous.refs.equals(refs)) {
+            return previous.byCommit;
+        }
+
+        Map<ObjectId, ObjectId> peeled = new HashMap<>();
+        Map<ObjectId, String> byCommit = new HashMap<>();
+        for (Ref r : tagRefs) {
+            if (r.getObjectId() == null) {
+                continue;
+            }
+            ObjectId commit = previous != null ? previous.peeled.get(r.getObjectId()) : null;
+            if (commit == null) {
+                commit = repo.getRefDatabase().peel(r).getPeeledObjectId();
+                if (commit == null) commit = r.getObjectId();
+            }
+            peeled.put(r.getObjectId(), commit);
+            byCommit.put(commit, r.getName().substring(Constants.R_TAGS.length()));
+        }
+        TagIndex index = new TagIndex(refs, peeled, byCommit);
+        synchronized (INDEXES) {
+            INDEXES.put(key, index);
+        }
+        return index.byCommit;
+    }
+
+    /**
+     * Forgets the tag indexes of all repositories.
+     */
+    public static void clear() {
+        synchronized (INDEXES) {
+            INDEXES.clear();
+        }
+    }
+
+    private static final class TagIndex {
+        /* tag names with the objects they point to, compared to notice changed tags */
+        final Map<String, ObjectId> refs;
+        /* tag object to the object it peels to */
+        final Map<ObjectId, ObjectId> peeled;
+        /* peeled object to tag name, the last tag in name order wins */
+        final Map<ObjectId, String> byCommit;
+
+        TagIndex(Map<String, ObjectId> refs, Map<ObjectId, ObjectId> peeled, Map<ObjectId, String> byCommit) {
+            this.refs = refs;
+            this.peeled = peeled;
+            this.byCommit = byCommit;
+        }
+    }
+
+    /*
+     * Commits to visit in the order of RevWalk, newest commit time first.
+     * Counts the queued commits not contained in all candidates, the search
+     * ends when there are none.
+     */
+    private static final class Search {
+        private final DescribeWalk walk;
+        private final DateRevQueue queue = new DateRevQueue();
+        private final Set<DescribeCommit> queued = new HashSet<>();
+        int allFlags;
+        int incomplete;
+
+        Search(DescribeWalk walk) {
+            this.walk = walk;
+        }
+
+        boolean isComplete(DescribeCommit c) {
+            return (c.flags & allFlags) == allFlags;
+        }
+
+        void add(DescribeCommit c) {
+            c.queued = true;
+            queue.add(c);
+            queued.add(c);
+            if (!isComplete(c)) {
+                incomplete++;
+            }
+        }
+
+        DescribeCommit poll() {
+            DescribeCommit c = (DescribeCommit) queue.next();
+            if (c != null) {
+                c.done = true;
+                queued.remove(c);
+                if (!isComplete(c)) {
+                    incomplete--;
+                }
+            }
+            return c;
+        }
+
+        void addCandidate(DescribeCommit c, int flag) {
+            allFlags |= flag;
+            c.flags |= flag;
+            incomplete = 0;
+            for (DescribeCommit q : queued) {
+                if (!isComplete(q)) {
+                    incomplete++;
+                }
+            }
+        }
+
+        void addParents(DescribeCommit c) throws IOException {
+            for (RevCommit p : c.getParents()) {
+                DescribeCommit parent = (DescribeCommit) p;
+                if (!parent.queued) {
+                    walk.parseHeaders(parent);
+                    add(parent);
+                }
+            }
+            carry(c);
+        }
+
+        /* Passes the flags of a commit on to all its ancestors parsed so far, like RevCommit.carry */
+        void carry(DescribeCommit c) {
+            int carry = c.flags;
+            Deque<DescribeCommit> pending = new ArrayDeque<>();
+            pending.push(c);
+            while (!pending.isEmpty()) {
+                for (RevCommit p : pending.pop().getParents()) {
+                    DescribeCommit parent = (DescribeCommit) p;
+                    if ((parent.flags & carry) == carry) {
+                        continue;
+                    }
+                    boolean wasComplete = isComplete(parent);
+                    parent.flags |= carry;
+                    if (parent.queued && !parent.done && !wasComplete && isComplete(parent)) {
+                        incomplete--;
+                    }
+                    if (parent.getParents() != null) {
+                        pending.push(parent);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class DescribeCommit extends RevCommit {
+        int flags;
+        boolean queued;
+        boolean done;
+
+        DescribeCommit(AnyObjectId id) {
+            super(id);
+        }
+    }
+
+    private static final class DescribeWalk extends RevWalk {
+        DescribeWalk(ObjectReader reader) {
+            super(reader);
+            setRetainBody(false);
+        }
+
+        @Override
+        protected RevCommit createCommit(AnyObjectId id) {
+            return new DescribeCommit(id);
+        }
+    }
+}
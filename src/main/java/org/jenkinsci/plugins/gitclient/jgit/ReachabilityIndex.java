@@ -0,0 +1,239 @@
+package org.jenkinsci.plugins.gitclient.jgit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Answers which refs contain a commit, with a single walk of the commit
+ * graph for any number of refs.
+ * <p>
+ * Every ref which is not answered from the cache gets one bit. The walk
+ * starts at all of them, stops at the ancestors of the commit, and
+ * visits commits in topological order, so that the bits of all children
+ * are known when a commit is visited. The bits of a commit are passed on
+ * to its parents and dropped; the bits which arrive at the commit are the
+ * refs containing it.
+ * <p>
+ * Whether a commit is reachable from another never changes, so answers
+ * are cached per repository by commit and ref target. After a fetch only
+ * refs pointing to new commits are walked. Refs known not to contain the
+ * commit end the walk at their target, refs known to contain it stop
+ * passing their bits on. In a shallow repository the missing history may
+ * hide that a ref contains the commit until the repository is deepened,
+ * so only the answers that it does are cached there.
+ */
+public final class ReachabilityIndex {
+
+    private static final int MAX_REPOSITORIES = 32;
+    private static final int MAX_COMMITS_PER_REPOSITORY = 64;
+
+    /* Repository directory to commit to ref target to whether the ref target contains the commit */
+    private static final Map<File, Map<ObjectId, Map<ObjectId, Boolean>>> CACHE = new LinkedHashMap<File, Map<ObjectId, Map<ObjectId, Boolean>>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, Map<ObjectId, Map<ObjectId, Boolean>>> eldest) {
+            return size() > MAX_REPOSITORIES;
+        }
+    };
+
+    private ReachabilityIndex() {
+    }
+
+    /**
+     * Returns the refs which contain a commit, that is the refs from which
+     * the commit is reachable.
+     *
+     * @param repo repository of the commit and the refs
+     * @param commit commit, annotated tags are peeled
+     * @param refs ref names with the object they point to
+     * @return names of the refs containing the commit
+     * @throws MissingObjectException if the commit or an object of the history does not exist
+     * @throws IOException if the repository cannot be read
+     */
+    @NonNull
+    public static Set<String> getRefsContaining(@NonNull Repository repo, @NonNull AnyObjectId commit, @NonNull Map<String, ? extends AnyObjectId> refs) throws IOException {
+        Map<ObjectId, Boolean> known = cached(repo, commit);
+        Map<ObjectId, Boolean> answers;
+        synchronized (known) {
+            answers = new HashMap<>(known);
+        }
+
+        List<ObjectId> unknown = new ArrayList<>();
+        for (AnyObjectId target : refs.values()) {
+            if (target != null && !answers.containsKey(target)) {
+                ObjectId id = target.toObjectId();
+                answers.put(id, null);
+                unknown.add(id);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            boolean shallow = isShallow(repo);
+            Map<ObjectId, Boolean> walked = walk(repo, commit, unknown, answers);
+            answers.putAll(walked);
+            synchronized (known) {
+                for (Map.Entry<ObjectId, Boolean> answer : walked.entrySet()) {
+                    if (!shallow || answer.getValue()) {
+                        known.put(answer.getKey(), answer.getValue());
+                    }
+                }
+            }
+        }
+
+        Set<String> containing = new HashSet<>();
+        for (Map.Entry<String, ? extends AnyObjectId> ref : refs.entrySet()) {
+            if (ref.getValue() != null && Boolean.TRUE.equals(answers.get(ref.getValue()))) {
+                containing.add(ref.getKey());
+            }
+        }
+        return containing;
+    }
+
+    /**
+     * Forgets the answers for all repositories.
+     */
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    private static boolean isShallow(Repository repo) throws IOException {
+        try (ObjectReader reader = repo.newObjectReader()) {
+            return !reader.getShallowCommits().isEmpty();
+        }
+    }
+
+    private static Map<ObjectId, Boolean> cached(Repository repo, AnyObjectId commit) {
+        File key = repo.getDirectory() != null ? repo.getDirectory().getAbsoluteFile() : new File(repo.getIdentifier());
+        synchronized (CACHE) {
+            Map<ObjectId, Map<ObjectId, Boolean>> commits = CACHE.computeIfAbsent(key, k -> new LinkedHashMap<ObjectId, Map<ObjectId, Boolean>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ObjectId, Map<ObjectId, Boolean>> eldest) {
+                    return size() > MAX_COMMITS_PER_REPOSITORY;
+                }
+            });
+            return commits.computeIfAbsent(commit.toObjectId(), k -> new HashMap<>());
+        }
+    }
+
+    /* Answers for the unknown ref targets, known answers prune the walk */
+    private static Map<ObjectId, Boolean> walk(Repository repo, AnyObjectId commit, List<ObjectId> unknown, Map<ObjectId, Boolean> known) throws IOException {
+        Map<ObjectId, Boolean> result = new HashMap<>();
+        try (ObjectReader reader = repo.newObjectReader();
+             ReachWalk walk = new ReachWalk(reader)) {
+            walk.setRetainBody(false);
+            walk.sort(RevSort.TOPO);
+            ReachCommit target = (ReachCommit) walk.parseCommit(commit);
+
+            List<ObjectId> bitToTarget = new ArrayList<>();
+            for (ObjectId id : unknown) {
+                ReachCommit start;
+                try {
+                    start = (ReachCommit) walk.parseCommit(id);
+                } catch (IncorrectObjectTypeException e) {
+                    // a ref to a tree or blob contains no commit
+                    result.put(id, Boolean.FALSE);
+                    continue;
+                }
+                start.add(bitToTarget.size());
+                bitToTarget.add(id);
+                walk.markStart(start);
+            }
+            if (bitToTarget.isEmpty()) {
+                return result;
+            }
+
+            // anything reachable from the parents of the commit cannot contain it
+            for (RevCommit p : target.getParents()) {
+                walk.markUninteresting(walk.parseCommit(p));
+            }
+            for (Map.Entry<ObjectId, Boolean> answer : known.entrySet()) {
+                if (Boolean.FALSE.equals(answer.getValue())) {
+                    try {
+                        walk.markUninteresting(walk.parseCommit(answer.getKey()));
+                    } catch (IncorrectObjectTypeException e) {
+                        // not a commit, nothing to exclude
+                    }
+                }
+            }
+
+            BitSet containing = new BitSet();
+            for (RevCommit c; (c = walk.next()) != null; ) {
+                ReachCommit rc = (ReachCommit) c;
+                if (rc.bits == null) {
+                    // reached only through refs known to contain the commit
+                    continue;
+                }
+                if (rc == target || Boolean.TRUE.equals(known.get(rc))) {
+                    containing.or(rc.bits);
+                    if (rc == target) {
+                        break;
+                    }
+                } else {
+                    for (RevCommit p : rc.getParents()) {
+                        ((ReachCommit) p).add(rc.bits);
+                    }
+                }
+                rc.bits = null;
+            }
+            for (int i = 0; i < bitToTarget.size(); i++) {
+                result.put(bitToTarget.get(i), containing.get(i));
+            }
+        }
+        return result;
+    }
+
+    private static final class ReachCommit extends RevCommit {
+        /* refs reaching this commit, null if none */
+        private BitSet bits;
+
+        ReachCommit(AnyObjectId id) {
+            super(id);
+        }
+
+        void add(int bit) {
+            if (bits == null) {
+                bits = new BitSet();
+            }
+            bits.set(bit);
+        }
+
+        void add(BitSet other) {
+            if (bits == null) {
+                bits = (BitSet) other.clone();
+            } else {
+                bits.or(other);
+            }
+        }
+    }
+
+    private static final class ReachWalk extends RevWalk {
+        ReachWalk(ObjectReader reader) {
+            super(reader);
+        }
+
+        @Override
+        protected RevCommit createCommit(AnyObjectId id) {
+            return new ReachCommit(id);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.jenkinsci.plugins.gitclient.jgit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryBuilder;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Shares open JGit repositories between the operations on a work tree.
+ * <p>
+ * Opening a {@link Repository} reads its configuration and scans its refs
+ * and packs, and closing it throws that state away. The pool hands out the
+ * same instance to all callers opening the same work tree, counts the
+ * callers which have not closed it yet, and closes it once it was unused
+ * for the idle time. JGit checks configuration, refs and packs against the
+ * files on disk on every access, so a shared instance sees changes made by
+ * command line git or another process. A repository which was deleted and
+ * created again, like by a clone, is opened again.
+ * <p>
+ * Repositories which do not exist yet are not pooled, so that they can be
+ * created by the caller.
+ */
+public final class RepositoryPool {
+
+    /**
+     * Seconds an unused repository is kept open. Pooling is disabled by
+     * default on Windows, where open pack files prevent deleting the
+     * workspace.
+     *
+     * <code>IDLE_SECONDS=Integer.getInteger(RepositoryPool.class.getName() + ".idleSeconds", isWindows ? 0 : 60)</code>.
+     *
+     * Use '-Dorg.jenkinsci.plugins.gitclient.jgit.RepositoryPool.idleSeconds=0'
+     * to open a new repository for every operation.
+     */
+    private static final int IDLE_SECONDS = Integer.getInteger(RepositoryPool.class.getName() + ".idleSeconds",
+            File.pathSeparatorChar == ';' ? 0 : 60);
+
+    private static final ScheduledExecutorService IDLE_REAPER = Executors.newSingleThreadScheduledExecutor(
+            new NamingThreadFactory(new DaemonThreadFactory(), RepositoryPool.class.getSimpleName()));
+
+    private static final RepositoryPool INSTANCE = new RepositoryPool(TimeUnit.SECONDS.toMillis(IDLE_SECONDS));
+
+    private final Map<File, PooledRepository> repositories = new HashMap<>();
+    private final long idleMillis;
+
+    /**
+     * @param idleMillis repositories are closed after they were unused that long, not pooled at all if not positive
+     */
+    public RepositoryPool(long idleMillis) {
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * @return pool shared by all clients in this JVM
+     */
+    public static RepositoryPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Opens the repository of a work tree. The caller must close the
+     * returned repository, which returns it to the pool. A repository
+     * which is never closed stays open for the life of the JVM, so
+     * repositories handed to code which may rely on garbage collection
+     * instead must not come from the pool.
+     *
+     * @param workTree work tree of the repository
+     * @return repository, shared with other callers if it exists
+     * @throws IOException if the repository cannot be opened
+     */
+    @SuppressFBWarnings(value = "BC_UNCONFIRMED_CAST_OF_RETURN_VALUE",
+                        justification = "JGit interaction with spotbugs")
+    @NonNull
+    public Repository open(@NonNull File workTree) throws IOException {
+        RepositoryBuilder builder = new RepositoryBuilder().setWorkTree(workTree);
+        builder.setup();
+        Object identity = identity(builder.getGitDir());
+        if (idleMillis <= 0 || identity == null) {
+            return builder.build();
+        }
+        File key = workTree.getAbsoluteFile();
+        PooledRepository replaced;
+        PooledRepository opened;
+        synchronized (this) {
+            replaced = repositories.get(key);
+            if (replaced != null && replaced.identity.equals(identity)
+                    && replaced.getDirectory().equals(builder.getGitDir())) {
+                replaced.users++;
+                return replaced;
+            }
+            opened = new PooledRepository(builder, identity);
+            repositories.put(key, opened);
+        }
+        if (replaced != null) {
+            replaced.retire();
+        }
+        return opened;
+    }
+
+    /**
+     * Removes the repository of a work tree from the pool, like before
+     * the work tree is deleted. It is closed as soon as no caller uses it.
+     *
+     * @param workTree work tree of the repository
+     */
+    public void evict(@NonNull File workTree) {
+        PooledRepository evicted;
+        synchronized (this) {
+            evicted = repositories.remove(workTree.getAbsoluteFile());
+        }
+        if (evicted != null) {
+            evicted.retire();
+        }
+    }
+
+    /**
+     * Closes all repositories which are not in use. Repositories in use
+     * are closed when their last caller closes them.
+     */
+    public void clear() {
+        Map<File, PooledRepository> evicted;
+        synchronized (this) {
+            evicted = new HashMap<>(repositories);
+            repositories.clear();
+        }
+        for (PooledRepository repository : evicted.values()) {
+            repository.retire();
+        }
+    }
+
+    /*
+     * Distinguishes a repository from one created again at the same place.
+     * Inode numbers are reused quickly, so the modification time of the
+     * config, which is written when a repository is created, is compared as
+     * well. The objects directory is not, it is modified by most fetches and
+     * commits. JGit does not reread the alternates of an open repository.
+     */
+    @CheckForNull
+    private static Object identity(@CheckForNull File gitDir) {
+        if (gitDir == null) {
+            return null;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(gitDir.toPath(), BasicFileAttributes.class);
+            if (!attributes.isDirectory()) {
+                return null;
+            }
+            File config = new File(gitDir, Constants.CONFIG);
+            File alternates = new File(new File(gitDir, Constants.OBJECTS), Constants.INFO_ALTERNATES);
+            return Arrays.asList(attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime(),
+                    Files.getLastModifiedTime(config.toPath()),
+                    alternates.lastModified());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void closeIfIdle(PooledRepository repository) {
+        synchronized (this) {
+            if (repository.retired || repository.users > 0
+                    || System.currentTimeMillis() - repository.lastUsed < idleMillis) {
+                // in use or used again, a later close schedules another check
+                return;
+            }
+            repositories.values().remove(repository);
+            repository.retired = true;
+        }
+        repository.dispose();
+    }
+
+    private final class PooledRepository extends FileRepository {
+        private final Object identity;
+        /* guarded by the pool */
+        private int users = 1;
+        private long lastUsed;
+        private boolean retired;
+
+        PooledRepository(RepositoryBuilder builder, Object identity) throws IOException {
+            super(builder);
+            this.identity = identity;
+        }
+
+        @Override
+        public void incrementOpen() {
+            synchronized (RepositoryPool.this) {
+                users++;
+            }
+        }
+
+        /**
+         * Returns the repository to the pool, it is closed once it is
+         * unused for the idle time or was removed from the pool.
+         */
+        @Override
+        public void close() {
+            boolean dispose;
+            synchronized (RepositoryPool.this) {
+                if (users == 0) {
+                    // closed once too often, like JGit this is ignored
+                    return;
+                }
+                users--;
+                lastUsed = System.currentTimeMillis();
+                if (users > 0) {
+                    return;
+                }
+                dispose = retired;
+            }
+            if (dispose) {
+                dispose();
+            } else {
+                IDLE_REAPER.schedule(() -> closeIfIdle(this), idleMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void retire() {
+            boolean dispose;
+            synchronized (RepositoryPool.this) {
+                if (retired) {
+                    return;
+                }
+                retired = true;
+                dispose = users == 0;
+            }
+            if (dispose) {
+                dispose();
+            }
+        }
+
+        private void dispose() {
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package org.jenkinsci.plugins.gitclient.jgit;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheCheckout;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.ignore.IgnoreNode;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.util.FileUtils;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Checks out the paths of a commit which match the patterns of a sparse
+ * checkout, like <code>git read-tree -mu</code> with
+ * <code>core.sparseCheckout</code> enabled.
+ * <p>
+ * The patterns have the syntax of <code>.git/info/sparse-checkout</code>,
+ * which is the syntax of <code>.gitignore</code>. A path is checked out if
+ * the last pattern matching it, or else the last pattern matching its
+ * nearest parent directory, is not negated. The directory patterns of
+ * cone mode are matched the same way.
+ * <p>
+ * The index gets all paths of the commit. Only the work tree files which
+ * match the patterns and differ from the commit are written, files which
+ * no longer match or no longer exist in the commit are deleted. The paths
+ * left out get the skip-worktree bit, so that <code>git status</code> and
+ * <code>git add -A</code> do not take them for deleted files.
+ */
+public final class SparseCheckout {
+
+    /* Layout of the flags of an index entry, see DirCacheEntry */
+    private static final int INFO_LEN = 62;
+    private static final int INFO_LEN_EXTENDED = 64;
+    private static final int P_FLAGS = 60;
+    private static final int P_FLAGS2 = 62;
+    private static final byte EXTENDED = 0x40;
+    private static final byte SKIP_WORKTREE = 0x40;
+
+    private final IgnoreNode patterns = new IgnoreNode();
+
+    /**
+     * Parses sparse checkout patterns.
+     *
+     * @param patterns lines of <code>.git/info/sparse-checkout</code>
+     * @throws IOException if the patterns cannot be parsed
+     */
+    public SparseCheckout(@NonNull List<String> patterns) throws IOException {
+        this.patterns.parse(new ByteArrayInputStream(String.join("\n", patterns).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Returns true if a path is checked out.
+     *
+     * @param path path of a file relative to the work tree, separated by '/'
+     * @return true if the path matches the patterns
+     */
+    public boolean includes(@NonNull String path) {
+        Boolean result = patterns.checkIgnored(path, false);
+        for (int slash = path.lastIndexOf('/'); result == null && slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+            result = patterns.checkIgnored(path.substring(0, slash), true);
+        }
+        return Boolean.TRUE.equals(result);
+    }
+
+    /**
+     * Replaces the index with the tree of a commit and checks out the
+     * matching paths, overwriting local changes.
+     *
+     * @param repo repository with a work tree
+     * @param commit commit to check out
+     * @throws IOException if the index or the work tree cannot be written
+     */
+    public void checkout(@NonNull Repository repo, @NonNull AnyObjectId commit) throws IOException {
+        DirCache index = repo.lockDirCache();
+        try (ObjectReader reader = repo.newObjectReader();
+             RevWalk revWalk = new RevWalk(reader);
+             TreeWalk walk = new TreeWalk(repo, reader)) {
+            walk.setRecursive(true);
+            int target = walk.addTree(revWalk.parseCommit(commit).getTree());
+            int current = walk.addTree(new DirCacheIterator(index));
+            int workTree = walk.addTree(new FileTreeIterator(repo));
+
+            DirCacheBuilder builder = index.builder();
+            List<File> deleted = new ArrayList<>();
+            while (walk.next()) {
+                CanonicalTreeParser t = walk.getTree(target, CanonicalTreeParser.class);
+                DirCacheIterator i = walk.getTree(current, DirCacheIterator.class);
+                FileTreeIterator f = walk.getTree(workTree, FileTreeIterator.class);
+                if (t == null) {
+                    if (i != null && f != null) {
+                        deleted.add(delete(repo, walk.getPathString()));
+                    }
+                    continue;
+                }
+
+                DirCacheEntry entry = new DirCacheEntry(walk.getRawPath());
+                entry.setFileMode(t.getEntryFileMode());
+                entry.setObjectId(t.getEntryObjectId());
+                if (FileMode.GITLINK.equals(entry.getFileMode())) {
+                    // submodules are checked out by submodule update
+                } else if (!includes(walk.getPathString())) {
+                    if (i != null && f != null) {
+                        deleted.add(delete(repo, walk.getPathString()));
+                    }
+                    skipWorkTree(entry);
+                } else if (i != null && f != null && isUnchanged(i.getDirCacheEntry(), entry, f, reader)) {
+                    entry.setLength(f.getEntryLength());
+                    entry.setLastModified(f.getEntryLastModifiedInstant());
+                } else {
+                    DirCacheCheckout.checkoutEntry(repo, entry, reader, true, null);
+                }
+                builder.add(entry);
+            }
+            if (!builder.commit()) {
+                throw new IOException("Could not write index of " + repo.getWorkTree());
+            }
+            for (File file : deleted) {
+                deleteEmptyParents(repo, file);
+            }
+        } finally {
+            index.unlock();
+        }
+    }
+
+    /*
+     * JGit reads and writes the skip-worktree bit of index entries, but has
+     * no setter for it. The bit is an extended flag, which needs two more
+     * bytes in the entry. An index with extended flags is written as
+     * version 3.
+     */
+    private static void skipWorkTree(DirCacheEntry entry) throws IOException {
+        try {
+            Field infoField = DirCacheEntry.class.getDeclaredField("info");
+            Field offsetField = DirCacheEntry.class.getDeclaredField("infoOffset");
+            infoField.setAccessible(true);
+            offsetField.setAccessible(true);
+            byte[] info = new byte[INFO_LEN_EXTENDED];
+            System.arraycopy((byte[]) infoField.get(entry), offsetField.getInt(entry), info, 0, INFO_LEN);
+            info[P_FLAGS] |= EXTENDED;
+            info[P_FLAGS2] |= SKIP_WORKTREE;
+            infoField.set(entry, info);
+            offsetField.setInt(entry, 0);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IOException("Cannot set skip-worktree bit of " + entry.getPathString(), e);
+        }
+        if (!entry.isSkipWorkTree()) {
+            throw new IOException("Cannot set skip-worktree bit of " + entry.getPathString());
+        }
+    }
+
+    private static boolean isUnchanged(DirCacheEntry current, DirCacheEntry target, FileTreeIterator f, ObjectReader reader) throws IOException {
+        return current.getFileMode().equals(target.getFileMode())
+                && current.getObjectId().equals(target.getObjectId())
+                && !f.isModified(current, true, reader);
+    }
+
+    private static File delete(Repository repo, String path) throws IOException {
+        File file = new File(repo.getWorkTree(), path);
+        FileUtils.delete(file, FileUtils.RECURSIVE | FileUtils.SKIP_MISSING);
+        return file;
+    }
+
+    private static void deleteEmptyParents(Repository repo, File file) {
+        File workTree = repo.getWorkTree();
+        for (File dir = file.getParentFile(); dir != null && !dir.equals(workTree); dir = dir.getParentFile()) {
+            String[] children = dir.list();
+            if (children == null || children.length > 0 || !dir.delete()) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.jenkinsci.plugins.gitclient.jgit;
+
+import java.io.IOException;
+
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.SystemReader;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Empty repository to open transports with, for operations which only
+ * talk to a remote repository, like <code>git ls-remote</code>.
+ * <p>
+ * JGit needs a local repository to open a transport, which only reads its
+ * configuration. A single in-memory repository is shared by all those
+ * operations, so that they do not create a repository on disk each time.
+ * Its configuration is the user and system configuration, which a
+ * repository on disk would inherit, so that settings like
+ * <code>url.&lt;base&gt;.insteadOf</code> and <code>http.sslVerify</code>
+ * still apply. JGit reloads that configuration only when its files change.
+ * <p>
+ * Nothing is ever written to the repository, and closing it has no effect.
+ */
+public final class TransportRepository extends InMemoryRepository {
+
+    private static final TransportRepository INSTANCE = new TransportRepository();
+
+    private TransportRepository() {
+        super(new DfsRepositoryDescription("transport"));
+    }
+
+    /**
+     * @return empty repository shared by all remote operations of this JVM
+     */
+    @NonNull
+    public static Repository getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public StoredConfig getConfig() {
+        try {
+            return SystemReader.getInstance().getUserConfig();
+        } catch (IOException | ConfigInvalidException e) {
+            // same as a repository without user configuration
+            return super.getConfig();
+        }
+    }
+
+    /* local transports resolve paths with the file system of the repository */
+    @Override
+    public FS getFS() {
+        return FS.DETECTED;
+    }
+
+    /**
+     * Does nothing, the repository is shared.
+     */
+    @Override
+    public void close() {
+    }
+}
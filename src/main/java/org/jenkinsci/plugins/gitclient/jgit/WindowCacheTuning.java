@@ -0,0 +1,209 @@
+package org.jenkinsci.plugins.gitclient.jgit;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Settings of the JGit window cache, which holds the pack file windows and
+ * the delta bases read by all repositories of a JVM.
+ * <p>
+ * JGit defaults to a 10 MiB cache of 8 KiB windows, which is much smaller
+ * than the packs of large repositories, so walks over their history keep
+ * reading the same windows again. The cache is global, so the settings
+ * are installed once per JVM and only replaced when different settings
+ * are installed. Settings which are not set keep the JGit default.
+ * <p>
+ * The settings of system properties are installed by the first JGit
+ * client of a JVM, unless other settings were installed before, for
+ * example '-Dorg.jenkinsci.plugins.gitclient.jgit.WindowCacheTuning.packedGitLimit=268435456'.
+ * The properties are named like the setters and take sizes in bytes.
+ */
+public final class WindowCacheTuning implements Serializable {
+
+    private static final String PREFIX = WindowCacheTuning.class.getName() + ".";
+
+    /* settings installed in this JVM, null while JGit runs with its defaults */
+    private static WindowCacheTuning installed;
+
+    private Long packedGitLimit;
+    private Integer packedGitWindowSize;
+    private Boolean packedGitMMAP;
+    private Integer deltaBaseCacheLimit;
+    private Integer streamFileThreshold;
+
+    /**
+     * Reads the settings of the system properties.
+     *
+     * @return settings of the system properties, JGit defaults for properties which are not set
+     */
+    @NonNull
+    public static WindowCacheTuning fromSystemProperties() {
+        WindowCacheTuning tuning = new WindowCacheTuning();
+        tuning.packedGitLimit = Long.getLong(PREFIX + "packedGitLimit");
+        tuning.packedGitWindowSize = Integer.getInteger(PREFIX + "packedGitWindowSize");
+        String mmap = System.getProperty(PREFIX + "packedGitMMAP");
+        tuning.packedGitMMAP = mmap != null ? Boolean.valueOf(mmap) : null;
+        tuning.deltaBaseCacheLimit = Integer.getInteger(PREFIX + "deltaBaseCacheLimit");
+        tuning.streamFileThreshold = Integer.getInteger(PREFIX + "streamFileThreshold");
+        return tuning;
+    }
+
+    /**
+     * Installs the settings of the system properties, unless any settings
+     * were installed before.
+     *
+     * @return true if the settings were installed
+     * @throws IllegalArgumentException if JGit rejects the settings
+     */
+    public static boolean installFromSystemProperties() {
+        synchronized (WindowCacheTuning.class) {
+            if (installed != null) {
+                return false;
+            }
+            WindowCacheTuning tuning = fromSystemProperties();
+            return !tuning.isDefault() && tuning.install();
+        }
+    }
+
+    /**
+     * @param bytes maximum number of bytes of pack file windows held in memory
+     * @return this settings object
+     */
+    public WindowCacheTuning packedGitLimit(long bytes) {
+        this.packedGitLimit = bytes;
+        return this;
+    }
+
+    /**
+     * @param bytes size of a pack file window, a power of 2 of at least 4096
+     * @return this settings object
+     */
+    public WindowCacheTuning packedGitWindowSize(int bytes) {
+        this.packedGitWindowSize = bytes;
+        return this;
+    }
+
+    /**
+     * @param mmap true to map pack file windows into memory instead of reading them into the heap
+     * @return this settings object
+     */
+    public WindowCacheTuning packedGitMMAP(boolean mmap) {
+        this.packedGitMMAP = mmap;
+        return this;
+    }
+
+    /**
+     * @param bytes maximum number of bytes of delta bases held in memory by each reader
+     * @return this settings object
+     */
+    public WindowCacheTuning deltaBaseCacheLimit(int bytes) {
+        this.deltaBaseCacheLimit = bytes;
+        return this;
+    }
+
+    /**
+     * @param bytes objects larger than this are streamed instead of read into memory
+     * @return this settings object
+     */
+    public WindowCacheTuning streamFileThreshold(int bytes) {
+        this.streamFileThreshold = bytes;
+        return this;
+    }
+
+    /**
+     * @return true if no setting is set
+     */
+    public boolean isDefault() {
+        return equals(new WindowCacheTuning());
+    }
+
+    /**
+     * @return JGit configuration with these settings
+     */
+    @NonNull
+    public WindowCacheConfig toConfig() {
+        WindowCacheConfig config = new WindowCacheConfig();
+        if (packedGitLimit != null) config.setPackedGitLimit(packedGitLimit);
+        if (packedGitWindowSize != null) config.setPackedGitWindowSize(packedGitWindowSize);
+        if (packedGitMMAP != null) config.setPackedGitMMAP(packedGitMMAP);
+        if (deltaBaseCacheLimit != null) config.setDeltaBaseCacheLimit(deltaBaseCacheLimit);
+        if (streamFileThreshold != null) config.setStreamFileThreshold(streamFileThreshold);
+        return config;
+    }
+
+    /**
+     * Installs these settings for all repositories of the JVM, unless they
+     * are installed already. Installing different settings drops the pack
+     * file windows cached so far.
+     *
+     * @return true if the settings were installed, false if they were installed already
+     * @throws IllegalArgumentException if JGit rejects the settings, the installed settings are kept then
+     */
+    public boolean install() {
+        synchronized (WindowCacheTuning.class) {
+            if (equals(installed) || (installed == null && isDefault())) {
+                return false;
+            }
+            toConfig().install();
+            installed = copy();
+            return true;
+        }
+    }
+
+    /**
+     * @return settings installed in this JVM, null if JGit runs with its defaults
+     */
+    @CheckForNull
+    public static WindowCacheTuning getInstalled() {
+        synchronized (WindowCacheTuning.class) {
+            return installed != null ? installed.copy() : null;
+        }
+    }
+
+    private WindowCacheTuning copy() {
+        WindowCacheTuning copy = new WindowCacheTuning();
+        copy.packedGitLimit = packedGitLimit;
+        copy.packedGitWindowSize = packedGitWindowSize;
+        copy.packedGitMMAP = packedGitMMAP;
+        copy.deltaBaseCacheLimit = deltaBaseCacheLimit;
+        copy.streamFileThreshold = streamFileThreshold;
+        return copy;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof WindowCacheTuning)) {
+            return false;
+        }
+        WindowCacheTuning that = (WindowCacheTuning) o;
+        return Objects.equals(packedGitLimit, that.packedGitLimit)
+                && Objects.equals(packedGitWindowSize, that.packedGitWindowSize)
+                && Objects.equals(packedGitMMAP, that.packedGitMMAP)
+                && Objects.equals(deltaBaseCacheLimit, that.deltaBaseCacheLimit)
+                && Objects.equals(streamFileThreshold, that.streamFileThreshold);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(packedGitLimit, packedGitWindowSize, packedGitMMAP, deltaBaseCacheLimit, streamFileThreshold);
+    }
+
+    @Override
+    public String toString() {
+        return "WindowCacheTuning{packedGitLimit=" + packedGitLimit
+                + ", packedGitWindowSize=" + packedGitWindowSize
+                + ", packedGitMMAP=" + packedGitMMAP
+                + ", deltaBaseCacheLimit=" + deltaBaseCacheLimit
+                + ", streamFileThreshold=" + streamFileThreshold + "}";
+    }
+
+    private static final long serialVersionUID = 1L;
+}
@@ -69,6 +69,17 @@ public class SmartCredentialsProvider extends CredentialsProvider {
         defaultCredentials = credentials;
     }
 
+    /**
+     * Returns the credentials used against a url.
+     *
+     * @param url the url the credentials are used against.
+     * @return the credentials for the url, or the default credentials if there are no url specific credentials.
+     */
+    public synchronized StandardCredentials getCredentials(String url) {
+        StandardCredentials c = specificCredentials.get(url);
+        return c != null ? c : defaultCredentials;
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean isInteractive() {
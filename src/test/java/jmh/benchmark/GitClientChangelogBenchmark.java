@@ -0,0 +1,96 @@
+package jmh.benchmark;
+
+import hudson.EnvVars;
+import hudson.model.TaskListener;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.eclipse.jgit.lib.ObjectId;
+import org.jenkinsci.plugins.gitclient.ChangelogCommand;
+import org.jenkinsci.plugins.gitclient.Git;
+import org.jenkinsci.plugins.gitclient.GitClient;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * A JMH micro-benchmark performance test, it measures the changelog of a local repository with a long history
+ * using both "git" and "jgit" implementations. JGit formats every commit of the changelog, so this is dominated by
+ * the cost of computing the diff of each commit.
+ */
+@JmhBenchmark
+public class GitClientChangelogBenchmark {
+
+    @State(Scope.Thread)
+    public static class RepositoryState {
+
+        @Param({"git", "jgit"})
+        String gitExe;
+
+        @Param({"100", "1000"})
+        int commits;
+
+        @Param({"1", "8"})
+        int parallelism;
+
+        final FolderForBenchmark tmp = new FolderForBenchmark();
+        GitClient gitClient;
+        ObjectId first;
+        ObjectId last;
+
+        /**
+         * The history is created once per trial, every commit modifies 5 of 50 files and adds a file now and then.
+         */
+        @Setup(Level.Trial)
+        public void createHistory() throws Exception {
+            tmp.before();
+            File gitDir = tmp.newFolder();
+            gitClient = Git.with(TaskListener.NULL, new EnvVars()).in(gitDir).using(gitExe).getClient();
+            gitClient.init();
+            gitClient.setAuthor("Benchmark", "benchmark@example.com");
+            gitClient.setCommitter("Benchmark", "benchmark@example.com");
+            for (int i = 0; i < commits; i++) {
+                for (int f = i % 5; f < 50; f += 10) {
+                    File file = new File(gitDir, "file-" + f + ".txt");
+                    Files.write(file.toPath(), ("content of " + file.getName() + " in commit " + i + "\n").getBytes(StandardCharsets.UTF_8));
+                    gitClient.add(file.getName());
+                }
+                if (i % 25 == 24) {
+                    File added = new File(gitDir, "added-" + i + ".txt");
+                    Files.write(added.toPath(), ("added in commit " + i + "\n").getBytes(StandardCharsets.UTF_8));
+                    gitClient.add(added.getName());
+                }
+                gitClient.commit("commit " + i);
+                if (i == 0) {
+                    first = gitClient.revParse("HEAD");
+                }
+            }
+            last = gitClient.revParse("HEAD");
+            System.out.println("Created " + commits + " commits for: " + gitExe);
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() {
+            tmp.after();
+            System.out.println("Removed repository for: " + gitExe);
+        }
+    }
+
+    @Benchmark
+    public void gitChangelogBenchmark(RepositoryState state, Blackhole blackhole) throws Exception {
+        StringWriter writer = new StringWriter();
+        ChangelogCommand changelog = state.gitClient.changelog().excludes(state.first).includes(state.last)
+                .parallelism(state.parallelism).to(writer);
+        changelog.execute();
+        blackhole.consume(writer.getBuffer().length());
+    }
+
+    @Benchmark
+    public void gitShowRevisionBenchmark(RepositoryState state, Blackhole blackhole) throws Exception {
+        List<String> revisions = state.gitClient.showRevision(state.first, state.last);
+        blackhole.consume(revisions);
+    }
+}
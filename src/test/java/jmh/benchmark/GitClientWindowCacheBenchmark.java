@@ -0,0 +1,105 @@
+package jmh.benchmark;
+
+import hudson.EnvVars;
+import hudson.model.TaskListener;
+import jenkins.benchmark.jmh.JmhBenchmark;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.jenkinsci.plugins.gitclient.ChangelogCommand;
+import org.jenkinsci.plugins.gitclient.Git;
+import org.jenkinsci.plugins.gitclient.GitClient;
+import org.jenkinsci.plugins.gitclient.jgit.WindowCacheTuning;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * A JMH micro-benchmark performance test, it measures history walks of the "jgit" implementation over a large
+ * pack with the default JGit window cache and with a window cache sized for the pack, read from the heap or
+ * memory mapped. With the default cache of 10 MiB the windows of the pack are evicted before the walk needs
+ * them again.
+ */
+@JmhBenchmark
+public class GitClientWindowCacheBenchmark {
+
+    @State(Scope.Thread)
+    public static class RepositoryState {
+
+        @Param({"default", "tuned", "mmap"})
+        String windowCache;
+
+        @Param({"2000"})
+        int commits;
+
+        final FolderForBenchmark tmp = new FolderForBenchmark();
+        GitClient gitClient;
+        ObjectId first;
+        ObjectId last;
+
+        /**
+         * The history is created and packed once per trial, every commit rewrites 5 of 50 files of about 8 KiB.
+         */
+        @Setup(Level.Trial)
+        public void createHistory() throws Exception {
+            tmp.before();
+            File gitDir = tmp.newFolder();
+            WindowCacheTuning tuning = new WindowCacheTuning();
+            if (!windowCache.equals("default")) {
+                tuning.packedGitLimit(512 * WindowCacheConfig.MB)
+                        .packedGitWindowSize(64 * WindowCacheConfig.KB)
+                        .deltaBaseCacheLimit(64 * WindowCacheConfig.MB)
+                        .packedGitMMAP(windowCache.equals("mmap"));
+            }
+            gitClient = Git.with(TaskListener.NULL, new EnvVars()).in(gitDir).using("jgit").withWindowCache(tuning).getClient();
+            gitClient.init();
+            gitClient.setAuthor("Benchmark", "benchmark@example.com");
+            gitClient.setCommitter("Benchmark", "benchmark@example.com");
+            StringBuilder padding = new StringBuilder();
+            for (int line = 0; line < 128; line++) {
+                padding.append("line ").append(line).append(" of a file which is large enough to be stored as a delta\n");
+            }
+            for (int i = 0; i < commits; i++) {
+                for (int f = i % 5; f < 50; f += 10) {
+                    File file = new File(gitDir, "file-" + f + ".txt");
+                    Files.write(file.toPath(), ("content in commit " + i + "\n" + padding).getBytes(StandardCharsets.UTF_8));
+                    gitClient.add(file.getName());
+                }
+                gitClient.commit("commit " + i);
+                if (i == 0) {
+                    first = gitClient.revParse("HEAD");
+                }
+            }
+            last = gitClient.revParse("HEAD");
+            try (org.eclipse.jgit.api.Git git = org.eclipse.jgit.api.Git.open(gitDir)) {
+                git.gc().setAggressive(true).call();
+            }
+            System.out.println("Created and packed " + commits + " commits for window cache: " + windowCache);
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() {
+            new WindowCacheTuning().install();
+            tmp.after();
+            System.out.println("Removed repository for window cache: " + windowCache);
+        }
+    }
+
+    @Benchmark
+    public void gitRevListBenchmark(RepositoryState state, Blackhole blackhole) throws Exception {
+        List<ObjectId> commits = state.gitClient.revList(state.last.name());
+        blackhole.consume(commits);
+    }
+
+    @Benchmark
+    public void gitChangelogBenchmark(RepositoryState state, Blackhole blackhole) throws Exception {
+        StringWriter writer = new StringWriter();
+        ChangelogCommand changelog = state.gitClient.changelog().excludes(state.first).includes(state.last).to(writer);
+        changelog.execute();
+        blackhole.consume(writer.getBuffer().length());
+    }
+}
@@ -2128,7 +2128,6 @@ public abstract class GitAPITestCase extends TestCase {
         assertEquals("submodule commit count didn't match", hasShallowSubmoduleSupport ? 2 : remoteSubmoduleCommits, localSubmoduleCommits);
     }
 
-    @NotImplementedInJGit
     public void test_submodule_update_with_threads() throws Exception {
         w.init();
         w.git.clone_().url(localMirror()).repositoryName("sub2_origin").execute();
@@ -2208,7 +2207,6 @@ public abstract class GitAPITestCase extends TestCase {
         assertFalse("file3 exists and should not because not on 'branch2'", w.exists(subFile3));
     }
 
-    @NotImplementedInJGit
     public void test_sparse_checkout() throws Exception {
         /* Sparse checkout was added in git 1.7.0, but the checkout -f syntax
          * required by the plugin implementation does not work in git 1.7.1.
@@ -3107,6 +3105,23 @@ public abstract class GitAPITestCase extends TestCase {
         assertTrue(references.isEmpty());
     }
 
+    /**
+     * Test getRemoteReferences with patterns below refs/heads or refs/tags
+     */
+    public void test_getRemoteReferences_withQualifiedPattern() throws Exception {
+        Map<String, ObjectId> references = w.git.getRemoteReferences(remoteMirrorURL, "refs/heads/*", false, false);
+        assertTrue(references.containsKey("refs/heads/master"));
+        for (String key : references.keySet()) {
+            assertTrue(key.startsWith("refs/heads/"));
+        }
+        references = w.git.getRemoteReferences(remoteMirrorURL, "refs/tags/git-client-*", false, false);
+        assertTrue(references.containsKey("refs/tags/git-client-1.0.0"));
+        for (String key : references.keySet()) {
+            assertTrue(key.startsWith("refs/tags/git-client-"));
+            assertTrue(!key.endsWith("^{}"));
+        }
+    }
+
     /**
      * Test getRemoteSymbolicReferences with listing all references
      */
@@ -3128,6 +3143,39 @@ public abstract class GitAPITestCase extends TestCase {
         assertThat(references.size(), is(1));
     }
 
+    /**
+     * Test getRemoteSnapshot lists heads, peeled tags and HEAD in one call
+     */
+    public void test_getRemoteSnapshot() throws Exception {
+        RemoteSnapshot snapshot = w.git.getRemoteSnapshot(remoteMirrorURL);
+        Map<String, ObjectId> heads = w.git.getRemoteReferences(remoteMirrorURL, "refs/heads/*", false, false);
+        assertEquals(heads, snapshot.getHeads());
+        assertTrue(snapshot.getTags().containsKey("refs/tags/git-client-1.0.0"));
+        assertNotNull(snapshot.getHead());
+        if (hasWorkingGetRemoteSymbolicReferences()) {
+            assertThat(snapshot.getSymbolicReferences(), hasEntry(is(Constants.HEAD), is(Constants.R_HEADS + Constants.MASTER)));
+            assertEquals(heads.get(Constants.R_HEADS + Constants.MASTER), snapshot.getHead());
+        }
+    }
+
+    /**
+     * Test getRemoteRefChanges reports all branches first, then nothing until they change
+     */
+    public void test_getRemoteRefChanges() throws Exception {
+        RemoteRefChanges changes = w.git.getRemoteRefChanges(remoteMirrorURL, null, false, true);
+        assertEquals(w.git.getRemoteReferences(remoteMirrorURL, "refs/heads/*", false, false), changes.getAdded());
+        assertFalse(changes.isUnchanged());
+
+        RemoteRefState state = changes.getState();
+        changes = w.git.getRemoteRefChanges(remoteMirrorURL, state, false, true);
+        assertTrue(changes.isUnchanged());
+        assertEquals(state, changes.getState());
+
+        changes = w.git.getRemoteRefChanges(remoteMirrorURL, RemoteRefState.fromToken(state.getToken()), true, false);
+        assertFalse(changes.isComplete());
+        assertTrue(changes.getAdded().containsKey("refs/tags/git-client-1.0.0"));
+    }
+
     private Properties parseLsRemote(File file) throws IOException
     {
         Properties properties = new Properties();
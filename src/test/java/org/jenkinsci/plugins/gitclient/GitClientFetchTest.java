@@ -438,6 +438,7 @@ public class GitClientFetchTest {
         /* JGit does not support shallow fetch */
         boolean hasShallowFetchSupport = testGitClient instanceof CliGitAPIImpl && workspace.cgit().isAtLeastVersion(1, 5, 0, 0);
         assertThat("isShallow?", workspace.cgit().isShallowRepository(), is(hasShallowFetchSupport));
+        assertThat("isShallow? " + testGitClient, testGitClient.isShallowRepository(), is(hasShallowFetchSupport));
         String shallow = ".git" + File.separator + "shallow";
         assertThat("shallow file existence: " + shallow, new File(testGitDir, shallow).exists(), is(hasShallowFetchSupport));
     }
@@ -453,6 +454,7 @@ public class GitClientFetchTest {
         /* JGit does not support shallow fetch */
         boolean hasShallowFetchSupport = testGitClient instanceof CliGitAPIImpl && workspace.cgit().isAtLeastVersion(1, 5, 0, 0);
         assertThat("isShallow?", workspace.cgit().isShallowRepository(), is(hasShallowFetchSupport));
+        assertThat("isShallow? " + testGitClient, testGitClient.isShallowRepository(), is(hasShallowFetchSupport));
         String shallow = ".git" + File.separator + "shallow";
         assertThat("shallow file existence: " + shallow, new File(testGitDir, shallow).exists(), is(hasShallowFetchSupport));
     }
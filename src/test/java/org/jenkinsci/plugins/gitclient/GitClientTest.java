@@ -378,6 +378,23 @@ public class GitClientTest {
         }
     }
 
+    @Test
+    public void testChangelogParallelism() throws Exception {
+        ObjectId first = commitOneFile("First commit");
+        ObjectId last = first;
+        for (int i = 0; i < 20; i++) {
+            last = commitFile("File-" + (i % 3) + ".txt", "Content " + i + "\n", "Commit " + i);
+        }
+
+        StringWriter sequential = new StringWriter();
+        gitClient.changelog().excludes(first).includes(last).to(sequential).execute();
+        StringWriter parallel = new StringWriter();
+        gitClient.changelog().excludes(first).includes(last).parallelism(4).to(parallel).execute();
+
+        assertThat(parallel.toString(), containsString("Commit 19"));
+        assertThat(parallel.toString(), is(sequential.toString()));
+    }
+
     @Test
     public void testNullChangelogDestinationIncludes() throws Exception {
         final ObjectId commitA = commitOneFile();
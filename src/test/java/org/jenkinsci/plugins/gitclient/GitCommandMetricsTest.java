@@ -0,0 +1,118 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import hudson.plugins.git.GitException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GitCommandMetricsTest {
+
+    private final List<GitCommandMetrics.Event> events = new ArrayList<>();
+    private final GitCommandMetrics.Listener listener = events::add;
+
+    @Before
+    public void addListener() {
+        GitCommandMetrics.reset();
+        GitCommandMetrics.addListener(listener);
+    }
+
+    @After
+    public void removeListener() {
+        GitCommandMetrics.removeListener(listener);
+        GitCommandMetrics.reset();
+    }
+
+    @Test
+    public void percentiles() {
+        GitCommandMetrics.Histogram histogram = new GitCommandMetrics.Histogram();
+        assertThat(histogram.getPercentileNanos(0.5), is(0L));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        assertThat(histogram.getCount(), is(100L));
+        assertThat(histogram.getMaxNanos(), is(TimeUnit.MILLISECONDS.toNanos(100)));
+        assertWithin(histogram.getPercentileNanos(0.5), TimeUnit.MILLISECONDS.toNanos(50));
+        assertWithin(histogram.getPercentileNanos(0.99), TimeUnit.MILLISECONDS.toNanos(99));
+        assertThat(histogram.getPercentileNanos(1), is(TimeUnit.MILLISECONDS.toNanos(100)));
+    }
+
+    @Test
+    public void bucketsCoverRecordedValue() {
+        for (long nanos = 1; nanos < TimeUnit.HOURS.toNanos(24); nanos = nanos * 3 + 7) {
+            int bucket = GitCommandMetrics.Histogram.bucketOf(nanos);
+            assertThat(GitCommandMetrics.Histogram.upperBoundNanos(bucket), greaterThanOrEqualTo(nanos));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidQuantile() {
+        new GitCommandMetrics.Histogram().getPercentileNanos(1.5);
+    }
+
+    @Test
+    public void receivedBytes() {
+        assertThat(GitCommandMetrics.parseReceivedBytes(null), is(-1L));
+        assertThat(GitCommandMetrics.parseReceivedBytes("From https://github.com/jenkinsci/git-client-plugin\n"), is(-1L));
+        assertThat(GitCommandMetrics.parseReceivedBytes(
+                "remote: Counting objects: 12, done.\n"
+                + "Receiving objects:  50% (6/12)\r"
+                + "Receiving objects: 100% (12/12), 1.50 KiB | 1.50 MiB/s, done.\n"), is(1536L));
+        assertThat(GitCommandMetrics.parseReceivedBytes(
+                "Receiving objects: 100% (3/3), 200 bytes | 100.00 KiB/s, done.\n"
+                + "Receiving objects: 100% (9/9), 2.00 MiB | 1.00 MiB/s, done.\n"), is(200L + 2 * 1024 * 1024));
+    }
+
+    @Test
+    public void jgitOperationIsRecorded() throws Exception {
+        GitCommandMetrics.timeJGit("fetch", () -> { });
+        try {
+            GitCommandMetrics.timeJGit("fetch", () -> {
+                throw new GitException("unreachable");
+            });
+        } catch (GitException e) {
+            // expected
+        }
+
+        assertThat(events.size(), is(2));
+        assertThat(events.get(0).getImplementation(), is("jgit"));
+        assertThat(events.get(0).getOperation(), is("fetch"));
+        assertThat(events.get(0).isSuccess(), is(true));
+        assertThat(events.get(1).isSuccess(), is(false));
+        assertThat(events.get(1).getStdoutBytes(), is(-1L));
+        assertThat(GitCommandMetrics.getHistogram("fetch").getCount(), is(2L));
+        assertThat(GitCommandMetrics.getHistogram("checkout"), is(nullValue()));
+        assertThat(GitCommandMetrics.getHistograms().keySet(), contains("fetch"));
+    }
+
+    @Test
+    public void failingListenerDoesNotFailOperation() throws Exception {
+        GitCommandMetrics.Listener failing = event -> {
+            throw new IllegalStateException("broken listener");
+        };
+        GitCommandMetrics.addListener(failing);
+        try {
+            GitCommandMetrics.record(new GitCommandMetrics.Event("git", "ls-remote", 1000, 0, 10, 0, -1));
+        } finally {
+            GitCommandMetrics.removeListener(failing);
+        }
+        assertThat(events.size(), is(1));
+        assertThat(events.get(0).getStdoutBytes(), is(10L));
+    }
+
+    /* Histogram buckets are about 20 percent wide */
+    private static void assertWithin(long actual, long expected) {
+        assertThat(actual, greaterThanOrEqualTo(expected));
+        assertThat(actual, lessThanOrEqualTo(expected * 6 / 5));
+    }
+}
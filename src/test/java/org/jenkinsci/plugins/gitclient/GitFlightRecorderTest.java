@@ -0,0 +1,88 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import hudson.plugins.git.GitException;
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GitFlightRecorderTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void timeRunsOperation() throws Exception {
+        AtomicBoolean ran = new AtomicBoolean();
+        GitFlightRecorder.time(tempFolder.getRoot(), "jgit", "fetch", () -> ran.set(true));
+        assertThat(ran.get(), is(true));
+    }
+
+    @Test(expected = GitException.class)
+    public void timeRethrowsFailure() throws Exception {
+        GitFlightRecorder.time(null, "git", "checkout", () -> {
+            throw new GitException("checkout failed");
+        });
+    }
+
+    /* The jdk.jfr API is used by reflection, the plugin still compiles for Java 8 */
+    @Test
+    public void eventsAreRecorded() throws Exception {
+        Class<?> recordingClass;
+        try {
+            recordingClass = Class.forName("jdk.jfr.Recording");
+        } catch (ClassNotFoundException e) {
+            recordingClass = null;
+        }
+        assumeTrue("Flight recorder is not available", recordingClass != null);
+
+        File repository = tempFolder.newFolder("repo");
+        Path dump = tempFolder.newFile("git.jfr").toPath();
+        Object recording = recordingClass.getConstructor().newInstance();
+        try {
+            for (String name : new String[] {"GitFetch", "GitCheckout", "GitCommand", "GitRemoteCommand"}) {
+                recordingClass.getMethod("enable", String.class).invoke(recording, "org.jenkinsci.plugins.gitclient." + name);
+            }
+            recordingClass.getMethod("start").invoke(recording);
+
+            GitFlightRecorder.time(repository, "jgit", "fetch", () -> { });
+            GitFlightRecorder.beginProcess().commit(repository, "git", "rev-parse", 128);
+            GitFlightRecorder.beginRemote().commit(null, "remote", "CheckoutCommand", 0);
+
+            recordingClass.getMethod("stop").invoke(recording);
+            recordingClass.getMethod("dump", Path.class).invoke(recording, dump);
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+        }
+
+        List<String> events = new ArrayList<>();
+        List<?> recorded = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile").getMethod("readAllEvents", Path.class).invoke(null, dump);
+        for (Object event : recorded) {
+            Object type = event.getClass().getMethod("getEventType").invoke(event);
+            String name = (String) type.getClass().getMethod("getName").invoke(type);
+            if (!name.startsWith("org.jenkinsci.plugins.gitclient.")) {
+                continue;
+            }
+            Method getValue = event.getClass().getMethod("getValue", String.class);
+            events.add(name.substring(name.lastIndexOf('.') + 1)
+                    + " " + getValue.invoke(event, "repository")
+                    + " " + getValue.invoke(event, "implementation")
+                    + " " + getValue.invoke(event, "operation")
+                    + " " + getValue.invoke(event, "success"));
+        }
+        assertThat(events, hasItem("GitFetch " + repository.getPath() + " jgit fetch true"));
+        assertThat(events, hasItem("GitCommand " + repository.getPath() + " git rev-parse false"));
+        assertThat(events, hasItem("GitRemoteCommand null remote CheckoutCommand true"));
+    }
+}
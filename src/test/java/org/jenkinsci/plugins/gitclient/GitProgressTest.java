@@ -0,0 +1,109 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GitProgressTest {
+
+    private final List<GitProgress> published = new ArrayList<>();
+    private final GitProgress.Listener listener = published::add;
+
+    @Before
+    public void addListener() {
+        GitProgress.addListener(listener);
+    }
+
+    @After
+    public void removeListener() {
+        GitProgress.removeListener(listener);
+    }
+
+    @Test
+    public void parseReceivingObjects() {
+        GitProgress progress = GitProgress.parse("fetch", "Receiving objects:  45% (5/11), 1.50 MiB | 600.00 KiB/s");
+        assertThat(progress.getImplementation(), is("git"));
+        assertThat(progress.getOperation(), is("fetch"));
+        assertThat(progress.getTask(), is("Receiving objects"));
+        assertThat(progress.isRemote(), is(false));
+        assertThat(progress.getCompleted(), is(5L));
+        assertThat(progress.getTotal(), is(11L));
+        assertThat(progress.getPercent(), is(45));
+        assertThat(progress.getBytes(), is(1536L * 1024));
+        assertThat(progress.getBytesPerSecond(), is(600L * 1024));
+        assertThat(progress.isDone(), is(false));
+        assertThat(progress.toString(), is("Receiving objects 45% (5/11), 1.5 MiB, 600.0 KiB/s"));
+    }
+
+    @Test
+    public void parseRemoteCounting() {
+        GitProgress progress = GitProgress.parse("clone", "remote: Enumerating objects: 1234, done.");
+        assertThat(progress.isRemote(), is(true));
+        assertThat(progress.getTask(), is("Enumerating objects"));
+        assertThat(progress.getCompleted(), is(1234L));
+        assertThat(progress.getTotal(), is(-1L));
+        assertThat(progress.getPercent(), is(-1));
+        assertThat(progress.isDone(), is(true));
+        assertThat(progress.toString(), is("remote: Enumerating objects 1234, done"));
+    }
+
+    @Test
+    public void parseResolvingDeltas() {
+        GitProgress progress = GitProgress.parse("fetch", "Resolving deltas: 100% (3/3), done.");
+        assertThat(progress.getTask(), is("Resolving deltas"));
+        assertThat(progress.isDone(), is(true));
+        assertThat(progress.getBytes(), is(-1L));
+    }
+
+    @Test
+    public void otherLinesAreNotProgress() {
+        assertThat(GitProgress.parse("fetch", "From https://github.com/jenkinsci/git-client-plugin"), is(nullValue()));
+        assertThat(GitProgress.parse("fetch", " * [new branch]      master     -> origin/master"), is(nullValue()));
+        assertThat(GitProgress.parse("fetch", "remote: Total 12 (delta 3), reused 0 (delta 0), pack-reused 9"), is(nullValue()));
+        assertThat(GitProgress.parse("fetch", "fatal: unable to access 'https://example.com/': Could not resolve host"), is(nullValue()));
+    }
+
+    @Test
+    public void reporterThrottlesPublishing() {
+        GitProgressReporter reporter = new GitProgressReporter(null, 0);
+        reporter.update(GitProgress.parse("fetch", "Receiving objects:  10% (1/10)"));
+        reporter.update(GitProgress.parse("fetch", "Receiving objects:  20% (2/10)"));
+        reporter.update(GitProgress.parse("fetch", "Receiving objects: 100% (10/10), done."));
+        reporter.update(GitProgress.parse("fetch", "Resolving deltas:  50% (1/2)"));
+
+        List<String> tasks = new ArrayList<>();
+        for (GitProgress progress : published) {
+            tasks.add(progress.toString());
+        }
+        assertThat(tasks, contains("Receiving objects 10% (1/10)", "Receiving objects 100% (10/10), done", "Resolving deltas 50% (1/2)"));
+    }
+
+    @Test
+    public void reporterLogsPeriodically() {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        TaskListener taskListener = new StreamTaskListener(log, StandardCharsets.UTF_8);
+        GitProgressReporter reporter = new GitProgressReporter(taskListener, 1);
+        reporter.update(GitProgress.parse("fetch", "Receiving objects:  10% (1/10), 1.00 KiB | 512.00 KiB/s"));
+        taskListener.getLogger().flush();
+        assertThat(new String(log.toByteArray(), StandardCharsets.UTF_8).trim(),
+                is("> fetch progress: Receiving objects 10% (1/10), 1.0 KiB, 512.0 KiB/s"));
+
+        ByteArrayOutputStream quietLog = new ByteArrayOutputStream();
+        TaskListener quietListener = new StreamTaskListener(quietLog, StandardCharsets.UTF_8);
+        new GitProgressReporter(quietListener, 0).update(GitProgress.parse("fetch", "Receiving objects:  10% (1/10)"));
+        quietListener.getLogger().flush();
+        assertThat(quietLog.size(), is(0));
+    }
+}
@@ -0,0 +1,113 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import hudson.plugins.git.GitException;
+
+public class RemoteRefCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Before
+    public void enableCache() {
+        RemoteRefCache.setTimeToLive(1, TimeUnit.HOURS);
+    }
+
+    @After
+    public void disableCache() {
+        RemoteRefCache.setTimeToLive(0, TimeUnit.SECONDS);
+        RemoteRefCache.setMaximumSize(1000);
+    }
+
+    private String load(String url, String query) {
+        return RemoteRefCache.get(url, null, query, () -> query + " " + loads.incrementAndGet());
+    }
+
+    @Test
+    public void reusesResultOfSameQuery() {
+        assertThat(load("https://github.com/jenkinsci/git-client-plugin.git", "heads"), is("heads 1"));
+        assertThat(load("https://GitHub.com/jenkinsci/git-client-plugin/", "heads"), is("heads 1"));
+        assertThat(load("https://github.com/jenkinsci/git-client-plugin", "tags"), is("tags 2"));
+        assertThat(load("https://github.com/jenkinsci/git-plugin", "heads"), is("heads 3"));
+    }
+
+    @Test
+    public void localRepositoriesWithAndWithoutSuffixAreDifferent() {
+        assertThat(load("/srv/git/repo", "heads"), is("heads 1"));
+        assertThat(load("/srv/git/repo.git", "heads"), is("heads 2"));
+        assertThat(load("git@github.com:jenkinsci/git-client-plugin.git", "heads"), is("heads 3"));
+        assertThat(load("git@github.com:jenkinsci/git-client-plugin", "heads"), is("heads 3"));
+    }
+
+    @Test
+    public void disabledCacheAlwaysLoads() {
+        RemoteRefCache.setTimeToLive(0, TimeUnit.SECONDS);
+        assertThat(load("https://github.com/jenkinsci/git-client-plugin", "heads"), is("heads 1"));
+        assertThat(load("https://github.com/jenkinsci/git-client-plugin", "heads"), is("heads 2"));
+        assertThat(RemoteRefCache.size(), is(0));
+    }
+
+    @Test
+    public void expiredResultIsLoadedAgain() throws Exception {
+        RemoteRefCache.setTimeToLive(1, TimeUnit.MILLISECONDS);
+        assertThat(load("https://github.com/jenkinsci/git-client-plugin", "heads"), is("heads 1"));
+        Thread.sleep(5);
+        assertThat(load("https://github.com/jenkinsci/git-client-plugin", "heads"), is("heads 2"));
+    }
+
+    @Test
+    public void invalidateDropsResultsOfUrl() {
+        load("https://github.com/jenkinsci/git-client-plugin", "heads");
+        load("https://github.com/jenkinsci/git-client-plugin", "tags");
+        load("https://github.com/jenkinsci/git-plugin", "heads");
+
+        RemoteRefCache.invalidate("https://github.com/jenkinsci/git-client-plugin.git");
+        assertThat(RemoteRefCache.size(), is(1));
+        assertThat(load("https://github.com/jenkinsci/git-client-plugin", "heads"), is("heads 4"));
+        assertThat(load("https://github.com/jenkinsci/git-plugin", "heads"), is("heads 3"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        RemoteRefCache.setMaximumSize(2);
+        load("https://example.com/a", "heads");
+        load("https://example.com/b", "heads");
+        load("https://example.com/a", "heads");
+        load("https://example.com/c", "heads");
+
+        assertThat(RemoteRefCache.size(), is(2));
+        assertThat(load("https://example.com/a", "heads"), is("heads 1"));
+        assertThat(load("https://example.com/b", "heads"), is("heads 4"));
+    }
+
+    @Test
+    public void resultLoadedAcrossInvalidationIsNotCached() {
+        String url = "https://example.com/repo";
+        assertThat(RemoteRefCache.get(url, null, "heads", () -> {
+            RemoteRefCache.invalidate(url);
+            return "stale";
+        }), is("stale"));
+        assertThat(load(url, "heads"), is("heads 1"));
+    }
+
+    @Test
+    public void failuresAreNotCached() {
+        String url = "https://example.com/repo";
+        try {
+            RemoteRefCache.get(url, null, "heads", () -> {
+                throw new GitException("unreachable");
+            });
+        } catch (GitException e) {
+            assertThat(e.getMessage(), is("unreachable"));
+        }
+        assertThat(load(url, "heads"), is("heads 1"));
+    }
+}
@@ -0,0 +1,73 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+public class RemoteRefChangesTest {
+
+    private static final ObjectId ONE = ObjectId.fromString("1111111111111111111111111111111111111111");
+    private static final ObjectId TWO = ObjectId.fromString("2222222222222222222222222222222222222222");
+
+    private final Map<String, ObjectId> refs = new HashMap<>();
+
+    @Test
+    public void firstPollAddsAllRefs() {
+        refs.put("refs/heads/master", ONE);
+        RemoteRefChanges changes = RemoteRefChanges.between(null, refs, true);
+        assertThat(changes.isComplete(), is(true));
+        assertThat(changes.isUnchanged(), is(false));
+        assertThat(changes.getAdded(), is(refs));
+    }
+
+    @Test
+    public void unchangedRefsReturnPreviousState() {
+        refs.put("refs/heads/master", ONE);
+        RemoteRefState previous = RemoteRefChanges.between(null, refs, true).getState();
+        RemoteRefChanges changes = RemoteRefChanges.between(previous, new HashMap<>(refs), true);
+        assertThat(changes.isUnchanged(), is(true));
+        assertThat(changes.getState(), is(sameInstance(previous)));
+    }
+
+    @Test
+    public void listsAddedUpdatedAndRemovedRefs() {
+        refs.put("refs/heads/master", ONE);
+        refs.put("refs/heads/old", ONE);
+        RemoteRefState previous = RemoteRefState.of(refs, true);
+
+        refs.remove("refs/heads/old");
+        refs.put("refs/heads/master", TWO);
+        refs.put("refs/heads/new", ONE);
+        RemoteRefChanges changes = RemoteRefChanges.between(previous, refs, true);
+        assertThat(changes.isUnchanged(), is(false));
+        assertThat(changes.getAdded().size(), is(1));
+        assertThat(changes.getAdded(), hasEntry("refs/heads/new", ONE));
+        assertThat(changes.getUpdated().size(), is(1));
+        assertThat(changes.getUpdated(), hasEntry("refs/heads/master", TWO));
+        assertThat(changes.getRemoved(), contains("refs/heads/old"));
+        assertThat(changes.getState(), is(RemoteRefState.of(refs, false)));
+    }
+
+    @Test
+    public void tokenOnlyStateTellsWhetherRefsChanged() {
+        refs.put("refs/heads/master", ONE);
+        RemoteRefState previous = RemoteRefState.fromToken(RemoteRefState.of(refs, false).getToken());
+        RemoteRefChanges changes = RemoteRefChanges.between(previous, refs, false);
+        assertThat(changes.isUnchanged(), is(true));
+
+        refs.put("refs/heads/master", TWO);
+        changes = RemoteRefChanges.between(previous, refs, false);
+        assertThat(changes.isUnchanged(), is(false));
+        assertThat(changes.isComplete(), is(false));
+        assertThat(changes.getAdded(), is(refs));
+        assertThat(changes.getState().hasRefs(), is(false));
+    }
+}
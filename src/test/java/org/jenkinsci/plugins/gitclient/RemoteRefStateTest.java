@@ -0,0 +1,57 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+public class RemoteRefStateTest {
+
+    private static final ObjectId ONE = ObjectId.fromString("1111111111111111111111111111111111111111");
+    private static final ObjectId TWO = ObjectId.fromString("2222222222222222222222222222222222222222");
+
+    private static Map<String, ObjectId> refs(Object... nameAndId) {
+        Map<String, ObjectId> refs = new LinkedHashMap<>();
+        for (int i = 0; i < nameAndId.length; i += 2) {
+            refs.put((String) nameAndId[i], (ObjectId) nameAndId[i + 1]);
+        }
+        return refs;
+    }
+
+    @Test
+    public void keepsRefs() {
+        Map<String, ObjectId> refs = refs("refs/heads/master", ONE, "refs/heads/feature", TWO);
+        assertThat(RemoteRefState.of(refs, true).getRefs(), is(refs));
+        assertThat(RemoteRefState.of(new HashMap<>(), true).getRefs().isEmpty(), is(true));
+    }
+
+    @Test
+    public void digestDoesNotDependOnOrder() {
+        RemoteRefState state = RemoteRefState.of(refs("refs/heads/a", ONE, "refs/heads/b", TWO), true);
+        assertThat(RemoteRefState.of(refs("refs/heads/b", TWO, "refs/heads/a", ONE), false), is(state));
+        assertThat(RemoteRefState.of(refs("refs/heads/a", TWO, "refs/heads/b", ONE), false), is(not(state)));
+        assertThat(RemoteRefState.of(refs("refs/heads/ab", ONE), false), is(not(RemoteRefState.of(refs("refs/heads/a", ONE), false))));
+    }
+
+    @Test
+    public void tokenRestoresDigestOnly() {
+        RemoteRefState state = RemoteRefState.of(refs("refs/heads/master", ONE), true);
+        RemoteRefState restored = RemoteRefState.fromToken(state.getToken());
+        assertThat(restored, is(state));
+        assertThat(restored.hasRefs(), is(false));
+        assertThat(restored.getRefs(), is(nullValue()));
+        assertThat(state.withoutRefs().hasRefs(), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidToken() {
+        RemoteRefState.fromToken("not a token");
+    }
+}
@@ -0,0 +1,54 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+
+public class RemoteSnapshotTest {
+
+    private static final ObjectId COMMIT = ObjectId.fromString("0123456789012345678901234567890123456789");
+    private static final ObjectId TAG = ObjectId.fromString("9876543210987654321098765432109876543210");
+
+    @Test
+    public void peeledTagReplacesTagObject() {
+        RemoteSnapshot snapshot = new RemoteSnapshot.Builder()
+                .add("refs/tags/v1.0", TAG)
+                .add("refs/tags/v1.0^{}", COMMIT)
+                .build();
+        assertThat(snapshot.getTags(), hasEntry("refs/tags/v1.0", COMMIT));
+        assertThat(snapshot.getTags().size(), is(1));
+    }
+
+    @Test
+    public void peeledTagListedFirstIsKept() {
+        RemoteSnapshot snapshot = new RemoteSnapshot.Builder()
+                .add("refs/tags/v1.0^{}", COMMIT)
+                .add("refs/tags/v1.0", TAG)
+                .build();
+        assertThat(snapshot.getTags(), hasEntry("refs/tags/v1.0", COMMIT));
+    }
+
+    @Test
+    public void collectsHeadAndBranchesOnly() {
+        RemoteSnapshot snapshot = new RemoteSnapshot.Builder()
+                .add("HEAD", COMMIT)
+                .add("refs/heads/master", COMMIT)
+                .add("refs/pull/1/head", TAG)
+                .addSymbolicReference("HEAD", "refs/heads/master")
+                .build();
+        assertThat(snapshot.getHead(), is(COMMIT));
+        assertThat(snapshot.getHeads(), hasEntry("refs/heads/master", COMMIT));
+        assertThat(snapshot.getHeads().size(), is(1));
+        assertThat(snapshot.getTags().isEmpty(), is(true));
+        assertThat(snapshot.getSymbolicReferences(), hasEntry("HEAD", "refs/heads/master"));
+    }
+
+    @Test
+    public void emptyRepositoryHasNoHead() {
+        assertThat(new RemoteSnapshot.Builder().build().getHead(), is(nullValue()));
+    }
+}
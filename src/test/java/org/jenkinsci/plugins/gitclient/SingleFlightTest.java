@@ -0,0 +1,182 @@
+package org.jenkinsci.plugins.gitclient;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import hudson.plugins.git.GitException;
+
+public class SingleFlightTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @After
+    public void stopThreads() {
+        executor.shutdownNow();
+    }
+
+    /* Runs an operation on another thread which blocks until released */
+    private Future<String> blocked(String key, CountDownLatch started, CountDownLatch release, String result) {
+        return executor.submit(() -> SingleFlight.run(key, () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            release.await();
+            if (result == null) {
+                throw new GitException("failed");
+            }
+            return result;
+        }));
+    }
+
+    /* Joins the running operation, returns once it waits */
+    private Future<String> joining(String key, String result) throws InterruptedException {
+        CountDownLatch waiting = new CountDownLatch(1);
+        Future<String> joined = executor.submit(() -> SingleFlight.run(key, waiting::countDown, () -> {
+            runs.incrementAndGet();
+            return result;
+        }));
+        assertThat(waiting.await(10, TimeUnit.SECONDS), is(true));
+        return joined;
+    }
+
+    @Test
+    public void concurrentCallersShareResult() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> first = blocked("ls-remote", started, release, "refs");
+        assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+        Future<String> second = joining("ls-remote", "other refs");
+
+        release.countDown();
+        assertThat(first.get(10, TimeUnit.SECONDS), is("refs"));
+        assertThat(second.get(10, TimeUnit.SECONDS), is("refs"));
+        assertThat(runs.get(), is(1));
+    }
+
+    @Test
+    public void concurrentCallersShareFailure() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> first = blocked("fetch", started, release, null);
+        assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+        Future<String> second = joining("fetch", "fetched");
+
+        release.countDown();
+        for (Future<String> f : Arrays.asList(first, second)) {
+            try {
+                f.get(10, TimeUnit.SECONDS);
+                throw new AssertionError("failure not shared");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause().getMessage(), is("failed"));
+            }
+        }
+        assertThat(runs.get(), is(1));
+    }
+
+    @Test
+    public void laterCallersRunAgain() {
+        assertThat(SingleFlight.run("ls-remote", () -> "first " + runs.incrementAndGet()), is("first 1"));
+        assertThat(SingleFlight.run("ls-remote", () -> "second " + runs.incrementAndGet()), is("second 2"));
+    }
+
+    @Test
+    public void differentKeysRunConcurrently() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> first = blocked("heads", started, release, "heads");
+        assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+
+        assertThat(SingleFlight.run("tags", () -> "tags"), is("tags"));
+        release.countDown();
+        assertThat(first.get(10, TimeUnit.SECONDS), is("heads"));
+    }
+
+    @Test
+    public void interruptedOperationIsRunAgainByWaitingCaller() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> first = blocked("fetch", started, release, "fetched");
+        assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+        Future<String> second = joining("fetch", "fetched again");
+
+        first.cancel(true);
+        assertThat(second.get(10, TimeUnit.SECONDS), is("fetched again"));
+        assertThat(runs.get(), is(2));
+    }
+
+    @Test
+    public void callersOfLatestDoNotShareEarlierOperation() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> first = blocked("fetch", started, release, "before push");
+        assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+
+        CountDownLatch waiting = new CountDownLatch(2);
+        CountDownLatch joined = new CountDownLatch(3);
+        CountDownLatch rerun = new CountDownLatch(1);
+        SingleFlight.Operation<String, InterruptedException> fetch = () -> {
+            runs.incrementAndGet();
+            rerun.await();
+            return "after push";
+        };
+        Runnable joining = () -> {
+            waiting.countDown();
+            joined.countDown();
+        };
+        Future<String> second = executor.submit(() -> SingleFlight.runLatest("fetch", joining, fetch));
+        Future<String> third = executor.submit(() -> SingleFlight.runLatest("fetch", joining, fetch));
+        assertThat(waiting.await(10, TimeUnit.SECONDS), is(true));
+
+        release.countDown();
+        assertThat(first.get(10, TimeUnit.SECONDS), is("before push"));
+        // one of them runs the fetch again, the other one waits for it
+        assertThat(joined.await(10, TimeUnit.SECONDS), is(true));
+        rerun.countDown();
+        assertThat(second.get(10, TimeUnit.SECONDS), is("after push"));
+        assertThat(third.get(10, TimeUnit.SECONDS), is("after push"));
+        assertThat(runs.get(), is(2));
+    }
+
+    @Test
+    public void interruptedWaitingCallerIsInterrupted() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> first = blocked("fetch", started, release, "fetched");
+        assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+
+        CountDownLatch waiting = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Exception> thrown = new AtomicReference<>();
+        Future<?> second = executor.submit(() -> {
+            try {
+                SingleFlight.runLatest("fetch", waiting::countDown, () -> "fetched again");
+            } catch (Exception e) {
+                thrown.set(e);
+            } finally {
+                done.countDown();
+            }
+        });
+        assertThat(waiting.await(10, TimeUnit.SECONDS), is(true));
+        second.cancel(true);
+        assertThat(done.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(thrown.get(), instanceOf(InterruptedException.class));
+
+        release.countDown();
+        assertThat(first.get(10, TimeUnit.SECONDS), is("fetched"));
+        assertThat(runs.get(), is(1));
+    }
+}
@@ -0,0 +1,135 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CatFileBatchTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File repo;
+    private Process process;
+    private CatFileBatch batch;
+
+    @Before
+    public void createRepository() throws Exception {
+        repo = tempFolder.newFolder();
+        git("init");
+        git("config", "user.name", "Cat File");
+        git("config", "user.email", "cat.file@example.com");
+        git("commit", "--allow-empty", "-m", "initial commit");
+        git("tag", "-a", "annotated", "-m", "tag message");
+        process = new ProcessBuilder("git", "cat-file", "--batch").directory(repo).start();
+        batch = new CatFileBatch(process.getOutputStream(), process.getInputStream(), () -> process.destroy(), 0);
+    }
+
+    @After
+    public void closeBatch() throws Exception {
+        batch.close();
+    }
+
+    @Test
+    public void queryCommit() throws Exception {
+        CatFileBatch.GitObjectData head = batch.query("HEAD", false);
+        assertThat(head.getId(), is(ObjectId.fromString(git("rev-parse", "HEAD"))));
+        assertThat(head.getType(), is("commit"));
+        assertThat(head.getContent(), is(nullValue()));
+    }
+
+    @Test
+    public void queryTagContent() throws Exception {
+        CatFileBatch.GitObjectData tag = batch.query("refs/tags/annotated", true);
+        assertThat(tag.getType(), is("tag"));
+        String content = new String(tag.getContent(), StandardCharsets.UTF_8);
+        assertThat(content.endsWith("\n\ntag message\n"), is(true));
+
+        CatFileBatch.GitObjectData peeled = batch.query("annotated^{commit}", false);
+        assertThat(peeled.getId(), is(batch.query("HEAD", false).getId()));
+    }
+
+    @Test
+    public void queryMissingObject() throws Exception {
+        assertThat(batch.query("refs/tags/missing", false), is(nullValue()));
+        assertThat(batch.query(ObjectId.zeroId().name(), true), is(nullValue()));
+        /* session still usable after a miss */
+        assertThat(batch.query("HEAD", true), is(notNullValue()));
+    }
+
+    @Test
+    public void closedWhenOwnerIsUnreachable() throws Exception {
+        Object owner = new Object();
+        batch.closeWhenUnreachable(owner);
+        assertThat(batch.query("HEAD", false), is(notNullValue()));
+
+        owner = null;
+        for (int i = 0; i < 100 && !batch.isClosed(); i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertThat(batch.isClosed(), is(true));
+    }
+
+    @Test
+    public void seesRefsCreatedByOtherProcesses() throws Exception {
+        assertThat(batch.query("refs/tags/later", false), is(nullValue()));
+        git("tag", "later");
+        assertThat(batch.query("refs/tags/later", false), is(notNullValue()));
+    }
+
+    @Test(expected = IOException.class)
+    public void queryAfterCloseFails() throws Exception {
+        batch.close();
+        assertThat(batch.isClosed(), is(true));
+        batch.query("HEAD", false);
+    }
+
+    @Test
+    public void idleSessionIsClosed() throws Exception {
+        Process idleProcess = new ProcessBuilder("git", "cat-file", "--batch").directory(repo).start();
+        CatFileBatch idle = new CatFileBatch(idleProcess.getOutputStream(), idleProcess.getInputStream(), () -> idleProcess.destroy(), 50);
+        assertThat(idle.query("HEAD", false), is(notNullValue()));
+        for (int i = 0; i < 100 && !idle.isClosed(); i++) {
+            Thread.sleep(20);
+        }
+        assertThat(idle.isClosed(), is(true));
+    }
+
+    @Test
+    public void hungQueryIsClosed() throws Exception {
+        Process hungProcess = new ProcessBuilder("sleep", "60").start();
+        CatFileBatch hung = new CatFileBatch(hungProcess.getOutputStream(), hungProcess.getInputStream(), () -> hungProcess.destroy(), 200);
+        long start = System.currentTimeMillis();
+        try {
+            hung.query("HEAD", false);
+            throw new AssertionError("Expected IOException");
+        } catch (IOException e) {
+            assertThat(hung.isClosed(), is(true));
+            assertThat(System.currentTimeMillis() - start < 30_000, is(true));
+        }
+    }
+
+    private String git(String... args) throws IOException, InterruptedException {
+        String[] command = new String[args.length + 1];
+        command[0] = "git";
+        System.arraycopy(args, 0, command, 1, args.length);
+        Process git = new ProcessBuilder(command).directory(repo).redirectErrorStream(true).start();
+        String output = IOUtils.toString(git.getInputStream(), StandardCharsets.UTF_8);
+        assertThat(output, git.waitFor(), is(0));
+        return output.trim();
+    }
+}
@@ -0,0 +1,139 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CredentialFileSessionTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final AtomicInteger created = new AtomicInteger();
+
+    private CredentialFileSession.Factory factory() {
+        return session -> {
+            created.incrementAndGet();
+            File askpass = session.addFile(tempFolder.newFile());
+            session.putEnvironment("GIT_ASKPASS", askpass.getAbsolutePath());
+        };
+    }
+
+    private static File askpass(CredentialFileSession session) {
+        return new File(session.getEnvironment().get("GIT_ASKPASS"));
+    }
+
+    @Test
+    public void sessionIsSharedWhileNotIdle() throws Exception {
+        CredentialFileSession.Cache<String> cache = new CredentialFileSession.Cache<>(60_000, File::delete);
+
+        CredentialFileSession first = cache.acquire("key", factory());
+        CredentialFileSession second = cache.acquire("key", factory());
+        assertThat(second, is(sameInstance(first)));
+        cache.release(first);
+        cache.release(second);
+
+        CredentialFileSession third = cache.acquire("key", factory());
+        assertThat(third, is(sameInstance(first)));
+        assertThat(third.getEnvironment(), hasEntry("GIT_ASKPASS", askpass(first).getAbsolutePath()));
+        assertThat(askpass(third).exists(), is(true));
+        cache.release(third);
+        assertThat(created.get(), is(1));
+
+        CredentialFileSession other = cache.acquire("other key", factory());
+        assertThat(other, is(not(sameInstance(first))));
+        cache.release(other);
+        assertThat(created.get(), is(2));
+    }
+
+    @Test
+    public void filesAreDeletedOnReleaseWithoutIdleTime() throws Exception {
+        CredentialFileSession.Cache<String> cache = new CredentialFileSession.Cache<>(0, File::delete);
+
+        CredentialFileSession first = cache.acquire("key", factory());
+        AtomicInteger cleanups = new AtomicInteger();
+        first.addCleanup(cleanups::incrementAndGet);
+        File file = askpass(first);
+        cache.release(first);
+        assertThat(file.exists(), is(false));
+        assertThat(cleanups.get(), is(1));
+
+        CredentialFileSession second = cache.acquire("key", factory());
+        assertThat(second, is(not(sameInstance(first))));
+        cache.release(second);
+        assertThat(created.get(), is(2));
+    }
+
+    @Test
+    public void idleSessionIsDeleted() throws Exception {
+        CredentialFileSession.Cache<String> cache = new CredentialFileSession.Cache<>(50, File::delete);
+
+        CredentialFileSession session = cache.acquire("key", factory());
+        cache.release(session);
+        for (int i = 0; i < 100 && !session.isDeleted(); i++) {
+            Thread.sleep(20);
+        }
+        assertThat(session.isDeleted(), is(true));
+        assertThat(askpass(session).exists(), is(false));
+
+        CredentialFileSession next = cache.acquire("key", factory());
+        assertThat(next, is(not(sameInstance(session))));
+        cache.release(next);
+    }
+
+    @Test
+    public void sessionIsCreatedAgainWhenFilesWereDeleted() throws Exception {
+        CredentialFileSession.Cache<String> cache = new CredentialFileSession.Cache<>(60_000, File::delete);
+        AtomicInteger cleanups = new AtomicInteger();
+
+        CredentialFileSession first = cache.acquire("key", factory());
+        first.addCleanup(cleanups::incrementAndGet);
+        CredentialFileSession inUse = cache.acquire("key", factory());
+        cache.release(first);
+        assertThat(askpass(first).delete(), is(true));
+
+        CredentialFileSession second = cache.acquire("key", factory());
+        assertThat(second, is(not(sameInstance(first))));
+        assertThat(askpass(second).exists(), is(true));
+        assertThat(created.get(), is(2));
+        assertThat(first.isDeleted(), is(false));
+        cache.release(second);
+
+        cache.release(inUse);
+        cache.release(cache.acquire("key", factory()));
+        assertThat(created.get(), is(2));
+
+        assertThat(askpass(second).delete(), is(true));
+        CredentialFileSession third = cache.acquire("key", factory());
+        assertThat(third, is(not(sameInstance(second))));
+        assertThat(second.isDeleted(), is(true));
+        cache.release(third);
+        assertThat(created.get(), is(3));
+    }
+
+    @Test
+    public void failedFactoryDeletesCreatedFiles() throws Exception {
+        CredentialFileSession.Cache<String> cache = new CredentialFileSession.Cache<>(60_000, File::delete);
+        File[] partial = new File[1];
+        try {
+            cache.acquire("key", session -> {
+                partial[0] = session.addFile(tempFolder.newFile());
+                throw new IOException("cannot write key");
+            });
+        } catch (IOException e) {
+            assertThat(partial[0].exists(), is(false));
+            return;
+        }
+        throw new AssertionError("Expected IOException");
+    }
+}
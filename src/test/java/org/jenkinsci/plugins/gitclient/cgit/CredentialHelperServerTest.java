@@ -0,0 +1,91 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CredentialHelperServerTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private CredentialHelperServer server;
+
+    @Before
+    public void startServer() throws Exception {
+        server = new CredentialHelperServer(tempFolder.getRoot());
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void answersRegisteredPrompts() {
+        String token = server.register("jenkins", "s3cr3t");
+        assertThat(server.answer(token, "Username for 'https://example.com': "), is("jenkins"));
+        assertThat(server.answer(token, "Password for 'https://jenkins@example.com': "), is("s3cr3t"));
+
+        String passphrase = server.register(null, "phrase");
+        assertThat(server.answer(passphrase, "Enter passphrase for key '/tmp/key': "), is("phrase"));
+        assertThat(server.answer(passphrase, "Username"), is("phrase"));
+        assertThat(token, is(not(passphrase)));
+    }
+
+    @Test
+    public void unknownTokenIsNotAnswered() {
+        String token = server.register("jenkins", "s3cr3t");
+        assertThat(server.answer("0000", "Password: "), is(nullValue()));
+        assertThat(server.answer(null, "Password: "), is(nullValue()));
+        server.unregister(token);
+        assertThat(server.answer(token, "Password: "), is(nullValue()));
+    }
+
+    @Test
+    public void scriptDoesNotContainSecrets() throws Exception {
+        server.register("jenkins", "s3cr3t");
+        String script = new String(Files.readAllBytes(server.getScript().toPath()), StandardCharsets.UTF_8);
+        assertThat(script, containsString(Integer.toString(server.getPort())));
+        assertThat(script, not(containsString("s3cr3t")));
+    }
+
+    @Test
+    public void scriptAsksServer() throws Exception {
+        assumeTrue(new File("/bin/bash").canExecute());
+        String token = server.register("jenkins", "s3cr3t");
+
+        assertThat(askpass(token, "Username for 'https://example.com': "), is("jenkins\n"));
+        assertThat(askpass(token, "Password for 'https://jenkins@example.com': "), is("s3cr3t\n"));
+        assertThat(askpass("wrong", "Password for 'https://jenkins@example.com': "), is(""));
+    }
+
+    private String askpass(String token, String prompt) throws Exception {
+        ProcessBuilder pb = new ProcessBuilder(server.getScript().getAbsolutePath(), prompt);
+        pb.environment().put(CredentialHelperServer.TOKEN_VARIABLE, token);
+        pb.redirectErrorStream(true);
+        Process process = pb.start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = process.getInputStream()) {
+            IOUtils.copy(in, out);
+        }
+        process.waitFor();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,87 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GitProbeCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @After
+    public void clearCache() {
+        GitProbeCache.clear();
+    }
+
+    @Test
+    public void resolveOnPath() throws Exception {
+        File dir = tempFolder.newFolder();
+        File git = createExecutable(dir, "fake-git");
+
+        GitProbeCache.Key key = GitProbeCache.resolve("fake-git", tempFolder.getRoot() + File.pathSeparator + dir);
+        assertThat(key, is(notNullValue()));
+        assertThat(key.getPath(), is(git.getAbsolutePath()));
+        assertThat(GitProbeCache.resolve(git.getAbsolutePath(), ""), is(key));
+        assertThat(GitProbeCache.resolve("missing-git", dir.getPath()), is(nullValue()));
+    }
+
+    @Test
+    public void probeResultIsCached() throws Exception {
+        File git = createExecutable(tempFolder.newFolder(), "fake-git");
+        GitProbeCache.Key key = GitProbeCache.resolve(git.getAbsolutePath(), null);
+        AtomicInteger probes = new AtomicInteger();
+
+        assertThat(GitProbeCache.get(key, "version", () -> "git version " + probes.incrementAndGet()), is("git version 1"));
+        assertThat(GitProbeCache.get(key, "version", () -> "git version " + probes.incrementAndGet()), is("git version 1"));
+        assertThat(GitProbeCache.get(key, "other", () -> "other " + probes.incrementAndGet()), is("other 2"));
+    }
+
+    @Test
+    public void nullResultIsNotCached() throws Exception {
+        File git = createExecutable(tempFolder.newFolder(), "fake-git");
+        GitProbeCache.Key key = GitProbeCache.resolve(git.getAbsolutePath(), null);
+
+        assertThat(GitProbeCache.get(key, "version", () -> null), is(nullValue()));
+        assertThat(GitProbeCache.get(key, "version", () -> "git version 2.30.0"), is("git version 2.30.0"));
+    }
+
+    @Test
+    public void unresolvedExecutableIsNotCached() {
+        AtomicInteger probes = new AtomicInteger();
+        GitProbeCache.get(null, "version", probes::incrementAndGet);
+        GitProbeCache.get(null, "version", probes::incrementAndGet);
+        assertThat(probes.get(), is(2));
+    }
+
+    @Test
+    public void replacedExecutableIsProbedAgain() throws Exception {
+        File git = createExecutable(tempFolder.newFolder(), "fake-git");
+        GitProbeCache.Key key = GitProbeCache.resolve(git.getAbsolutePath(), null);
+        assertThat(GitProbeCache.get(key, "version", () -> "git version 2.20.0"), is("git version 2.20.0"));
+
+        Files.write(git.toPath(), "#!/bin/sh\necho upgraded\n".getBytes(StandardCharsets.UTF_8));
+        assertThat(git.setLastModified(git.lastModified() + 10_000), is(true));
+        GitProbeCache.Key upgraded = GitProbeCache.resolve(git.getAbsolutePath(), null);
+        assertThat(upgraded.equals(key), is(false));
+        assertThat(GitProbeCache.get(upgraded, "version", () -> "git version 2.30.0"), is("git version 2.30.0"));
+    }
+
+    private static File createExecutable(File dir, String name) throws Exception {
+        File exe = new File(dir, File.pathSeparatorChar == ';' ? name + ".exe" : name);
+        Files.write(exe.toPath(), "#!/bin/sh\n".getBytes(StandardCharsets.UTF_8));
+        exe.setExecutable(true);
+        return exe;
+    }
+}
@@ -0,0 +1,89 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.theInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LineConsumingOutputStreamTest {
+
+    private final List<String> lines = new ArrayList<>();
+    private final LineConsumingOutputStream stream = new LineConsumingOutputStream(StandardCharsets.UTF_8, lines::add);
+
+    @Test
+    public void linesAreDeliveredWhenComplete() throws Exception {
+        stream.write("first\nsec".getBytes(StandardCharsets.UTF_8));
+        assertThat(lines, contains("first"));
+
+        stream.write("ond\r\nthird\n".getBytes(StandardCharsets.UTF_8));
+        assertThat(lines, contains("first", "second", "third"));
+    }
+
+    @Test
+    public void progressLinesAreSplitAtCarriageReturn() throws Exception {
+        LineConsumingOutputStream progress = new LineConsumingOutputStream(StandardCharsets.UTF_8, true, lines::add);
+        progress.write("Receiving objects:  50% (1/2)\rReceiving objects: 100% (2/2), done.\r\nResolving".getBytes(StandardCharsets.UTF_8));
+        assertThat(lines, contains("Receiving objects:  50% (1/2)", "Receiving objects: 100% (2/2), done."));
+        progress.close();
+        assertThat(lines, contains("Receiving objects:  50% (1/2)", "Receiving objects: 100% (2/2), done.", "Resolving"));
+    }
+
+    @Test
+    public void partialLineIsDeliveredOnClose() throws Exception {
+        stream.write("no line terminator".getBytes(StandardCharsets.UTF_8));
+        assertThat(lines, is(empty()));
+
+        stream.close();
+        assertThat(lines, contains("no line terminator"));
+    }
+
+    @Test
+    public void multiByteCharacterSplitAcrossWrites() throws Exception {
+        byte[] bytes = "grüße\n".getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            stream.write(b);
+        }
+        assertThat(lines, contains("grüße"));
+    }
+
+    @Test
+    public void emptyLinesArePreserved() throws Exception {
+        stream.write("\n\na\n".getBytes(StandardCharsets.UTF_8));
+        stream.close();
+        assertThat(lines, contains("", "", "a"));
+    }
+
+    @Test
+    public void consumerFailureIsRethrownOnClose() throws Exception {
+        IllegalStateException failure = new IllegalStateException("bad line");
+        List<String> seen = new ArrayList<>();
+        LineConsumingOutputStream failing = new LineConsumingOutputStream(StandardCharsets.UTF_8, line -> {
+            seen.add(line);
+            throw failure;
+        });
+
+        failing.write("one\ntwo\nthree\n".getBytes(StandardCharsets.UTF_8));
+        assertThat(seen, contains("one"));
+        try {
+            failing.close();
+            fail("Expected consumer failure");
+        } catch (IllegalStateException e) {
+            assertThat(e, is(theInstance(failure)));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void writeAfterCloseFails() throws Exception {
+        stream.close();
+        stream.write('x');
+    }
+}
@@ -0,0 +1,175 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assume.assumeThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RefSnapshotTest {
+
+    private static final String SHA1 = "7ac27f7a051e1017da9f7c45ade8f091dbe6f99d";
+    private static final String SHA2 = "7b5856ef2b4d35530a06d6482d0f4e972769d89b";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void parseForEachRefOutput() {
+        RefSnapshot.Builder builder = new RefSnapshot.Builder();
+        builder.addLine(SHA1 + " refs/heads/master   ");
+        builder.addLine(SHA2 + " refs/tags/v1.0 " + SHA1 + " commit ");
+        builder.addLine(SHA1 + " refs/remotes/origin/HEAD   refs/remotes/origin/master");
+        builder.addLine(SHA2 + " refs/tags/nested " + SHA1 + " tag ");
+        RefSnapshot snapshot = builder.build(null);
+
+        List<String> names = new ArrayList<>();
+        for (RefSnapshot.Ref ref : snapshot.getRefs()) {
+            names.add(ref.getName());
+        }
+        assertThat(names, contains("refs/heads/master", "refs/remotes/origin/HEAD", "refs/tags/nested", "refs/tags/v1.0"));
+
+        RefSnapshot.Ref master = snapshot.get("refs/heads/master");
+        assertThat(master.getObjectId(), is(ObjectId.fromString(SHA1)));
+        assertThat(master.getPeeledObjectId(), is(nullValue()));
+        assertThat(master.isSymbolic(), is(false));
+
+        RefSnapshot.Ref tag = snapshot.get("refs/tags/v1.0");
+        assertThat(tag.getObjectId(), is(ObjectId.fromString(SHA2)));
+        assertThat(tag.getPeeledObjectId(), is(ObjectId.fromString(SHA1)));
+        assertThat(tag.isFullyPeeled(), is(true));
+
+        assertThat(snapshot.get("refs/remotes/origin/HEAD").getSymbolicTarget(), is("refs/remotes/origin/master"));
+        assertThat(snapshot.get("refs/tags/nested").isFullyPeeled(), is(false));
+        assertThat(snapshot.get("refs/heads/missing"), is(nullValue()));
+        assertThat(snapshot.isCurrent(), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unexpectedOutputLine() {
+        new RefSnapshot.Builder().addLine(SHA1 + " refs/heads/master");
+    }
+
+    @Test
+    public void forEachRefPatterns() {
+        assertThat(RefSnapshot.forEachRefMatches("refs/", "refs/heads/master"), is(true));
+        assertThat(RefSnapshot.forEachRefMatches("refs/heads", "refs/heads/master"), is(true));
+        assertThat(RefSnapshot.forEachRefMatches("refs/heads/master", "refs/heads/master"), is(true));
+        assertThat(RefSnapshot.forEachRefMatches("refs/hea", "refs/heads/master"), is(false));
+        assertThat(RefSnapshot.forEachRefMatches("refs/heads/*", "refs/heads/master"), is(true));
+        assertThat(RefSnapshot.forEachRefMatches("refs/heads/*", "refs/heads/feature/a"), is(false));
+        assertThat(RefSnapshot.forEachRefMatches("refs/heads/**", "refs/heads/feature/a"), is(true));
+    }
+
+    @Test
+    public void tagPatterns() {
+        assertThat(RefSnapshot.tagMatches("*", "slashed/sample"), is(true));
+        assertThat(RefSnapshot.tagMatches("sl*sa*", "slashed/sample"), is(true));
+        assertThat(RefSnapshot.tagMatches("*/sl*sa*", "slashed/sample"), is(false));
+        assertThat(RefSnapshot.tagMatches("v1.?", "v1.0"), is(true));
+        assertThat(RefSnapshot.tagMatches("v1.?", "v1x0"), is(false));
+        assertThat(RefSnapshot.tagMatches("v[0-9]*", "v2.1"), is(true));
+        assertThat(RefSnapshot.tagMatches("v[!0-9]*", "v2.1"), is(false));
+        assertThat(RefSnapshot.tagMatches("", "v2.1"), is(false));
+        assertThat(RefSnapshot.tagMatches("has/a/slash", "has/a/slash"), is(true));
+    }
+
+    @Test
+    public void showRefPatterns() {
+        assertThat(RefSnapshot.showRefMatches("master", "refs/heads/master"), is(true));
+        assertThat(RefSnapshot.showRefMatches("heads/master", "refs/heads/master"), is(true));
+        assertThat(RefSnapshot.showRefMatches("refs/heads/master", "refs/heads/master"), is(true));
+        assertThat(RefSnapshot.showRefMatches("aster", "refs/heads/master"), is(false));
+    }
+
+    @Test
+    public void stampDetectsRefChanges() throws Exception {
+        Path gitDir = tempFolder.newFolder().toPath();
+        Path heads = Files.createDirectories(gitDir.resolve("refs/heads"));
+        Path master = write(heads.resolve("master"), SHA1);
+        ageAll(gitDir, master);
+
+        RefSnapshot.Stamp stamp = RefSnapshot.Stamp.of(gitDir);
+        assertThat(stamp.isCurrent(), is(true));
+
+        write(heads.resolve("feature"), SHA2);
+        assertThat(stamp.isCurrent(), is(false));
+    }
+
+    @Test
+    public void stampDetectsPackedRefs() throws Exception {
+        Path gitDir = tempFolder.newFolder().toPath();
+        Files.createDirectories(gitDir.resolve("refs/heads"));
+        ageAll(gitDir);
+
+        RefSnapshot.Stamp stamp = RefSnapshot.Stamp.of(gitDir);
+        assertThat(stamp.isCurrent(), is(true));
+
+        write(gitDir.resolve("packed-refs"), SHA1 + " refs/heads/master");
+        assertThat(stamp.isCurrent(), is(false));
+    }
+
+    @Test
+    public void recentlyModifiedStampIsNotTrusted() throws Exception {
+        Path gitDir = tempFolder.newFolder().toPath();
+        write(Files.createDirectories(gitDir.resolve("refs/heads")).resolve("master"), SHA1);
+
+        assertThat(RefSnapshot.Stamp.of(gitDir).isCurrent(), is(false));
+    }
+
+    @Test
+    public void stampDetectsRefReplacedByLockFile() throws Exception {
+        Path gitDir = tempFolder.newFolder().toPath();
+        Path heads = Files.createDirectories(gitDir.resolve("refs/heads"));
+        Path master = write(heads.resolve("master"), SHA1);
+        ageAll(gitDir, master);
+
+        RefSnapshot.Stamp stamp = RefSnapshot.Stamp.of(gitDir);
+        assertThat(stamp.isCurrent(), is(true));
+
+        Path lock = write(heads.resolve("master.lock"), SHA2);
+        Files.move(lock, master, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        assertThat(stamp.isCurrent(), is(false));
+    }
+
+    @Test
+    public void settledStampIsTrustedOnFineGrainedFileSystems() throws Exception {
+        Path gitDir = tempFolder.newFolder().toPath();
+        Path heads = Files.createDirectories(gitDir.resolve("refs/heads"));
+        write(heads.resolve("master"), SHA1);
+        assumeThat(Files.getLastModifiedTime(heads).toMillis() % 1000 != 0, is(true));
+        Thread.sleep(RefSnapshot.Stamp.FINE_TICK_MILLIS * 4);
+
+        assertThat(RefSnapshot.Stamp.of(gitDir).isCurrent(), is(true));
+    }
+
+    private static Path write(Path file, String content) throws Exception {
+        return Files.write(file, (content + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /* Move modification times out of the racy window */
+    private static void ageAll(Path gitDir, Path... files) throws Exception {
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        for (Path file : files) {
+            Files.setLastModifiedTime(file, old);
+        }
+        File[] dirs = { gitDir.resolve("refs/heads").toFile(), gitDir.resolve("refs").toFile() };
+        for (File dir : dirs) {
+            Files.setLastModifiedTime(dir.toPath(), old);
+        }
+    }
+}
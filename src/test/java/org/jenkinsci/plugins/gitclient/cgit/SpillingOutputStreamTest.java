@@ -0,0 +1,89 @@
+package org.jenkinsci.plugins.gitclient.cgit;
+
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SpillingOutputStreamTest {
+
+    private static final Charset UTF_8 = StandardCharsets.UTF_8;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static void write(SpillingOutputStream out, String text) throws Exception {
+        out.write(text.getBytes(UTF_8));
+    }
+
+    @Test
+    public void smallOutputStaysInMemory() throws Exception {
+        File directory = tempFolder.newFolder();
+        SpillingOutputStream out = new SpillingOutputStream(64, directory);
+        write(out, "commit 1\n");
+        out.write('x');
+        out.close();
+        assertThat(out.size(), is(10L));
+        assertThat(out.toString(UTF_8), is("commit 1\nx"));
+        assertThat(directory.list(), is(emptyArray()));
+    }
+
+    @Test
+    public void largeOutputIsSpilled() throws Exception {
+        File directory = tempFolder.newFolder();
+        SpillingOutputStream out = new SpillingOutputStream(16, directory);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            String line = "line " + i + "\n";
+            write(out, line);
+            expected.append(line);
+        }
+        out.close();
+        assertThat(directory.list().length, is(1));
+        assertThat(out.size(), is((long) expected.length()));
+        assertThat(out.toString(UTF_8), is(expected.toString()));
+
+        out.delete();
+        assertThat(directory.list(), is(emptyArray()));
+    }
+
+    @Test
+    public void singleByteWritesSpill() throws Exception {
+        File directory = tempFolder.newFolder();
+        SpillingOutputStream out = new SpillingOutputStream(4, directory);
+        for (byte b : "abcdefgh".getBytes(UTF_8)) {
+            out.write(b);
+        }
+        out.close();
+        assertThat(directory.list().length, is(1));
+        assertThat(out.toString(UTF_8), is("abcdefgh"));
+        out.delete();
+    }
+
+    @Test
+    public void headCutsLongContent() throws Exception {
+        SpillingOutputStream out = new SpillingOutputStream(8, tempFolder.newFolder());
+        write(out, "0123456789abcdef");
+        out.close();
+        assertThat(out.head(4, UTF_8), is("0123... (16 bytes)"));
+        assertThat(out.head(16, UTF_8), is("0123456789abcdef"));
+        out.delete();
+    }
+
+    @Test
+    public void missingDirectoryKeepsContentInMemory() throws Exception {
+        File directory = new File(tempFolder.getRoot(), "missing");
+        SpillingOutputStream out = new SpillingOutputStream(4, directory);
+        write(out, "more than four bytes");
+        out.close();
+        assertThat(directory.exists(), is(false));
+        assertThat(out.toString(UTF_8), is("more than four bytes"));
+    }
+}
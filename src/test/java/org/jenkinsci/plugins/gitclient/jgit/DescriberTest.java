@@ -0,0 +1,172 @@
+package org.jenkinsci.plugins.gitclient.jgit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TagBuilder;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DescriberTest {
+
+    private Repository repo;
+    private ObjectInserter inserter;
+    private ObjectId emptyTree;
+    private long time = 1_500_000_000_000L;
+
+    @Before
+    public void createRepository() throws Exception {
+        Describer.clear();
+        repo = new InMemoryRepository(new DfsRepositoryDescription("describe"));
+        inserter = repo.newObjectInserter();
+        emptyTree = inserter.insert(new TreeFormatter());
+    }
+
+    @After
+    public void closeRepository() {
+        inserter.close();
+        repo.close();
+        Describer.clear();
+    }
+
+    /* Each commit is one minute younger than the one before */
+    private ObjectId commit(String message, ObjectId... parents) throws Exception {
+        time += 60_000L;
+        PersonIdent ident = new PersonIdent("Test", "test@example.com", time, 0);
+        CommitBuilder builder = new CommitBuilder();
+        builder.setTreeId(emptyTree);
+        builder.setParentIds(parents);
+        builder.setAuthor(ident);
+        builder.setCommitter(ident);
+        builder.setMessage(message);
+        ObjectId id = inserter.insert(builder);
+        inserter.flush();
+        return id;
+    }
+
+    private void tag(String name, ObjectId id) throws Exception {
+        RefUpdate update = repo.updateRef(Constants.R_TAGS + name);
+        update.setNewObjectId(id);
+        update.setForceUpdate(true);
+        update.update();
+    }
+
+    private ObjectId annotatedTag(String name, ObjectId commit) throws Exception {
+        TagBuilder builder = new TagBuilder();
+        builder.setObjectId(commit, Constants.OBJ_COMMIT);
+        builder.setTag(name);
+        builder.setTagger(new PersonIdent("Test", "test@example.com"));
+        builder.setMessage("Release " + name);
+        ObjectId id = inserter.insert(builder);
+        inserter.flush();
+        tag(name, id);
+        return id;
+    }
+
+    private String describe(ObjectId id) throws Exception {
+        try (Describer describer = new Describer(repo)) {
+            return describer.describe(id);
+        }
+    }
+
+    private String abbreviate(ObjectId id) throws Exception {
+        try (ObjectReader reader = repo.newObjectReader()) {
+            return reader.abbreviate(id).name();
+        }
+    }
+
+    @Test
+    public void taggedCommit() throws Exception {
+        ObjectId a = commit("a");
+        tag("v1", a);
+
+        assertThat(describe(a), is("v1"));
+    }
+
+    @Test
+    public void commitsSinceTag() throws Exception {
+        ObjectId a = commit("a");
+        ObjectId b = commit("b", a);
+        ObjectId c = commit("c", b);
+        tag("v1", a);
+
+        assertThat(describe(b), is("v1-1-g" + abbreviate(b)));
+        assertThat(describe(c), is("v1-2-g" + abbreviate(c)));
+    }
+
+    @Test
+    public void nearestTagWins() throws Exception {
+        ObjectId base = commit("base");
+        ObjectId feature = commit("feature", base);
+        ObjectId other = commit("other", base);
+        ObjectId merge = commit("merge", feature, other);
+        tag("v1", base);
+        tag("v2", other);
+
+        // the merge and the feature commit are not contained in v2, v1 misses one more
+        assertThat(describe(merge), is("v2-2-g" + abbreviate(merge)));
+        assertThat(describe(feature), is("v1-1-g" + abbreviate(feature)));
+    }
+
+    @Test
+    public void annotatedTagsArePeeled() throws Exception {
+        ObjectId a = commit("a");
+        ObjectId b = commit("b", a);
+        ObjectId tag = annotatedTag("v1.0", a);
+
+        assertThat(describe(b), is("v1.0-1-g" + abbreviate(b)));
+        assertThat(describe(tag), is("v1.0"));
+    }
+
+    @Test
+    public void changedTagsAreReadAgain() throws Exception {
+        ObjectId a = commit("a");
+        ObjectId b = commit("b", a);
+        tag("v1", a);
+        assertThat(describe(b), is("v1-1-g" + abbreviate(b)));
+
+        tag("v2", b);
+        assertThat(describe(b), is("v2"));
+        tag("v2", a);
+        assertThat(describe(b), is("v2-1-g" + abbreviate(b)));
+    }
+
+    @Test
+    public void untaggedHistory() throws Exception {
+        ObjectId a = commit("a");
+        ObjectId b = commit("b", a);
+        ObjectId side = commit("side");
+        tag("v1", side);
+
+        assertThat(describe(b), is(nullValue()));
+    }
+
+    @Test
+    public void moreTagsThanCandidates() throws Exception {
+        ObjectId base = commit("base");
+        tag("v0", base);
+        ObjectId tip = base;
+        for (int i = 1; i <= Describer.MAX_CANDIDATES + 2; i++) {
+            ObjectId side = commit("side " + i, base);
+            tag("side-" + i, side);
+            tip = commit("merge " + i, tip, side);
+        }
+
+        // every merge and every older side commit counts against the newest side tag
+        int depth = Describer.MAX_CANDIDATES + 2 + Describer.MAX_CANDIDATES + 1;
+        assertThat(describe(tip), is("side-" + (Describer.MAX_CANDIDATES + 2) + "-" + depth + "-g" + abbreviate(tip)));
+    }
+}
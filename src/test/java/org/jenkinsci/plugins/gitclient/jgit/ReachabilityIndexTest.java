@@ -0,0 +1,193 @@
+package org.jenkinsci.plugins.gitclient.jgit;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReachabilityIndexTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final PersonIdent ident = new PersonIdent("Test", "test@example.com");
+    private Repository repo;
+    private ObjectInserter inserter;
+    private ObjectId emptyTree;
+
+    @Before
+    public void createRepository() throws Exception {
+        ReachabilityIndex.clear();
+        repo = new InMemoryRepository(new DfsRepositoryDescription("reachability"));
+        inserter = repo.newObjectInserter();
+        emptyTree = inserter.insert(new TreeFormatter());
+    }
+
+    @After
+    public void closeRepository() {
+        inserter.close();
+        repo.close();
+        ReachabilityIndex.clear();
+    }
+
+    private ObjectId commit(String message, ObjectId... parents) throws Exception {
+        CommitBuilder builder = new CommitBuilder();
+        builder.setTreeId(emptyTree);
+        builder.setParentIds(parents);
+        builder.setAuthor(ident);
+        builder.setCommitter(ident);
+        builder.setMessage(message);
+        ObjectId id = inserter.insert(builder);
+        inserter.flush();
+        return id;
+    }
+
+    @Test
+    public void linearHistory() throws Exception {
+        ObjectId a = commit("a");
+        ObjectId b = commit("b", a);
+        ObjectId c = commit("c", b);
+        Map<String, ObjectId> refs = new HashMap<>();
+        refs.put("refs/heads/a", a);
+        refs.put("refs/heads/b", b);
+        refs.put("refs/heads/c", c);
+
+        assertThat(ReachabilityIndex.getRefsContaining(repo, b, refs), containsInAnyOrder("refs/heads/b", "refs/heads/c"));
+        assertThat(ReachabilityIndex.getRefsContaining(repo, a, refs), containsInAnyOrder("refs/heads/a", "refs/heads/b", "refs/heads/c"));
+        assertThat(ReachabilityIndex.getRefsContaining(repo, c, refs), containsInAnyOrder("refs/heads/c"));
+    }
+
+    @Test
+    public void mergedBranch() throws Exception {
+        ObjectId base = commit("base");
+        ObjectId feature = commit("feature", base);
+        ObjectId master = commit("master", base);
+        ObjectId merge = commit("merge", master, feature);
+        ObjectId other = commit("other", base);
+        Map<String, ObjectId> refs = new HashMap<>();
+        refs.put("refs/heads/feature", feature);
+        refs.put("refs/heads/master", merge);
+        refs.put("refs/heads/other", other);
+
+        assertThat(ReachabilityIndex.getRefsContaining(repo, feature, refs), containsInAnyOrder("refs/heads/feature", "refs/heads/master"));
+        assertThat(ReachabilityIndex.getRefsContaining(repo, master, refs), containsInAnyOrder("refs/heads/master"));
+    }
+
+    @Test
+    public void refsToOtherObjectsContainNothing() throws Exception {
+        ObjectId a = commit("a");
+        ObjectId blob = inserter.insert(Constants.OBJ_BLOB, Constants.encode("content"));
+        inserter.flush();
+        Map<String, ObjectId> refs = new HashMap<>();
+        refs.put("refs/heads/blob", blob);
+
+        assertThat(ReachabilityIndex.getRefsContaining(repo, a, refs), is(empty()));
+    }
+
+    @Test
+    public void movedRefsAreWalkedAgain() throws Exception {
+        ObjectId a = commit("a");
+        ObjectId b = commit("b", a);
+        ObjectId side = commit("side", a);
+        Map<String, ObjectId> refs = new HashMap<>();
+        refs.put("refs/heads/master", a);
+        refs.put("refs/heads/side", side);
+        assertThat(ReachabilityIndex.getRefsContaining(repo, b, refs), is(empty()));
+
+        // like a fetch, master moves forward past the commit, side moves on without it
+        ObjectId c = commit("c", b);
+        ObjectId side2 = commit("side2", side);
+        refs.put("refs/heads/master", c);
+        refs.put("refs/heads/side", side2);
+        refs.put("refs/heads/new", c);
+        assertThat(ReachabilityIndex.getRefsContaining(repo, b, refs), containsInAnyOrder("refs/heads/master", "refs/heads/new"));
+    }
+
+    @Test
+    public void deepenedRepositoryIsWalkedAgain() throws Exception {
+        File workTree = tempFolder.newFolder();
+        try (Git git = Git.init().setDirectory(workTree).call()) {
+            ObjectId a = git.commit().setMessage("a").setAllowEmpty(true).call();
+            ObjectId b = git.commit().setMessage("b").setAllowEmpty(true).call();
+            ObjectId c = git.commit().setMessage("c").setAllowEmpty(true).call();
+            Map<String, ObjectId> refs = new HashMap<>();
+            refs.put("refs/heads/master", c);
+
+            // like a clone of depth 2, the history ends at b
+            File shallow = new File(git.getRepository().getDirectory(), Constants.SHALLOW);
+            Files.write(shallow.toPath(), (b.name() + "\n").getBytes(StandardCharsets.US_ASCII));
+            assertThat(ReachabilityIndex.getRefsContaining(git.getRepository(), a, refs), is(empty()));
+
+            // like fetch --unshallow
+            Files.delete(shallow.toPath());
+            assertThat(ReachabilityIndex.getRefsContaining(git.getRepository(), a, refs), containsInAnyOrder("refs/heads/master"));
+        }
+    }
+
+    /* Compares with a separate walk per ref on a random history with merges */
+    @Test
+    public void randomHistory() throws Exception {
+        Random random = new Random(42);
+        List<ObjectId> commits = new ArrayList<>();
+        commits.add(commit("root"));
+        for (int i = 1; i < 300; i++) {
+            ObjectId parent = commits.get(commits.size() - 1 - random.nextInt(Math.min(10, commits.size())));
+            if (random.nextInt(5) == 0) {
+                commits.add(commit("merge " + i, parent, commits.get(random.nextInt(commits.size()))));
+            } else {
+                commits.add(commit("commit " + i, parent));
+            }
+        }
+        Map<String, ObjectId> refs = new HashMap<>();
+        for (int i = 0; i < 60; i++) {
+            refs.put("refs/heads/branch-" + i, commits.get(random.nextInt(commits.size())));
+        }
+
+        for (int i = 0; i < 20; i++) {
+            ObjectId target = commits.get(random.nextInt(commits.size()));
+            assertThat("Refs containing " + target.name(), ReachabilityIndex.getRefsContaining(repo, target, refs), is(naive(target, refs)));
+            // answered from the cache the second time
+            assertThat("Refs containing " + target.name(), ReachabilityIndex.getRefsContaining(repo, target, refs), is(naive(target, refs)));
+        }
+    }
+
+    private Set<String> naive(ObjectId target, Map<String, ObjectId> refs) throws Exception {
+        Set<String> containing = new HashSet<>();
+        for (Map.Entry<String, ObjectId> ref : refs.entrySet()) {
+            try (RevWalk walk = new RevWalk(repo)) {
+                if (walk.isMergedInto(walk.parseCommit(target), walk.parseCommit(ref.getValue()))) {
+                    containing.add(ref.getKey());
+                }
+            }
+        }
+        return containing;
+    }
+}
@@ -0,0 +1,123 @@
+package org.jenkinsci.plugins.gitclient.jgit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RepositoryPoolTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File init() throws Exception {
+        File workTree = tempFolder.newFolder();
+        Git.init().setDirectory(workTree).call().close();
+        return workTree;
+    }
+
+    @Test
+    public void repositoryIsShared() throws Exception {
+        File workTree = init();
+        RepositoryPool pool = new RepositoryPool(60_000);
+        try (Repository first = pool.open(workTree)) {
+            try (Repository second = pool.open(workTree)) {
+                assertThat(second, is(sameInstance(first)));
+            }
+            Repository third = pool.open(workTree);
+            third.close();
+            assertThat(third, is(sameInstance(first)));
+        }
+        pool.clear();
+    }
+
+    @Test
+    public void idleRepositoryIsClosed() throws Exception {
+        File workTree = init();
+        RepositoryPool pool = new RepositoryPool(50);
+        Repository first = pool.open(workTree);
+        first.close();
+        Thread.sleep(500);
+        try (Repository second = pool.open(workTree)) {
+            assertThat(second, is(not(sameInstance(first))));
+        }
+        pool.clear();
+    }
+
+    @Test
+    public void repositoryCreatedAgainIsOpenedAgain() throws Exception {
+        File workTree = init();
+        RepositoryPool pool = new RepositoryPool(60_000);
+        Repository first = pool.open(workTree);
+        first.close();
+        FileUtils.delete(new File(workTree, ".git"), FileUtils.RECURSIVE);
+        Git.init().setDirectory(workTree).call().close();
+        try (Repository second = pool.open(workTree)) {
+            assertThat(second, is(not(sameInstance(first))));
+            assertThat(second.exactRef("HEAD"), is(notNullValue()));
+        }
+        pool.clear();
+    }
+
+    @Test
+    public void repositoryIsKeptAfterCommit() throws Exception {
+        File workTree = init();
+        RepositoryPool pool = new RepositoryPool(60_000);
+        Repository first = pool.open(workTree);
+        first.close();
+        try (Git git = Git.open(workTree)) {
+            git.commit().setMessage("first").setAllowEmpty(true).call();
+        }
+        try (Repository second = pool.open(workTree)) {
+            assertThat(second, is(sameInstance(first)));
+            assertThat(second.resolve("HEAD"), is(notNullValue()));
+        }
+        pool.clear();
+    }
+
+    @Test
+    public void evictedRepositoryIsOpenedAgain() throws Exception {
+        File workTree = init();
+        RepositoryPool pool = new RepositoryPool(60_000);
+        try (Repository first = pool.open(workTree)) {
+            pool.evict(workTree);
+            try (Repository second = pool.open(workTree)) {
+                assertThat(second, is(not(sameInstance(first))));
+            }
+        }
+        pool.clear();
+    }
+
+    @Test
+    public void missingRepositoryIsNotPooled() throws Exception {
+        File workTree = tempFolder.newFolder();
+        RepositoryPool pool = new RepositoryPool(60_000);
+        try (Repository first = pool.open(workTree); Repository second = pool.open(workTree)) {
+            assertThat(second, is(not(sameInstance(first))));
+            first.create();
+        }
+        try (Repository created = pool.open(workTree)) {
+            assertThat(created.getObjectDatabase().exists(), is(true));
+        }
+        pool.clear();
+    }
+
+    @Test
+    public void poolingCanBeDisabled() throws Exception {
+        File workTree = init();
+        RepositoryPool pool = new RepositoryPool(0);
+        try (Repository first = pool.open(workTree); Repository second = pool.open(workTree)) {
+            assertThat(second, is(not(sameInstance(first))));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package org.jenkinsci.plugins.gitclient.jgit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SparseCheckoutTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File workTree;
+    private Git git;
+
+    @Before
+    public void createRepository() throws Exception {
+        workTree = tempFolder.newFolder();
+        git = Git.init().setDirectory(workTree).call();
+    }
+
+    @After
+    public void closeRepository() {
+        git.close();
+    }
+
+    private void write(String path, String content) throws Exception {
+        File file = new File(workTree, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private RevCommit commit(String... paths) throws Exception {
+        for (String path : paths) {
+            write(path, path);
+            git.add().addFilepattern(path).call();
+        }
+        return git.commit().setMessage("commit").call();
+    }
+
+    private boolean exists(String path) {
+        return new File(workTree, path).exists();
+    }
+
+    @Test
+    public void includesDirectoriesAndNegations() throws Exception {
+        SparseCheckout sparse = new SparseCheckout(Arrays.asList("dir1", "/*.txt", "!/b.txt"));
+        assertThat(sparse.includes("dir1/file"), is(true));
+        assertThat(sparse.includes("a/dir1/file"), is(true));
+        assertThat(sparse.includes("dir2/file"), is(false));
+        assertThat(sparse.includes("a.txt"), is(true));
+        assertThat(sparse.includes("b.txt"), is(false));
+        assertThat(sparse.includes("dir2/a.txt"), is(false));
+    }
+
+    @Test
+    public void includesConePatterns() throws Exception {
+        SparseCheckout sparse = new SparseCheckout(Arrays.asList("/*", "!/*/", "/dir/", "!/dir/*/", "/dir/sub/"));
+        assertThat(sparse.includes("README"), is(true));
+        assertThat(sparse.includes("dir/file"), is(true));
+        assertThat(sparse.includes("dir/sub/deep/file"), is(true));
+        assertThat(sparse.includes("dir/other/file"), is(false));
+        assertThat(sparse.includes("other/file"), is(false));
+    }
+
+    @Test
+    public void checksOutMatchingPaths() throws Exception {
+        RevCommit commit = commit("dir1/file1", "dir2/file2", "dir3/sub/file3");
+
+        new SparseCheckout(Collections.singletonList("dir1")).checkout(git.getRepository(), commit);
+        assertThat(exists("dir1/file1"), is(true));
+        assertThat(exists("dir2"), is(false));
+        assertThat(exists("dir3"), is(false));
+
+        new SparseCheckout(Arrays.asList("dir2", "dir3")).checkout(git.getRepository(), commit);
+        assertThat(exists("dir1"), is(false));
+        assertThat(exists("dir2/file2"), is(true));
+        assertThat(exists("dir3/sub/file3"), is(true));
+
+        new SparseCheckout(Collections.singletonList("/*")).checkout(git.getRepository(), commit);
+        assertThat(exists("dir1/file1"), is(true));
+        assertThat(exists("dir2/file2"), is(true));
+        assertThat(exists("dir3/sub/file3"), is(true));
+
+        DirCache index = git.getRepository().readDirCache();
+        assertThat(index.getEntryCount(), is(3));
+        assertThat(git.status().call().isClean(), is(true));
+    }
+
+    @Test
+    public void pathsLeftOutAreNotDeleted() throws Exception {
+        RevCommit commit = commit("dir1/file1", "dir2/file2");
+
+        new SparseCheckout(Collections.singletonList("dir1")).checkout(git.getRepository(), commit);
+        assertThat(exists("dir2"), is(false));
+        DirCache index = git.getRepository().readDirCache();
+        assertThat(index.getEntry("dir1/file1").isSkipWorkTree(), is(false));
+        assertThat(index.getEntry("dir2/file2").isSkipWorkTree(), is(true));
+        assertThat(git.status().call().isClean(), is(true));
+        assertThat(cliGit("status", "--porcelain"), is(""));
+        assertThat(cliGit("ls-files", "-v"), is("H dir1/file1\nS dir2/file2\n"));
+
+        new SparseCheckout(Collections.singletonList("/*")).checkout(git.getRepository(), commit);
+        assertThat(exists("dir2/file2"), is(true));
+        assertThat(git.getRepository().readDirCache().getEntry("dir2/file2").isSkipWorkTree(), is(false));
+        assertThat(cliGit("ls-files", "-v"), is("H dir1/file1\nH dir2/file2\n"));
+    }
+
+    private String cliGit(String... args) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(Arrays.asList(args));
+        Process process = new ProcessBuilder(command).directory(workTree).redirectErrorStream(true).start();
+        String output = IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8);
+        assertThat(output, process.waitFor(), is(0));
+        return output;
+    }
+
+    @Test
+    public void unchangedFilesAreNotWritten() throws Exception {
+        RevCommit first = commit("kept", "changed");
+        write("changed", "changed again");
+        git.add().addFilepattern("changed").call();
+        RevCommit second = git.commit().setMessage("second").call();
+        SparseCheckout all = new SparseCheckout(Collections.singletonList("/*"));
+        all.checkout(git.getRepository(), first);
+
+        File kept = new File(workTree, "kept");
+        assertThat(kept.setLastModified(1_000_000_000_000L), is(true));
+        long keptModified = kept.lastModified();
+        all.checkout(git.getRepository(), second);
+        assertThat(kept.lastModified(), is(keptModified));
+        assertThat(new String(Files.readAllBytes(new File(workTree, "changed").toPath()), StandardCharsets.UTF_8), is("changed again"));
+    }
+
+    @Test
+    public void localChangesAreOverwritten() throws Exception {
+        commit("file", "gone");
+        write("file", "local change");
+        commit("other");
+        git.rm().addFilepattern("gone").call();
+        ObjectId withoutGone = git.commit().setMessage("remove").call();
+
+        new SparseCheckout(Collections.singletonList("/*")).checkout(git.getRepository(), withoutGone);
+        assertThat(new String(Files.readAllBytes(new File(workTree, "file").toPath()), StandardCharsets.UTF_8), is("file"));
+        assertThat(exists("gone"), is(false));
+        assertThat(exists("other"), is(true));
+    }
+}
@@ -0,0 +1,57 @@
+package org.jenkinsci.plugins.gitclient.jgit;
+
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.LsRemoteCommand;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TransportRepositoryTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private List<String> lsRemote(String url) throws Exception {
+        try (Repository repo = TransportRepository.getInstance()) {
+            Collection<Ref> refs = new LsRemoteCommand(repo).setRemote(url).call();
+            List<String> names = new ArrayList<>();
+            for (Ref r : refs) {
+                names.add(r.getName() + " " + r.getObjectId().name());
+            }
+            return names;
+        }
+    }
+
+    @Test
+    public void listsRemoteRefsAfterClose() throws Exception {
+        File remote = tempFolder.newFolder();
+        RevCommit commit;
+        try (Git git = Git.init().setDirectory(remote).call()) {
+            commit = git.commit().setMessage("first").call();
+            git.tag().setName("v1").setAnnotated(false).call();
+        }
+        String url = remote.toURI().toString();
+
+        assertThat(lsRemote(url), hasItem("refs/tags/v1 " + commit.name()));
+        assertThat(lsRemote(url), hasItem("refs/heads/master " + commit.name()));
+        assertThat(remote.getAbsolutePath(), lsRemote(remote.getAbsolutePath()).size(), is(3));
+    }
+
+    @Test
+    public void repositoryIsShared() {
+        assertThat(TransportRepository.getInstance(), is(sameInstance(TransportRepository.getInstance())));
+    }
+}
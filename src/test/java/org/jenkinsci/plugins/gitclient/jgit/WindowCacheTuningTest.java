@@ -0,0 +1,66 @@
+package org.jenkinsci.plugins.gitclient.jgit;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.junit.After;
+import org.junit.Test;
+
+public class WindowCacheTuningTest {
+
+    private static final String PREFIX = WindowCacheTuning.class.getName() + ".";
+
+    @After
+    public void restoreDefaults() {
+        System.clearProperty(PREFIX + "packedGitLimit");
+        System.clearProperty(PREFIX + "packedGitMMAP");
+        new WindowCacheTuning().install();
+    }
+
+    @Test
+    public void unsetSettingsKeepJGitDefaults() {
+        WindowCacheConfig defaults = new WindowCacheConfig();
+        WindowCacheConfig config = new WindowCacheTuning().packedGitLimit(64 * WindowCacheConfig.MB).toConfig();
+        assertThat(config.getPackedGitLimit(), is(64L * WindowCacheConfig.MB));
+        assertThat(config.getPackedGitWindowSize(), is(defaults.getPackedGitWindowSize()));
+        assertThat(config.isPackedGitMMAP(), is(defaults.isPackedGitMMAP()));
+        assertThat(config.getDeltaBaseCacheLimit(), is(defaults.getDeltaBaseCacheLimit()));
+        assertThat(config.getStreamFileThreshold(), is(defaults.getStreamFileThreshold()));
+    }
+
+    @Test
+    public void readsSystemProperties() {
+        assertThat(WindowCacheTuning.fromSystemProperties().isDefault(), is(true));
+        System.setProperty(PREFIX + "packedGitLimit", "134217728");
+        System.setProperty(PREFIX + "packedGitMMAP", "true");
+        WindowCacheTuning tuning = WindowCacheTuning.fromSystemProperties();
+        assertThat(tuning, is(new WindowCacheTuning().packedGitLimit(128 * WindowCacheConfig.MB).packedGitMMAP(true)));
+    }
+
+    @Test
+    public void installsOnlyChangedSettings() {
+        WindowCacheTuning tuning = new WindowCacheTuning().packedGitLimit(32 * WindowCacheConfig.MB).packedGitWindowSize(64 * WindowCacheConfig.KB);
+        assertThat(tuning.install(), is(true));
+        assertThat(new WindowCacheTuning().packedGitLimit(32 * WindowCacheConfig.MB).packedGitWindowSize(64 * WindowCacheConfig.KB).install(), is(false));
+        assertThat(WindowCacheTuning.getInstalled(), is(tuning));
+        assertThat(WindowCacheTuning.installFromSystemProperties(), is(false));
+
+        tuning.packedGitWindowSize(16 * WindowCacheConfig.KB);
+        assertThat(WindowCacheTuning.getInstalled().equals(tuning), is(false));
+        assertThat(tuning.install(), is(true));
+    }
+
+    @Test
+    public void rejectedSettingsKeepInstalledSettings() {
+        WindowCacheTuning tuning = new WindowCacheTuning().packedGitLimit(32 * WindowCacheConfig.MB);
+        tuning.install();
+        try {
+            new WindowCacheTuning().packedGitWindowSize(5000).install();
+        } catch (IllegalArgumentException e) {
+            assertThat(WindowCacheTuning.getInstalled(), is(tuning));
+            return;
+        }
+        throw new AssertionError("window size which is not a power of 2 was installed");
+    }
+}